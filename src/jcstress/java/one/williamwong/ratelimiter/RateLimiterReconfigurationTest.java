@@ -0,0 +1,286 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jcstress.annotations.*;
+import org.openjdk.jcstress.infra.results.L_Result;
+
+import java.time.Duration;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * Invocations racing with changes of the rate, which moves between 'MAX_INVOKES' and half of it in 'DURATION' until
+ * all invocations are released. Whatever the rate at the time, there must never be more than 'MAX_INVOKES'
+ * invocations in any 'DURATION', and no invocation may fail or be paused for ever.
+ */
+public class RateLimiterReconfigurationTest {
+
+    public static final int MAX_INVOKES = 1000;
+    public static final Duration DURATION = Duration.ofMillis(1);
+
+    private static <T extends RateLimiter>
+    void invoke(RateLimiterWrapper<T> wrapper, L_Result result) {
+        final RateLimiter rateLimiter = wrapper.getRateLimiter();
+        try {
+            for (int i = 0; i < MAX_INVOKES; i++) {
+                rateLimiter.invoke();
+                wrapper.record();
+            }
+        } catch (Exception e) {
+            result.r1 = e;
+        }
+        wrapper.reduceActiveActor();
+    }
+
+    private static <T extends RateLimiter>
+    void tryInvoke(RateLimiterWrapper<T> wrapper, L_Result result) {
+        final RateLimiter rateLimiter = wrapper.getRateLimiter();
+        try {
+            for (int i = 0; i < MAX_INVOKES; i++) {
+                if (rateLimiter.tryInvoke()) {
+                    wrapper.record();
+                }
+            }
+        } catch (Exception e) {
+            result.r1 = e;
+        }
+        wrapper.reduceActiveActor();
+    }
+
+    private static <T extends RateLimiter>
+    void setRate(RateLimiterWrapper<T> wrapper, L_Result result) {
+        final RateLimiter rateLimiter = wrapper.getRateLimiter();
+        try {
+            for (int i = 0; wrapper.hasActiveActors(); i++) {
+                rateLimiter.setRate(i % 2 == 0 ? MAX_INVOKES / 2 : MAX_INVOKES, DURATION);
+                Thread.yield();
+            }
+        } catch (Exception e) {
+            result.r1 = e;
+        }
+    }
+
+    private static <T extends RateLimiter>
+    void checkEmittedTimes(RateLimiterWrapper<T> wrapper, L_Result result) {
+        try {
+            wrapper.verifyIfEmitTimeExcessExpectedRate(MAX_INVOKES, DURATION.toNanos());
+        } catch (Exception e) {
+            result.r1 = e;
+        }
+    }
+
+    private static <T extends RateLimiter>
+    void checkJitterPercentage(RateLimiterWrapper<T> wrapper, L_Result result) {
+        try {
+            wrapper.verifyJitterPercentageOverThreshold(1);
+        } catch (Exception e) {
+            result.r1 = e;
+        }
+    }
+
+    @JCStressTest
+    @Description("Test race on concurrent invoke and setRate")
+    @Outcome(id = "null", expect = ACCEPTABLE, desc = "never more than the higher rate")
+    @Outcome(id = ".*", expect = FORBIDDEN, desc = "hit exception during invoke or setRate")
+    public static class SynchronizedRateLimiterSetRateTest {
+
+        @Actor
+        public void actor1(SynchronizedRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor2(SynchronizedRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor3(SynchronizedRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor4(SynchronizedRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void setRateActor(SynchronizedRateLimiterWrapper wrapper, L_Result result) {
+            setRate(wrapper, result);
+        }
+
+        @Actor
+        public void checkActor(SynchronizedRateLimiterWrapper wrapper, L_Result result) {
+            checkEmittedTimes(wrapper, result);
+        }
+
+        @Arbiter
+        public void finalCheckActor(SynchronizedRateLimiterWrapper wrapper, L_Result result) {
+            checkJitterPercentage(wrapper, result);
+        }
+
+        @State
+        public static class SynchronizedRateLimiterWrapper extends RateLimiterWrapper<SynchronizedRateLimiter> {
+            SynchronizedRateLimiterWrapper() {
+                super(new SynchronizedRateLimiter(MAX_INVOKES, DURATION, 10), 4);
+            }
+        }
+    }
+
+    @JCStressTest
+    @Description("Test race on concurrent invoke, tryInvoke and setRate, tryInvoke reads the history optimistically")
+    @Outcome(id = "null", expect = ACCEPTABLE, desc = "never more than the higher rate")
+    @Outcome(id = ".*", expect = FORBIDDEN, desc = "hit exception during invoke, tryInvoke or setRate")
+    public static class StampLockRateLimiterSetRateTest {
+
+        @Actor
+        public void actor1(StampLockRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor2(StampLockRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor3(StampLockRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor4(StampLockRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void tryInvokeActor1(StampLockRateLimiterWrapper wrapper, L_Result result) {
+            tryInvoke(wrapper, result);
+        }
+
+        @Actor
+        public void tryInvokeActor2(StampLockRateLimiterWrapper wrapper, L_Result result) {
+            tryInvoke(wrapper, result);
+        }
+
+        @Actor
+        public void setRateActor(StampLockRateLimiterWrapper wrapper, L_Result result) {
+            setRate(wrapper, result);
+        }
+
+        @Actor
+        public void checkActor(StampLockRateLimiterWrapper wrapper, L_Result result) {
+            checkEmittedTimes(wrapper, result);
+        }
+
+        @Arbiter
+        public void finalCheckActor(StampLockRateLimiterWrapper wrapper, L_Result result) {
+            checkJitterPercentage(wrapper, result);
+        }
+
+        @State
+        public static class StampLockRateLimiterWrapper extends RateLimiterWrapper<StampLockRateLimiter> {
+            StampLockRateLimiterWrapper() {
+                super(new StampLockRateLimiter(MAX_INVOKES, DURATION), 6);
+            }
+        }
+    }
+
+    @JCStressTest
+    @Description("Test race on concurrent invoke and setRate, paused invocations wake up at the new rate")
+    @Outcome(id = "null", expect = ACCEPTABLE, desc = "never more than the higher rate")
+    @Outcome(id = ".*", expect = FORBIDDEN, desc = "hit exception during invoke or setRate")
+    public static class ReentrantLockRateLimiterSetRateTest {
+
+        @Actor
+        public void actor1(ReentrantLockRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor2(ReentrantLockRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor3(ReentrantLockRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor4(ReentrantLockRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void setRateActor(ReentrantLockRateLimiterWrapper wrapper, L_Result result) {
+            setRate(wrapper, result);
+        }
+
+        @Actor
+        public void checkActor(ReentrantLockRateLimiterWrapper wrapper, L_Result result) {
+            checkEmittedTimes(wrapper, result);
+        }
+
+        @Arbiter
+        public void finalCheckActor(ReentrantLockRateLimiterWrapper wrapper, L_Result result) {
+            checkJitterPercentage(wrapper, result);
+        }
+
+        @State
+        public static class ReentrantLockRateLimiterWrapper extends RateLimiterWrapper<ReentrantLockRateLimiter> {
+            ReentrantLockRateLimiterWrapper() {
+                super(new ReentrantLockRateLimiter(MAX_INVOKES, DURATION), 4);
+            }
+        }
+    }
+
+    @JCStressTest
+    @Description("Test race on concurrent invoke and setRate, the head of the queue wakes up at the new rate")
+    @Outcome(id = "null", expect = ACCEPTABLE, desc = "never more than the higher rate")
+    @Outcome(id = ".*", expect = FORBIDDEN, desc = "hit exception during invoke or setRate")
+    public static class FairRateLimiterSetRateTest {
+
+        @Actor
+        public void actor1(FairRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor2(FairRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor3(FairRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor4(FairRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void setRateActor(FairRateLimiterWrapper wrapper, L_Result result) {
+            setRate(wrapper, result);
+        }
+
+        @Actor
+        public void checkActor(FairRateLimiterWrapper wrapper, L_Result result) {
+            checkEmittedTimes(wrapper, result);
+        }
+
+        @Arbiter
+        public void finalCheckActor(FairRateLimiterWrapper wrapper, L_Result result) {
+            checkJitterPercentage(wrapper, result);
+        }
+
+        @State
+        public static class FairRateLimiterWrapper extends RateLimiterWrapper<FairRateLimiter> {
+            FairRateLimiterWrapper() {
+                super(new FairRateLimiter(MAX_INVOKES, DURATION), 4);
+            }
+        }
+    }
+}
@@ -51,6 +51,10 @@ class RateLimiterWrapper<T extends RateLimiter> {
         }
     }
 
+    boolean hasActiveActors() {
+        return numOfActiveActors.get() > 0;
+    }
+
     void reduceActiveActor() {
         numOfActiveActors.decrementAndGet();
     }
@@ -229,6 +233,388 @@ public class RateLimiterThreadSafetyTest {
             }
         }
     }
-}
 
+    @JCStressTest
+    @Description("Test race on concurrent invoke, shards must never excess the limit together")
+    @Outcome(id = "null", expect = ACCEPTABLE, desc = "all records are increasing")
+    @Outcome(id = ".*", expect = FORBIDDEN, desc = "hit exception during invoke")
+    public static class StripedLongArrayRateLimiterInvokeTest {
+
+        @Actor
+        public void actor1(StripedLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor2(StripedLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor3(StripedLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor4(StripedLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor5(StripedLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor6(StripedLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor7(StripedLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor8(StripedLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void checkActor(StripedLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            checkEmittedTimes(wrapper, result);
+        }
+
+        @Arbiter
+        public void finalCheckActor(StripedLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            checkJitterPercentage(wrapper, result);
+        }
+
+        @State
+        public static class StripedLongArrayRateLimiterWrapper extends RateLimiterWrapper<StripedRateLimiter> {
+            StripedLongArrayRateLimiterWrapper() {
+                super(new StripedRateLimiter(MAX_INVOKES, DURATION, 4), 8);
+            }
+        }
+    }
+
+    @JCStressTest
+    @Description("Test race on concurrent invoke")
+    @Outcome(id = "null", expect = ACCEPTABLE, desc = "all records are increasing")
+    @Outcome(id = ".*", expect = FORBIDDEN, desc = "hit exception during invoke")
+    public static class ReentrantLockLongArrayRateLimiterInvokeTest {
+
+        @Actor
+        public void actor1(ReentrantLockLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor2(ReentrantLockLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor3(ReentrantLockLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor4(ReentrantLockLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor5(ReentrantLockLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor6(ReentrantLockLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor7(ReentrantLockLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor8(ReentrantLockLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void checkActor(ReentrantLockLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            checkEmittedTimes(wrapper, result);
+        }
+
+        @Arbiter
+        public void finalCheckActor(ReentrantLockLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            checkJitterPercentage(wrapper, result);
+        }
+
+        @State
+        public static class ReentrantLockLongArrayRateLimiterWrapper extends RateLimiterWrapper<ReentrantLockRateLimiter> {
+            ReentrantLockLongArrayRateLimiterWrapper() {
+                super(new ReentrantLockRateLimiter(MAX_INVOKES, DURATION), 8);
+            }
+        }
+    }
+
+    @JCStressTest
+    @Description("Test race on concurrent invoke")
+    @Outcome(id = "null", expect = ACCEPTABLE, desc = "all records are increasing")
+    @Outcome(id = ".*", expect = FORBIDDEN, desc = "hit exception during invoke")
+    public static class CasLongArrayRateLimiterInvokeTest {
+
+        @Actor
+        public void actor1(CasLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor2(CasLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor3(CasLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor4(CasLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor5(CasLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor6(CasLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor7(CasLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor8(CasLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void checkActor(CasLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            checkEmittedTimes(wrapper, result);
+        }
+
+        @Arbiter
+        public void finalCheckActor(CasLongArrayRateLimiterWrapper wrapper, L_Result result) {
+            checkJitterPercentage(wrapper, result);
+        }
+
+        @State
+        public static class CasLongArrayRateLimiterWrapper extends RateLimiterWrapper<CasRateLimiter> {
+            CasLongArrayRateLimiterWrapper() {
+                super(new CasRateLimiter(MAX_INVOKES, DURATION), 8);
+            }
+        }
+    }
 
+    @JCStressTest
+    @Description("Test race on concurrent invoke")
+    @Outcome(id = "null", expect = ACCEPTABLE, desc = "all records are increasing")
+    @Outcome(id = ".*", expect = FORBIDDEN, desc = "hit exception during invoke")
+    public static class TokenBucketRateLimiterInvokeTest {
+
+        @Actor
+        public void actor1(TokenBucketRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor2(TokenBucketRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor3(TokenBucketRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor4(TokenBucketRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor5(TokenBucketRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor6(TokenBucketRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor7(TokenBucketRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor8(TokenBucketRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void checkActor(TokenBucketRateLimiterWrapper wrapper, L_Result result) {
+            checkEmittedTimes(wrapper, result);
+        }
+
+        @Arbiter
+        public void finalCheckActor(TokenBucketRateLimiterWrapper wrapper, L_Result result) {
+            checkJitterPercentage(wrapper, result);
+        }
+
+        @State
+        public static class TokenBucketRateLimiterWrapper extends RateLimiterWrapper<TokenBucketRateLimiter> {
+            TokenBucketRateLimiterWrapper() {
+                super(new TokenBucketRateLimiter(MAX_INVOKES, DURATION), 8);
+            }
+        }
+    }
+
+    @JCStressTest
+    @Description("Test race on concurrent invoke")
+    @Outcome(id = "null", expect = ACCEPTABLE, desc = "all records are increasing")
+    @Outcome(id = ".*", expect = FORBIDDEN, desc = "hit exception during invoke")
+    public static class GcraRateLimiterInvokeTest {
+
+        @Actor
+        public void actor1(GcraRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor2(GcraRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor3(GcraRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor4(GcraRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor5(GcraRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor6(GcraRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor7(GcraRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor8(GcraRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void checkActor(GcraRateLimiterWrapper wrapper, L_Result result) {
+            checkEmittedTimes(wrapper, result);
+        }
+
+        @Arbiter
+        public void finalCheckActor(GcraRateLimiterWrapper wrapper, L_Result result) {
+            checkJitterPercentage(wrapper, result);
+        }
+
+        @State
+        public static class GcraRateLimiterWrapper extends RateLimiterWrapper<GcraRateLimiter> {
+            GcraRateLimiterWrapper() {
+                super(new GcraRateLimiter(MAX_INVOKES, DURATION), 8);
+            }
+        }
+    }
+
+    @JCStressTest
+    @Description("Test race on concurrent invoke")
+    @Outcome(id = "null", expect = ACCEPTABLE, desc = "all records are increasing")
+    @Outcome(id = ".*", expect = FORBIDDEN, desc = "hit exception during invoke")
+    public static class WindowCounterRateLimiterInvokeTest {
+
+        @Actor
+        public void actor1(WindowCounterRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor2(WindowCounterRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor3(WindowCounterRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor4(WindowCounterRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor5(WindowCounterRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor6(WindowCounterRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor7(WindowCounterRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void actor8(WindowCounterRateLimiterWrapper wrapper, L_Result result) {
+            invoke(wrapper, result);
+        }
+
+        @Actor
+        public void checkActor(WindowCounterRateLimiterWrapper wrapper, L_Result result) {
+            checkEmittedTimes(wrapper, result);
+        }
+
+        @Arbiter
+        public void finalCheckActor(WindowCounterRateLimiterWrapper wrapper, L_Result result) {
+            checkJitterPercentage(wrapper, result);
+        }
+
+        @State
+        public static class WindowCounterRateLimiterWrapper extends RateLimiterWrapper<WindowCounterRateLimiter> {
+            WindowCounterRateLimiterWrapper() {
+                super(new WindowCounterRateLimiter(MAX_INVOKES, DURATION), 8);
+            }
+        }
+    }
+}
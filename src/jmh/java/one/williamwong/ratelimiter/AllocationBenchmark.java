@@ -0,0 +1,100 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The hot paths of every rate limiter, which must not allocate once the history has grown to its window: an
+ * invocation released right away, a 'tryInvoke' admitted and a 'tryInvoke' rejected. Run {@link #main(String[])},
+ * which runs them with the GC profiler and fails if any allocates more than {@link #MAX_BYTES_PER_OP} bytes per
+ * operation, as read from 'gc.alloc.rate.norm'.
+ */
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class AllocationBenchmark {
+
+    // more than the noise of the profiler, less than the smallest object.
+    static final double MAX_BYTES_PER_OP = 1;
+
+    @Param({"CasRateLimiter",
+            "FairRateLimiter",
+            "GcraRateLimiter",
+            "ReentrantLockRateLimiter",
+            "StampLockRateLimiter",
+            "StripedRateLimiter",
+            "SynchronizedRateLimiter",
+            "TokenBucketRateLimiter",
+            "WindowCounterRateLimiter",
+    })
+    private String rateLimiterType;
+
+    // 1000 per 500 nanoseconds, which is never reached.
+    private RateLimiter rateLimiter;
+
+    // 10 per hour, which is reached right away.
+    private RateLimiter rejectingRateLimiter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        rateLimiter = RateLimiters.create(rateLimiterType, 1_000, Duration.ofNanos(500), 1);
+        rejectingRateLimiter = RateLimiters.create(rateLimiterType, 10, Duration.ofHours(1), 1);
+    }
+
+    @Benchmark
+    public long invoke() throws InterruptedException {
+        return rateLimiter.invoke();
+    }
+
+    @Benchmark
+    public boolean tryInvoke_admitted() {
+        return rateLimiter.tryInvoke();
+    }
+
+    @Benchmark
+    public boolean tryInvoke_rejected() {
+        return rejectingRateLimiter.tryInvoke();
+    }
+
+    /**
+     * Exits with 1 if any hot path allocates. Options of the command line, e.g. '-p rateLimiterType=...', are not
+     * taken; run the benchmark with 'org.openjdk.jmh.Main' for those.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(AllocationBenchmark.class.getName() + "\\.")
+                .addProfiler(GCProfiler.class)
+                .build();
+        final List<String> failures = new ArrayList<>();
+        for (RunResult runResult : new Runner(options).run()) {
+            for (Map.Entry<String, Result> result : runResult.getSecondaryResults().entrySet()) {
+                // prefixed with a middle dot by older versions of JMH.
+                if (result.getKey().endsWith("gc.alloc.rate.norm")
+                        && result.getValue().getScore() > MAX_BYTES_PER_OP) {
+                    failures.add(runResult.getParams().getBenchmark() + " " + runResult.getParams().getParam(
+                            "rateLimiterType") + ": " + result.getValue().getScore() + " bytes per operation");
+                }
+            }
+        }
+        if (!failures.isEmpty()) {
+            System.err.println("hot paths which allocate:");
+            failures.forEach(failure -> System.err.println("  " + failure));
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every thread keeps 'numOfPending' acquisitions pending. An operation waits for the oldest one to be completed and
+ * replaces it with a new acquisition.
+ */
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AsyncRateLimiterBenchmark {
+
+    @Group("thread_1")
+    @GroupThreads(1)
+    @Benchmark
+    public long thread_1(RateLimiterWrapper rateLimiterWrapper, Pending pending) {
+        return pending.replaceOldest(rateLimiterWrapper.rateLimiter.invokeAsync());
+    }
+
+    @Group("thread_10")
+    @GroupThreads(10)
+    @Benchmark
+    public long thread_10(RateLimiterWrapper rateLimiterWrapper, Pending pending) {
+        return pending.replaceOldest(rateLimiterWrapper.rateLimiter.invokeAsync());
+    }
+
+    @State(Scope.Group)
+    public static class RateLimiterWrapper {
+        @Param({"CasRateLimiter",
+                "StampLockRateLimiter",
+                "SynchronizedRateLimiter",
+        })
+        private String rateLimiterType;
+
+        private RateLimiter rateLimiter;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            rateLimiter = RateLimiters.create(rateLimiterType, 10_000, Duration.ofMillis(1), 1);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            rateLimiter.reset();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Pending {
+        @Param({"10000"})
+        private int numOfPending;
+
+        private CompletableFuture<Long>[] futures;
+        private int index;
+
+        @SuppressWarnings("unchecked")
+        @Setup(Level.Iteration)
+        public void setup() {
+            futures = new CompletableFuture[numOfPending];
+            index = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            for (CompletableFuture<Long> future : futures) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+            }
+        }
+
+        long replaceOldest(CompletableFuture<Long> future) {
+            final CompletableFuture<Long> oldest = futures[index];
+            futures[index] = future;
+            index = index + 1 == futures.length ? 0 : index + 1;
+            return oldest == null ? 0 : oldest.join();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A producer draining 'batchSize' elements, which takes the release times of the whole batch with a single 'admit'
+ * or calls 'invoke' for every element. The limit is never reached, so nothing is paused, and a score is the time of a
+ * whole batch, i.e. divide it by 'batchSize' for the time per element.
+ */
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class BatchAdmitBenchmark {
+
+    @Param({"1", "16", "256", "4096"})
+    private int batchSize;
+
+    private StampLockRateLimiter rateLimiter;
+    private long[] releaseTimes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        rateLimiter = new StampLockRateLimiter(10_000, Duration.ofNanos(1));
+        releaseTimes = new long[batchSize];
+    }
+
+    @Benchmark
+    public int admit() {
+        return rateLimiter.admit(releaseTimes, batchSize);
+    }
+
+    @Benchmark
+    public long invoke_each() throws InterruptedException {
+        long releaseTime = 0;
+        for (int i = 0; i < batchSize; i++) {
+            releaseTime = rateLimiter.invoke();
+        }
+        return releaseTime;
+    }
+}
@@ -0,0 +1,44 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of an invocation with release times kept as longs and as compact offsets, with histories from a few cache
+ * lines to many megabytes. Run with '-prof perfnorm' (Linux perf) to compare 'L1-dcache-load-misses' and
+ * 'LLC-load-misses' per operation, and with '-prof gc' to compare the heap allocated per rate limiter.
+ */
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class CompactHistoryBenchmark {
+
+    private static final Duration DURATION = Duration.ofMillis(100);
+
+    @Param({"heap", "compact"})
+    private String store;
+
+    @Param({"10000", "1000000"})
+    private int maxInvokes;
+
+    private RateLimiter rateLimiter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // 32 bits of nanoseconds cover 100 ms, so that nothing is rounded.
+        final HistoryStore historyStore = "heap".equals(store) ? HistoryStore.heap()
+                : HistoryStore.compact(Duration.ofNanos(1));
+        rateLimiter = new SynchronizedRateLimiter(maxInvokes, DURATION, 1, WaitStrategy.sleep(), null,
+                TimeSource.system(), historyStore);
+    }
+
+    @Benchmark
+    public boolean tryInvoke() {
+        return rateLimiter.tryInvoke();
+    }
+}
@@ -0,0 +1,57 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Three limits at once, 100 per second, 2,000 per minute and 50,000 per hour (scaled up, so that they are rarely
+ * reached), enforced by a composite rate limiter and by chaining three rate limiters.
+ */
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class CompositeRateLimiterBenchmark {
+
+    private static final int SCALE = 100_000;
+
+    @Param({"composite", "chained"})
+    private String rateLimiterType;
+
+    private RateLimiter[] rateLimiters;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if ("composite".equals(rateLimiterType)) {
+            rateLimiters = new RateLimiter[]{new CompositeRateLimiter(
+                    new CompositeRateLimiter.Limit(100 * SCALE, Duration.ofSeconds(1), 100),
+                    new CompositeRateLimiter.Limit(2_000 * SCALE, Duration.ofMinutes(1), 2_000),
+                    new CompositeRateLimiter.Limit(50_000 * SCALE, Duration.ofHours(1), 50_000))};
+        } else {
+            rateLimiters = new RateLimiter[]{
+                    new SynchronizedRateLimiter(100 * SCALE, Duration.ofSeconds(1), 100),
+                    new SynchronizedRateLimiter(2_000 * SCALE, Duration.ofMinutes(1), 2_000),
+                    new SynchronizedRateLimiter(50_000 * SCALE, Duration.ofHours(1), 50_000)};
+        }
+    }
+
+    @Benchmark
+    public boolean tryInvoke() {
+        for (RateLimiter rateLimiter : rateLimiters) {
+            if (!rateLimiter.tryInvoke()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean tryInvoke_4_threads() {
+        return tryInvoke();
+    }
+}
@@ -0,0 +1,39 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The wait time of invocations under overload, i.e. 16 threads invoking as fast as they can a rate limiter of 1000
+ * invokes per 10 milliseconds. Compare the percentiles of 'invoke' (p0.50, p0.99, p0.999) rather than the mean, which
+ * is the same for both: invocations of the unfair rate limiter race for its lock, so some of them wait for many
+ * windows, while the fair rate limiter releases them in arrival order.
+ */
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class FairnessBenchmark {
+
+    @Param({"fair", "unfair"})
+    private String rateLimiterType;
+
+    private RateLimiter rateLimiter;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        rateLimiter = "fair".equals(rateLimiterType)
+                ? new FairRateLimiter(1000, Duration.ofMillis(10))
+                : new SynchronizedRateLimiter(1000, Duration.ofMillis(10));
+    }
+
+    @Benchmark
+    @Threads(16)
+    public long invoke() throws InterruptedException {
+        return rateLimiter.invoke();
+    }
+}
@@ -0,0 +1,72 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of a history on the heap, off the heap and in a mapped file. Run with '-prof gc' to compare the heap
+ * allocated per rate limiter ('gc.alloc.rate.norm') and the time spent in GC ('gc.time').
+ */
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class HistoryStoreBenchmark {
+
+    @Param({"heap", "offHeap", "mapped"})
+    private String store;
+
+    @Param({"1000000", "10000000"})
+    private int maxInvokes;
+
+    private File file;
+    private RateLimiter rateLimiter;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final Path path = Files.createTempFile("rate-limiter", ".history");
+        file = path.toFile();
+        file.deleteOnExit();
+        // every invocation is recorded, and the window is never full, so that 'invoke' writes the history only.
+        rateLimiter = create(path);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Creating a rate limiter allocates its whole history.
+     */
+    @Benchmark
+    public RateLimiter create() throws IOException {
+        final Path path = Files.createTempFile("rate-limiter", ".history");
+        try {
+            return create(path);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Benchmark
+    public long invoke() throws InterruptedException {
+        return rateLimiter.invoke();
+    }
+
+    private RateLimiter create(final Path path) {
+        final HistoryStore historyStore = "heap".equals(store) ? HistoryStore.heap()
+                : "offHeap".equals(store) ? HistoryStore.offHeap()
+                : HistoryStore.mapped(path);
+        return new SynchronizedRateLimiter(maxInvokes, Duration.ofNanos(1), 1, WaitStrategy.sleep(), null,
+                TimeSource.system(), historyStore);
+    }
+}
@@ -0,0 +1,119 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class KeyedRateLimiterBenchmark {
+
+    @Group("thread_1")
+    @GroupThreads(1)
+    @Benchmark
+    public boolean thread_1(KeyedRateLimiterWrapper wrapper, Keys keys) {
+        return wrapper.rateLimiter.tryInvoke(keys.next());
+    }
+
+    @Group("thread_10")
+    @GroupThreads(10)
+    @Benchmark
+    public boolean thread_10(KeyedRateLimiterWrapper wrapper, Keys keys) {
+        return wrapper.rateLimiter.tryInvoke(keys.next());
+    }
+
+    @Group("thread_100")
+    @GroupThreads(100)
+    @Benchmark
+    public boolean thread_100(KeyedRateLimiterWrapper wrapper, Keys keys) {
+        return wrapper.rateLimiter.tryInvoke(keys.next());
+    }
+
+    @State(Scope.Group)
+    public static class KeyedRateLimiterWrapper {
+        @Param({"1000", "100000", "500000"})
+        private int numOfKeys;
+
+        private KeyedRateLimiter<Integer> rateLimiter;
+        private Integer[] keys;
+
+        @Setup(Level.Trial)
+        public void setupKeys() {
+            keys = new Integer[numOfKeys];
+            for (int i = 0; i < numOfKeys; i++) {
+                keys[i] = i;
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            rateLimiter = new KeyedRateLimiter<>(100, Duration.ofMillis(1), 1, Duration.ofMillis(10), numOfKeys);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            rateLimiter.reset();
+        }
+    }
+
+    /**
+     * Keys are drawn ahead of the measurement, so that the cost of drawing a key is not measured.
+     */
+    @State(Scope.Thread)
+    public static class Keys {
+        private static final int NUM_OF_DRAWS = 1 << 16;
+
+        @Param({"uniform", "zipfian"})
+        private String distribution;
+
+        private Integer[] keys;
+        private int[] draws;
+        private int index;
+
+        @Setup(Level.Trial)
+        public void setup(KeyedRateLimiterWrapper wrapper) {
+            final Random random = new Random(Thread.currentThread().getId());
+            final int numOfKeys = wrapper.numOfKeys;
+            keys = wrapper.keys;
+            draws = new int[NUM_OF_DRAWS];
+            if ("uniform".equals(distribution)) {
+                for (int i = 0; i < NUM_OF_DRAWS; i++) {
+                    draws[i] = random.nextInt(numOfKeys);
+                }
+            } else {
+                // zipfian with exponent 1, drawn by a binary search on its cumulative distribution.
+                final double[] cumulative = new double[numOfKeys];
+                double sum = 0;
+                for (int i = 0; i < numOfKeys; i++) {
+                    sum += 1.0d / (i + 1);
+                    cumulative[i] = sum;
+                }
+                for (int i = 0; i < NUM_OF_DRAWS; i++) {
+                    final double target = random.nextDouble() * sum;
+                    int low = 0;
+                    int high = numOfKeys - 1;
+                    while (low < high) {
+                        final int mid = (low + high) >>> 1;
+                        if (cumulative[mid] < target) {
+                            low = mid + 1;
+                        } else {
+                            high = mid;
+                        }
+                    }
+                    draws[i] = low;
+                }
+            }
+        }
+
+        Integer next() {
+            final Integer key = keys[draws[index]];
+            index = (index + 1) & (NUM_OF_DRAWS - 1);
+            return key;
+        }
+    }
+}
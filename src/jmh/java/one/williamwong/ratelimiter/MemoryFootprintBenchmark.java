@@ -0,0 +1,50 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory per instance of a rate limiter with a full window. Run with '-prof gc' and read 'gc.alloc.rate.norm', i.e.
+ * the bytes allocated to create a rate limiter and take its whole limit. A sliding log grows with 'maxInvokes /
+ * samplingInterval', and the bytes include the arrays it has outgrown on the way.
+ */
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class MemoryFootprintBenchmark {
+
+    private static final Duration DURATION = Duration.ofHours(1);
+
+    @Param({"1000", "100000"})
+    private int maxInvokes;
+
+    @Param({"SynchronizedRateLimiter/1",
+            "SynchronizedRateLimiter/100",
+            "WindowCounterRateLimiter/10",
+            "WindowCounterRateLimiter/100",
+    })
+    private String rateLimiterType;
+
+    @Benchmark
+    public RateLimiter full_window() {
+        final RateLimiter rateLimiter = create();
+        for (int i = 0; i < maxInvokes; i++) {
+            rateLimiter.tryInvoke();
+        }
+        return rateLimiter;
+    }
+
+    private RateLimiter create() {
+        final String[] typeAndParameter = rateLimiterType.split("/");
+        final int parameter = Integer.parseInt(typeAndParameter[1]);
+        if ("SynchronizedRateLimiter".equals(typeAndParameter[0])) {
+            return new SynchronizedRateLimiter(maxInvokes, DURATION, parameter);
+        }
+        return new WindowCounterRateLimiter(maxInvokes, DURATION, parameter);
+    }
+}
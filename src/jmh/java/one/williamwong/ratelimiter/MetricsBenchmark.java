@@ -0,0 +1,53 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares rate limiters with and without {@link RateLimiterMetrics}, under the same load as the 'thread_100' group
+ * of {@link RaterLimiterBenchmark}.
+ */
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MetricsBenchmark {
+
+    @Group("thread_100")
+    @GroupThreads(100)
+    @Benchmark
+    public void thread_100(RateLimiterWrapper rateLimiterWrapper) throws Exception {
+        rateLimiterWrapper.rateLimiter.invoke();
+    }
+
+    @State(Scope.Group)
+    public static class RateLimiterWrapper {
+        @Param({"StampLockRateLimiter",
+                "SynchronizedRateLimiter",
+        })
+        private String rateLimiterType;
+
+        @Param({"false", "true"})
+        private boolean metrics;
+
+        private RateLimiter rateLimiter;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            final RateLimiterListener listener = metrics ? new RateLimiterMetrics() : null;
+            if ("StampLockRateLimiter".equals(rateLimiterType)) {
+                rateLimiter = new StampLockRateLimiter(1_000, Duration.ofNanos(500), 1, WaitStrategy.sleep(), listener);
+            } else {
+                rateLimiter = new SynchronizedRateLimiter(1_000, Duration.ofNanos(500), 1, WaitStrategy.sleep(), listener);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            rateLimiter.reset();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invocations arriving on a schedule, at 'load' times the limit of 10,000 per second, no matter how long the ones
+ * before them take (open loop). A closed-loop benchmark invokes again only once it is released, so it offers less
+ * load the more the rate limiter throttles, and hides the time the next invocations would have waited (coordinated
+ * omission).
+ * <p>
+ * An invocation is reserved at its arrival, so that the thread is never paused and keeps the schedule. Its latency is
+ * measured from the time it was scheduled to arrive, rather than the time it was reserved, so that an arrival delayed
+ * by a slow reservation still counts the delay. The score is the rate of arrivals, and the secondary results split it
+ * by latency, see {@link Latency}, or into admitted and rejected invocations:
+ * <ul>
+ * <li>under the limit (0.5), an invocation is released as it arrives.</li>
+ * <li>at the limit (1), invocations are released as they arrive, but a late arrival may take the place of the next.</li>
+ * <li>over the limit (10), invocations queue for ever longer, and 'tryInvoke' rejects 9 in 10 of them.</li>
+ * </ul>
+ */
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class OpenLoopBenchmark {
+
+    private static final int MAX_INVOKES = 10_000;
+    private static final Duration DURATION = Duration.ofSeconds(1);
+
+    @Param({"CasRateLimiter",
+            "FairRateLimiter",
+            "GcraRateLimiter",
+            "StampLockRateLimiter",
+            "SynchronizedRateLimiter",
+            "TokenBucketRateLimiter",
+    })
+    private String rateLimiterType;
+
+    @Param({"0.5", "1", "10"})
+    private double load;
+
+    private RateLimiter rateLimiter;
+    private long interval;
+    private long nextArrival;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        rateLimiter = RateLimiters.create(rateLimiterType, MAX_INVOKES, DURATION, 1);
+        interval = (long) (DURATION.toNanos() / MAX_INVOKES / load);
+        nextArrival = System.nanoTime();
+    }
+
+    @Benchmark
+    public void reserve(final Latency latency) {
+        final long arrival = arrive();
+        latency.record(rateLimiter.reserve().releaseTime() - arrival);
+    }
+
+    @Benchmark
+    public boolean tryInvoke(final Admission admission) {
+        arrive();
+        return admission.record(rateLimiter.tryInvoke());
+    }
+
+    /**
+     * @return the time the invocation was scheduled to arrive, which may be earlier than now if the previous one was
+     * late.
+     */
+    private long arrive() {
+        final long arrival = nextArrival;
+        nextArrival += interval;
+        while (System.nanoTime() - arrival < 0) {
+            Thread.onSpinWait();
+        }
+        return arrival;
+    }
+
+    /**
+     * The rates of invocations released within 100 microseconds, 1 millisecond and 10 milliseconds of their arrival,
+     * and later. Divide them by the score for the fraction of invocations in each, i.e. the latency distribution.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Latency {
+        private static final long WITHIN_100_US = TimeUnit.MICROSECONDS.toNanos(100);
+        private static final long WITHIN_1_MS = TimeUnit.MILLISECONDS.toNanos(1);
+        private static final long WITHIN_10_MS = TimeUnit.MILLISECONDS.toNanos(10);
+
+        public long within100us;
+        public long within1ms;
+        public long within10ms;
+        public long later;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            within100us = 0;
+            within1ms = 0;
+            within10ms = 0;
+            later = 0;
+        }
+
+        void record(final long latency) {
+            if (latency <= WITHIN_100_US) {
+                within100us++;
+            } else if (latency <= WITHIN_1_MS) {
+                within1ms++;
+            } else if (latency <= WITHIN_10_MS) {
+                within10ms++;
+            } else {
+                later++;
+            }
+        }
+    }
+
+    /**
+     * The rates of admitted and rejected invocations.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Admission {
+        public long admitted;
+        public long rejected;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            admitted = 0;
+            rejected = 0;
+        }
+
+        boolean record(final boolean admitted) {
+            if (admitted) {
+                this.admitted++;
+            } else {
+                rejected++;
+            }
+            return admitted;
+        }
+    }
+}
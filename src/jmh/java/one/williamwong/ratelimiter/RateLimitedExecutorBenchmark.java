@@ -0,0 +1,72 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Submitting threads handing tasks over to an executor service at 'maxInvokes' per second, either by invoking the rate
+ * limiter before every 'submit' (manual) or through a {@link RateLimitedExecutorService}. The queue of the latter is
+ * bounded and runs a task on the submitter when it is full, so that the submitters are slowed down to the rate
+ * allowed rather than filling the queue without limit.
+ * <p>
+ * The throughput of a benchmark is the tasks per second handed over, and its sample time is the latency of a
+ * submitter, i.e. how long 'submit' takes.
+ */
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class RateLimitedExecutorBenchmark {
+
+    private static final Runnable TASK = () -> {
+    };
+
+    @Param({"10000", "1000000"})
+    private int maxInvokes;
+
+    @Param({"1024"})
+    private int maxQueueSize;
+
+    @Param({"64"})
+    private int maxBatchSize;
+
+    private RateLimiter rateLimiter;
+    private ExecutorService executorService;
+    private RateLimitedExecutorService rateLimitedExecutorService;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        rateLimiter = new StampLockRateLimiter(maxInvokes, Duration.ofSeconds(1));
+        executorService = Executors.newFixedThreadPool(4);
+        rateLimitedExecutorService = new RateLimitedExecutorService(
+                Executors.newFixedThreadPool(4), new StampLockRateLimiter(maxInvokes, Duration.ofSeconds(1)),
+                maxQueueSize, RateLimitedExecutorService.RejectionPolicy.CALLER_RUNS, maxBatchSize);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        executorService.shutdownNow();
+        rateLimitedExecutorService.shutdownNow();
+    }
+
+    @Group("manual_4")
+    @GroupThreads(4)
+    @Benchmark
+    public Object manual_4() throws InterruptedException {
+        rateLimiter.invoke();
+        return executorService.submit(TASK);
+    }
+
+    @Group("decorated_4")
+    @GroupThreads(4)
+    @Benchmark
+    public Object decorated_4() {
+        return rateLimitedExecutorService.submit(TASK);
+    }
+}
@@ -0,0 +1,44 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+
+/**
+ * Creates the rate limiters compared by the benchmarks by their class names, so that a benchmark can take them as a
+ * parameter.
+ */
+final class RateLimiters {
+
+    private RateLimiters() {
+    }
+
+    /**
+     * @param samplingInterval the sampling interval of a sliding log, ignored by the other rate limiters
+     */
+    static RateLimiter create(final String rateLimiterType, final int maxInvokes, final Duration duration,
+                              final int samplingInterval) {
+        switch (rateLimiterType) {
+            case "GuavaRateLimiter":
+                return new GuavaRateLimiter(maxInvokes, duration);
+            case "CasRateLimiter":
+                return new CasRateLimiter(maxInvokes, duration);
+            case "FairRateLimiter":
+                return new FairRateLimiter(maxInvokes, duration, samplingInterval);
+            case "GcraRateLimiter":
+                return new GcraRateLimiter(maxInvokes, duration);
+            case "ReentrantLockRateLimiter":
+                return new ReentrantLockRateLimiter(maxInvokes, duration, samplingInterval);
+            case "StampLockRateLimiter":
+                return new StampLockRateLimiter(maxInvokes, duration, samplingInterval);
+            case "StripedRateLimiter":
+                return new StripedRateLimiter(maxInvokes, duration);
+            case "SynchronizedRateLimiter":
+                return new SynchronizedRateLimiter(maxInvokes, duration, samplingInterval);
+            case "TokenBucketRateLimiter":
+                return new TokenBucketRateLimiter(maxInvokes, duration);
+            case "WindowCounterRateLimiter":
+                return new WindowCounterRateLimiter(maxInvokes, duration);
+            default:
+                throw new IllegalArgumentException("unknown rate limiter " + rateLimiterType);
+        }
+    }
+}
@@ -5,55 +5,94 @@ import org.openjdk.jmh.annotations.*;
 import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
-@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+/**
+ * Closed-loop invocations, i.e. every thread invokes again as soon as it is released, swept over the limit:
+ * <ul>
+ * <li>'PT0.0000005S', i.e. 'maxInvokes' per 500 nanoseconds, is rarely reached, so it measures the cost of an
+ * invocation.</li>
+ * <li>'PT1S' is reached right away, so it measures how invocations are paused when the rate limiter throttles.</li>
+ * </ul>
+ * Every benchmark runs as throughput and as sample time, whose percentiles (p0.50, p0.99, p0.999) tell how long an
+ * invocation takes, including its pause. The sweep takes hours in full; narrow it with '-p', e.g.
+ * '-p rateLimiterType=StampLockRateLimiter -p samplingInterval=1'. See {@link OpenLoopBenchmark} for invocations
+ * arriving at a given rate.
+ */
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
 @Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
-@Fork(3)
-@BenchmarkMode(Mode.Throughput)
-@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
 public class RaterLimiterBenchmark {
 
     @Group("thread_1")
     @GroupThreads(1)
     @Benchmark
-    public void thread_1(RateLimiterWrapper rateLimiterWrapper) throws Exception {
-        rateLimiterWrapper.rateLimiter.invoke();
+    public long thread_1(RateLimiterWrapper rateLimiterWrapper) throws Exception {
+        return rateLimiterWrapper.rateLimiter.invoke();
     }
 
     @Group("thread_10")
     @GroupThreads(10)
     @Benchmark
-    public void thread_10(RateLimiterWrapper rateLimiterWrapper) throws Exception {
-        rateLimiterWrapper.rateLimiter.invoke();
+    public long thread_10(RateLimiterWrapper rateLimiterWrapper) throws Exception {
+        return rateLimiterWrapper.rateLimiter.invoke();
     }
 
     @Group("thread_100")
     @GroupThreads(100)
     @Benchmark
-    public void thread_100(RateLimiterWrapper rateLimiterWrapper) throws Exception {
-        rateLimiterWrapper.rateLimiter.invoke();
+    public long thread_100(RateLimiterWrapper rateLimiterWrapper) throws Exception {
+        return rateLimiterWrapper.rateLimiter.invoke();
+    }
+
+    @Group("reject_10")
+    @GroupThreads(10)
+    @Benchmark
+    public boolean reject_10(RateLimiterWrapper rateLimiterWrapper) {
+        return rateLimiterWrapper.rejectingRateLimiter.tryInvoke();
     }
 
     @State(Scope.Group)
     public static class RateLimiterWrapper {
         @Param({"GuavaRateLimiter",
+                "CasRateLimiter",
+                "FairRateLimiter",
+                "GcraRateLimiter",
+                "ReentrantLockRateLimiter",
                 "StampLockRateLimiter",
+                "StripedRateLimiter",
                 "SynchronizedRateLimiter",
+                "TokenBucketRateLimiter",
+                "WindowCounterRateLimiter",
         })
         private String rateLimiterType;
 
+        @Param({"1000", "100000"})
+        private int maxInvokes;
+
+        @Param({"PT0.0000005S", "PT1S"})
+        private String duration;
+
+        // only taken by the sliding-log rate limiters.
+        @Param({"1", "10"})
+        private int samplingInterval;
+
         private RateLimiter rateLimiter;
 
+        // allows only a handful of invocations in an iteration, so that almost every 'tryInvoke' is rejected.
+        private RateLimiter rejectingRateLimiter;
+
         @Setup(Level.Iteration)
-        public void setup() throws Exception {
-            final String packageName = "one.williamwong.ratelimiter";
-            rateLimiter = (RateLimiter) Class.forName(packageName + "." + rateLimiterType)
-                    .getConstructor(int.class, Duration.class)
-                    .newInstance(1_000, Duration.ofNanos(500));
+        public void setup() {
+            rateLimiter = RateLimiters.create(rateLimiterType, maxInvokes, Duration.parse(duration),
+                    samplingInterval);
+            rejectingRateLimiter = RateLimiters.create(rateLimiterType, 10, Duration.ofSeconds(10), 1);
         }
 
         @TearDown(Level.Iteration)
         public void tearDown() {
             rateLimiter.reset();
+            rejectingRateLimiter.reset();
         }
     }
 
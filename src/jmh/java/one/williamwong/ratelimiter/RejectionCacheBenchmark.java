@@ -0,0 +1,96 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An abuse spike: a handful of hot keys send 99% of the invocations, and have used up their windows, so they are
+ * rejected, while the other keys stay within their limits. With a 'rejectionCacheSize' of 0, every rejection looks
+ * up and locks the window of its key; otherwise, the rejections of the hot keys are served from the cache.
+ */
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RejectionCacheBenchmark {
+
+    private static final int NUM_OF_HOT_KEYS = 16;
+    private static final int NUM_OF_KEYS = 100_000;
+
+    @Group("thread_1")
+    @GroupThreads(1)
+    @Benchmark
+    public boolean thread_1(KeyedRateLimiterWrapper wrapper, Keys keys) {
+        return wrapper.rateLimiter.tryInvoke(keys.next());
+    }
+
+    @Group("thread_10")
+    @GroupThreads(10)
+    @Benchmark
+    public boolean thread_10(KeyedRateLimiterWrapper wrapper, Keys keys) {
+        return wrapper.rateLimiter.tryInvoke(keys.next());
+    }
+
+    @State(Scope.Group)
+    public static class KeyedRateLimiterWrapper {
+        @Param({"0", "1024"})
+        private int rejectionCacheSize;
+
+        private KeyedRateLimiter<Integer> rateLimiter;
+        private Integer[] keys;
+
+        @Setup(Level.Trial)
+        public void setupKeys() {
+            keys = new Integer[NUM_OF_KEYS];
+            for (int i = 0; i < NUM_OF_KEYS; i++) {
+                keys[i] = i;
+            }
+        }
+
+        /**
+         * The hot keys use up their windows, which last longer than an iteration.
+         */
+        @Setup(Level.Iteration)
+        public void setup() {
+            rateLimiter = new KeyedRateLimiter<>(
+                    1_000, Duration.ofMinutes(1), 1, Duration.ofMinutes(1), NUM_OF_KEYS, rejectionCacheSize);
+            for (int key = 0; key < NUM_OF_HOT_KEYS; key++) {
+                rateLimiter.tryInvoke(keys[key], 1_000);
+            }
+        }
+    }
+
+    /**
+     * Keys are drawn ahead of the measurement: 99% of them are hot keys, the rest any of the other keys.
+     */
+    @State(Scope.Thread)
+    public static class Keys {
+        private static final int NUM_OF_DRAWS = 1 << 16;
+
+        private Integer[] keys;
+        private int[] draws;
+        private int index;
+
+        @Setup(Level.Trial)
+        public void setup(KeyedRateLimiterWrapper wrapper) {
+            final Random random = new Random(Thread.currentThread().getId());
+            keys = wrapper.keys;
+            draws = new int[NUM_OF_DRAWS];
+            for (int i = 0; i < NUM_OF_DRAWS; i++) {
+                draws[i] = random.nextInt(100) < 99
+                        ? random.nextInt(NUM_OF_HOT_KEYS)
+                        : NUM_OF_HOT_KEYS + random.nextInt(NUM_OF_KEYS - NUM_OF_HOT_KEYS);
+            }
+        }
+
+        Integer next() {
+            final Integer key = keys[draws[index]];
+            index = (index + 1) & (NUM_OF_DRAWS - 1);
+            return key;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread invoking a sliding log of 1,000 per 100 milliseconds as fast as it is released, right after a reset, with
+ * and without a {@link SmoothRateLimiter} in front of it:
+ * <ul>
+ * <li>'none' releases 1,000 invocations at once, and then nothing for the rest of the window.</li>
+ * <li>'smooth' releases an invocation every 100 microseconds.</li>
+ * <li>'burst_100' releases 100 at once, and then paces the rest a little slower.</li>
+ * <li>'warm_up' starts 3 times slower, and reaches the stable rate after 500 milliseconds.</li>
+ * </ul>
+ * The score is the rate of invocations, which is about the same for all of them. The secondary results split the
+ * time into slots of 10 milliseconds by the arrivals the downstream sees in each, see {@link Arrivals}; the lower the
+ * variance of the arrival rate, the more of them are 'even'.
+ */
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class SmoothingBenchmark {
+
+    private static final int MAX_INVOKES = 1_000;
+    private static final Duration DURATION = Duration.ofMillis(100);
+
+    @Param({"none", "smooth", "burst_100", "warm_up"})
+    private String smoothing;
+
+    private RateLimiter rateLimiter;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        final RateLimiter slidingLog = new StampLockRateLimiter(MAX_INVOKES, DURATION);
+        switch (smoothing) {
+            case "smooth":
+                rateLimiter = new SmoothRateLimiter(slidingLog, MAX_INVOKES, DURATION);
+                break;
+            case "burst_100":
+                rateLimiter = new SmoothRateLimiter(slidingLog, MAX_INVOKES, DURATION, 100);
+                break;
+            case "warm_up":
+                rateLimiter = new SmoothRateLimiter(slidingLog, MAX_INVOKES, DURATION, 1, Duration.ofMillis(500));
+                break;
+            default:
+                rateLimiter = slidingLog;
+        }
+    }
+
+    @Benchmark
+    public long invoke(final Arrivals arrivals) throws InterruptedException {
+        return arrivals.record(rateLimiter.invoke());
+    }
+
+    /**
+     * The rates of slots of 10 milliseconds with no arrivals, fewer than half the arrivals of an even rate, within
+     * half of an even rate, and more than 1.5 times of it. There are 100 slots in a second, so a rate is the percentage
+     * of time spent in a slot of its kind.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Arrivals {
+        private static final long SLOT = TimeUnit.MILLISECONDS.toNanos(10);
+        private static final long EVEN = MAX_INVOKES * SLOT / DURATION.toNanos();
+
+        public long idle;
+        public long sparse;
+        public long even;
+        public long bursting;
+
+        private long slot;
+        private long arrivalsInSlot;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            idle = 0;
+            sparse = 0;
+            even = 0;
+            bursting = 0;
+            slot = System.nanoTime() / SLOT;
+            arrivalsInSlot = 0;
+        }
+
+        long record(final long releaseTime) {
+            final long slotOfArrival = releaseTime / SLOT;
+            if (slotOfArrival != slot) {
+                count(arrivalsInSlot);
+                idle += Math.max(0, slotOfArrival - slot - 1);
+                slot = slotOfArrival;
+                arrivalsInSlot = 0;
+            }
+            arrivalsInSlot++;
+            return releaseTime;
+        }
+
+        private void count(final long arrivals) {
+            if (arrivals == 0) {
+                idle++;
+            } else if (arrivals < EVEN / 2) {
+                sparse++;
+            } else if (arrivals <= EVEN * 3 / 2) {
+                even++;
+            } else {
+                bursting++;
+            }
+        }
+    }
+}
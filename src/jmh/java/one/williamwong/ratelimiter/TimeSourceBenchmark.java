@@ -0,0 +1,42 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of reading the time, and of a rejected 'tryInvoke', which reads the time once and does little else.
+ */
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class TimeSourceBenchmark {
+
+    @Param({"system", "cached"})
+    private String timeSourceType;
+
+    private TimeSource timeSource;
+    private RateLimiter rateLimiter;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        timeSource = "system".equals(timeSourceType)
+                ? TimeSource.system()
+                : TimeSource.cached(Duration.ofMillis(1));
+        rateLimiter = new SynchronizedRateLimiter(10, Duration.ofHours(1), 1, WaitStrategy.sleep(), null, timeSource);
+    }
+
+    @Benchmark
+    public long nano_time() {
+        return timeSource.nanoTime();
+    }
+
+    @Benchmark
+    public boolean reject() {
+        return rateLimiter.tryInvoke();
+    }
+}
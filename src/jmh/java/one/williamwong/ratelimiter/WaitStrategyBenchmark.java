@@ -0,0 +1,58 @@
+package one.williamwong.ratelimiter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * Measures how accurate every wait strategy is, rather than how fast. 'await' pauses for 'pauseNanos', so the
+ * sampled time minus 'pauseNanos' is the overshoot of the strategy; compare the percentiles, not the mean.
+ * 'invoke' pauses on a rate limiter of 1000 invokes per 500 nanoseconds, as in {@link RaterLimiterBenchmark}.
+ */
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(3)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WaitStrategyBenchmark {
+
+    @Benchmark
+    public void await(Strategy strategy, Pause pause) throws Exception {
+        strategy.waitStrategy.await(nanoTime() + pause.pauseNanos);
+    }
+
+    @Group("invoke_4")
+    @GroupThreads(4)
+    @Benchmark
+    public long invoke_4(Strategy strategy) throws Exception {
+        return strategy.rateLimiter.invoke();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Strategy {
+        @Param({"sleep", "park", "busySpin", "spinYieldPark"})
+        private String waitStrategyType;
+
+        private WaitStrategy waitStrategy;
+        private RateLimiter rateLimiter;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            waitStrategy = (WaitStrategy) WaitStrategy.class.getMethod(waitStrategyType).invoke(null);
+        }
+
+        @Setup(Level.Iteration)
+        public void setupRateLimiter() {
+            rateLimiter = new SynchronizedRateLimiter(1_000, Duration.ofNanos(500), 1, waitStrategy);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Pause {
+        @Param({"500", "10000", "1000000"})
+        private long pauseNanos;
+    }
+}
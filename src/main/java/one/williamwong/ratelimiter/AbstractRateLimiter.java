@@ -1,18 +1,17 @@
 package one.williamwong.ratelimiter;
 
 import java.time.Duration;
-import java.util.Arrays;
-
-import static java.lang.System.nanoTime;
-import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import java.util.concurrent.CompletableFuture;
 
 abstract class AbstractRateLimiter implements RateLimiter {
 
-    private final int maxInvokes;
-    private final int samplingInterval;
-    private final long duration;
-    private final long[] records;
-    private int pointer;
+    private final History history;
+    private final WaitStrategy waitStrategy;
+    private final RateLimiterListener listener;
+    private final TimeSource timeSource;
+    // read without the lock to check the permits of an invocation.
+    private volatile int maxInvokes;
+    private long duration;
 
     /**
      * Create a rate limiter which allows at most 'maxInvokes' invocations in last 'duration'.
@@ -21,59 +20,215 @@ abstract class AbstractRateLimiter implements RateLimiter {
      * block current execution. The higher maxInvokes value, the more memory will be needed. To reduce the amount
      * of memory required, we can adjust the `samplingInterval` value. If `samplingInterval` is 1, this rate limiter records the
      * invocation time of every last 'maxInvokes' invocations. If `samplingInterval` is N, this rate limiter records the
-     * invocation time of 1st, N+1th, 2N+1th, .. up to maxInvokes th invocations. The higher samplingInterval value, less memory
+     * invocation time of every N invocations, up to maxInvokes th invocations. The higher samplingInterval value, less memory
      * will be required. However, a higher samplingInterval value also means less accurate this rate limiter will be.
      *
      * @param maxInvokes
      * @param duration
      * @param samplingInterval
+     * @param waitStrategy
+     * @param listener         the listener of invocations, or null
+     * @param timeSource       where the current time is read from
+     * @param historyStore     where the invocation history is kept
      */
-    AbstractRateLimiter(int maxInvokes, Duration duration, int samplingInterval) {
+    AbstractRateLimiter(int maxInvokes, Duration duration, int samplingInterval, WaitStrategy waitStrategy,
+                        RateLimiterListener listener, TimeSource timeSource, HistoryStore historyStore) {
         if (samplingInterval >= maxInvokes) {
             throw new IllegalArgumentException("samplingInterval cannot be more than max invokes");
         }
         this.maxInvokes = maxInvokes;
-        this.samplingInterval = samplingInterval;
         this.duration = duration.toNanos();
-        this.records = new long[(int) Math.ceil(maxInvokes * 1.0d / samplingInterval)];
-        this.pointer = 0;
+        this.history = new History(maxInvokes, samplingInterval, Integer.MAX_VALUE, historyStore, this.duration);
+        this.waitStrategy = waitStrategy;
+        this.listener = listener;
+        this.timeSource = timeSource;
     }
 
-    protected void resetHistory() {
-        Arrays.fill(records, 0);
-        this.pointer = 0;
+    @Override
+    public CompletableFuture<Long> invokeAsync(int permits) {
+        return ReservedFuture.of(reserve(permits));
     }
 
+    /**
+     * Return the permits of a reservation, under the lock of the rate limiter.
+     *
+     * @see #cancelReservation(long, long, int)
+     */
+    abstract boolean cancel(long generation, long end, int permits);
 
-    protected long pauseIfRequired() throws InterruptedException {
-        long now = nanoTime();
-        long referenceRecord = referenceRecord();
-        if (referenceRecord != 0 && (now - referenceRecord) < duration) {
-            long until = duration + referenceRecord;
-            long pausedTime;
-            while ((pausedTime = until - nanoTime()) > 0) {
-                NANOSECONDS.sleep(pausedTime);
+    /**
+     * Record an invocation released at the earliest time it can be, without pausing, under the lock of the rate
+     * limiter.
+     *
+     * @param permits the number of permits of the invocation
+     * @return the reservation of the invocation
+     */
+    protected Reservation recordReservation(int permits) {
+        final long now = now();
+        final long until = releaseTime(now, permits);
+        admitted(permits, until - now);
+        history.record(until, permits);
+        final long generation = history.generation();
+        final long end = history.issued();
+        return new Reservation(until, timeSource, () -> cancel(generation, end, permits));
+    }
+
+    /**
+     * Record a batch of invocations of a permit each, under the lock of the rate limiter. The time is read once for
+     * the whole batch, and the invocations are not paused.
+     *
+     * @param releaseTimes the array the release times are written into
+     * @param requested    the number of invocations
+     * @return the number of invocations released right away
+     */
+    protected int recordBatch(long[] releaseTimes, int requested) {
+        final long now = now();
+        int released = 0;
+        for (int i = 0; i < requested; i++) {
+            final long until = releaseTime(now, 1);
+            admitted(1, until - now);
+            history.record(until, 1);
+            releaseTimes[i] = until;
+            if (until == now) {
+                released++;
             }
-            return until;
         }
-        return now;
+        return released;
+    }
+
+    /**
+     * A reservation returns its permits right away if nothing has been recorded after it. Otherwise, it no longer
+     * pauses the invocation referring to it, unless it has been merged with others by sampling.
+     *
+     * @see History#cancel(long, long, int)
+     */
+    protected boolean cancelReservation(long generation, long end, int permits) {
+        return history.cancel(generation, end, permits);
+    }
+
+    /**
+     * Change the rate under the lock of the rate limiter. The history is kept, so an invocation recorded before
+     * still pauses the invocations after it, at the new rate. An invocation already paused keeps the release time it
+     * has computed, unless it wakes up and computes it again.
+     *
+     * @param maxInvokes max invokes in last 'duration'
+     * @param duration   the duration of the rate
+     */
+    protected void changeRate(int maxInvokes, Duration duration) {
+        history.setRate(maxInvokes, duration.toNanos());
+        this.maxInvokes = maxInvokes;
+        this.duration = duration.toNanos();
     }
 
-    protected long referenceRecord() {
-        int recordPoint = pointer / samplingInterval;
-        long currRecord = records[recordPoint];
-        long nextRecord = records[(recordPoint + 1) % records.length];
-        if (currRecord == 0 || nextRecord == 0 || nextRecord < currRecord) {
-            return 0;
+    protected void resetHistory() {
+        history.clear();
+    }
+
+    protected void checkPermits(int permits) {
+        if (permits <= 0 || permits > maxInvokes) {
+            throw new IllegalArgumentException("permits must be between 1 and max invokes");
         }
-        return currRecord + (nextRecord - currRecord) / samplingInterval;
     }
 
-    protected long record(long now) {
-        if (pointer % samplingInterval == 0) {
-            records[pointer / samplingInterval] = now;
+    protected void checkBatch(long[] releaseTimes, int requested) {
+        if (requested < 0 || requested > releaseTimes.length) {
+            throw new IllegalArgumentException("requested must be between 0 and the length of releaseTimesOut");
         }
-        pointer = (pointer + 1) % maxInvokes;
+    }
+
+    /**
+     * The invocation is reported as admitted once the pause is over, so an invocation interrupted while paused, which
+     * is never recorded, is not reported either.
+     */
+    protected long pauseIfRequired(int permits) throws InterruptedException {
+        final long now = now();
+        final long until = releaseTime(now, permits);
+        pauseUntil(until);
+        admitted(permits, until - now);
+        return until;
+    }
+
+    /**
+     * Record an invocation only if it can be released within 'maxWait' nanoseconds. The current execution is paused
+     * until the release time when it is in the future.
+     *
+     * @param permits  the number of permits of the invocation
+     * @param maxWait the maximum time to wait in nanoseconds
+     * @return true if the invocation is recorded
+     * @throws InterruptedException if interrupted when the invocation is paused.
+     */
+    protected boolean tryRecord(int permits, long maxWait) throws InterruptedException {
+        final long now = now();
+        final long until = releaseTime(now, permits);
+        if (until - now > maxWait) {
+            rejected(permits);
+            return false;
+        }
+        pauseUntil(until);
+        admitted(permits, until - now);
+        record(until, permits);
+        return true;
+    }
+
+    /**
+     * Record an invocation only if it can be released immediately.
+     *
+     * @param permits the number of permits of the invocation
+     * @return true if the invocation is recorded
+     */
+    protected boolean tryRecord(int permits) {
+        final long now = now();
+        if (releaseTime(now, permits) != now) {
+            rejected(permits);
+            return false;
+        }
+        admitted(permits, 0);
+        record(now, permits);
+        return true;
+    }
+
+    /**
+     * @param now     current time (measured with the time source)
+     * @param permits the number of permits of the invocation
+     * @return the earliest time the invocation can be released
+     */
+    protected long releaseTime(long now, int permits) {
+        return history.releaseTime(now, permits, duration);
+    }
+
+    /**
+     * @return the permits recorded in last 'duration', including the ones to be released later, over 'maxInvokes'.
+     * With sampling, a merged record counts as recorded at the release time of its latest invocation.
+     */
+    protected double windowUtilisation() {
+        return history.permitsSince(now() - duration) / (double) maxInvokes;
+    }
+
+    /**
+     * @return current time of the time source of this rate limiter
+     */
+    protected long now() {
+        return timeSource.nanoTime();
+    }
+
+    protected void admitted(int permits, long waitTime) {
+        if (listener != null) {
+            listener.onAdmitted(permits, waitTime);
+        }
+    }
+
+    protected void rejected(int permits) {
+        if (listener != null) {
+            listener.onRejected(permits);
+        }
+    }
+
+    protected void pauseUntil(long until) throws InterruptedException {
+        waitStrategy.await(until, timeSource);
+    }
+
+    protected long record(long now, int permits) {
+        history.record(now, permits);
         return now;
     }
 
@@ -0,0 +1,194 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A rate limiter whose limit follows the health of the downstream it protects, with additive increase and
+ * multiplicative decrease (AIMD), like TCP congestion control.
+ * <p>
+ * The caller reports the outcome of every released invocation with {@link #onSuccess(long)} or {@link #onFailure()}.
+ * <ul>
+ * <li>a success faster than 'latencyThreshold' adds 'additiveIncrease / limit' to the limit, i.e. a window of
+ * successes raises the limit by 'additiveIncrease'.</li>
+ * <li>a failure, or a success slower than 'latencyThreshold', multiplies the limit by 'backoffRatio'. The limit is
+ * cut at most once per 'duration', so that the burst of failures of a single overload does not drive it to the
+ * minimum.</li>
+ * </ul>
+ * The limit stays between 'minLimit' and 'maxLimit', and starts at 'minLimit'. It is applied to the wrapped rate
+ * limiter with {@link RateLimiter#setRate(int, Duration)} whenever its integer part changes, so the wrapped rate
+ * limiter keeps its history, and must support changing its rate. The limit is worked out under the monitor, but
+ * applied outside of it by one thread at a time, which applies the latest limit again if it changes meanwhile, so
+ * that reporting an outcome never waits for the wrapped rate limiter.
+ */
+public class AdaptiveRateLimiter implements RateLimiter {
+
+    private static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+    private final RateLimiter rateLimiter;
+    private final Duration duration;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThreshold;
+    private final double additiveIncrease;
+    private final double backoffRatio;
+    private final TimeSource timeSource;
+    private final AtomicBoolean applying;
+    private double limit;
+    private long lastDecrease;
+    // the integer part of 'limit', to be applied to the wrapped rate limiter.
+    private volatile int targetLimit;
+    private volatile int appliedLimit;
+
+    public AdaptiveRateLimiter(final RateLimiter rateLimiter, final Duration duration, final int minLimit,
+                               final int maxLimit, final Duration latencyThreshold) {
+        this(rateLimiter, duration, minLimit, maxLimit, latencyThreshold, Math.max(1, maxLimit / 100),
+                DEFAULT_BACKOFF_RATIO, TimeSource.system());
+    }
+
+    /**
+     * @param rateLimiter      the rate limiter whose rate is adjusted, which must support
+     *                         {@link RateLimiter#setRate(int, Duration)}
+     * @param duration         the duration of the rate
+     * @param minLimit         the lowest max invokes in 'duration', which is also the initial one
+     * @param maxLimit         the highest max invokes in 'duration'
+     * @param latencyThreshold a success slower than this counts as a sign of overload
+     * @param additiveIncrease how much a window of successes raises the limit by, e.g. 1% of 'maxLimit'
+     * @param backoffRatio     how much the limit is multiplied by on overload, between 0 and 1
+     * @param timeSource       where the current time is read from
+     */
+    public AdaptiveRateLimiter(final RateLimiter rateLimiter, final Duration duration, final int minLimit,
+                               final int maxLimit, final Duration latencyThreshold, final int additiveIncrease,
+                               final double backoffRatio, final TimeSource timeSource) {
+        if (minLimit <= 0 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("minLimit must be between 1 and max limit");
+        }
+        if (additiveIncrease <= 0) {
+            throw new IllegalArgumentException("additiveIncrease must be positive");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio must be between 0 and 1");
+        }
+        this.rateLimiter = rateLimiter;
+        this.duration = duration;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThreshold = latencyThreshold.toNanos();
+        this.additiveIncrease = additiveIncrease;
+        this.backoffRatio = backoffRatio;
+        this.timeSource = timeSource;
+        this.applying = new AtomicBoolean();
+        this.limit = minLimit;
+        this.targetLimit = minLimit;
+        this.appliedLimit = minLimit;
+        this.lastDecrease = timeSource.nanoTime() - duration.toNanos();
+        rateLimiter.setRate(minLimit, duration);
+    }
+
+    /**
+     * Report a released invocation which succeeded.
+     *
+     * @param latencyNanos how long the downstream took to serve it in nanoseconds
+     */
+    public void onSuccess(final long latencyNanos) {
+        if (latencyNanos > latencyThreshold) {
+            onFailure();
+            return;
+        }
+        synchronized (this) {
+            limit = Math.min(maxLimit, limit + additiveIncrease / limit);
+            targetLimit = (int) limit;
+        }
+        apply();
+    }
+
+    /**
+     * Report a released invocation which failed, e.g. timed out or was rejected by the downstream.
+     */
+    public void onFailure() {
+        synchronized (this) {
+            decrease();
+        }
+        apply();
+    }
+
+    /**
+     * @return the max invokes in 'duration' applied to the wrapped rate limiter
+     */
+    public int limit() {
+        return appliedLimit;
+    }
+
+    /**
+     * @param permits the number of invokes this invocation counts as, between 1 and the current limit
+     */
+    @Override
+    public long invoke(final int permits) throws InterruptedException {
+        return rateLimiter.invoke(permits);
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits) {
+        return rateLimiter.tryInvoke(permits);
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits, final Duration maxWait) throws InterruptedException {
+        return rateLimiter.tryInvoke(permits, maxWait);
+    }
+
+    @Override
+    public CompletableFuture<Long> invokeAsync(final int permits) {
+        return rateLimiter.invokeAsync(permits);
+    }
+
+    @Override
+    public Reservation reserve(final int permits) {
+        return rateLimiter.reserve(permits);
+    }
+
+    @Override
+    public boolean supportsReservation() {
+        return rateLimiter.supportsReservation();
+    }
+
+    /**
+     * Reset the wrapped rate limiter. The limit is kept, as it reflects the downstream rather than the history.
+     */
+    @Override
+    public void reset() {
+        rateLimiter.reset();
+    }
+
+    /**
+     * Under the monitor.
+     */
+    private void decrease() {
+        final long now = timeSource.nanoTime();
+        if (now - lastDecrease < duration.toNanos()) {
+            return;
+        }
+        lastDecrease = now;
+        limit = Math.max(minLimit, limit * backoffRatio);
+        targetLimit = (int) limit;
+    }
+
+    /**
+     * Outside the monitor. A thread which finds another one applying leaves the latest limit to it, which checks
+     * again once it is done.
+     */
+    private void apply() {
+        while (targetLimit != appliedLimit && applying.compareAndSet(false, true)) {
+            try {
+                final int target = targetLimit;
+                if (target != appliedLimit) {
+                    rateLimiter.setRate(target, duration);
+                    appliedLimit = target;
+                }
+            } finally {
+                applying.set(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * A lock-free rate limiter.
+ * <p>
+ * Every invocation takes a sequence number from a shared cursor. The invocation with sequence K can only be released
+ * 'duration' after the invocation with sequence K - maxInvokes was released, and both of them share the same slot in
+ * the ring of records. Each slot keeps the release time of its last owner together with the owner's sequence, so
+ * that the next owner knows when the previous one has published its release time. Once a caller learns its release
+ * time, it waits on its own without holding anything shared.
+ * <p>
+ * Sampling is not supported, the ring always keeps 'maxInvokes' records, and an invocation of N permits takes N slots.
+ */
+public class CasRateLimiter implements RateLimiter {
+
+    private static final int SPINS_BEFORE_YIELD = 64;
+    // the release time of a cancelled invocation, which never pauses the next owner of its slot.
+    private static final long VACANT = Long.MIN_VALUE / 2;
+
+    private final int maxInvokes;
+    private final long duration;
+    // slot i keeps [release time, sequence + 1] of its last owner at [2i, 2i + 1]
+    private final AtomicLongArray slots;
+    private final AtomicLong cursor;
+    private final WaitStrategy waitStrategy;
+    private volatile long resetSequence;
+
+    public CasRateLimiter(final int maxInvokes, final Duration duration) {
+        this(maxInvokes, duration, WaitStrategy.sleep());
+    }
+
+    public CasRateLimiter(final int maxInvokes, final Duration duration, final WaitStrategy waitStrategy) {
+        if (maxInvokes <= 0) {
+            throw new IllegalArgumentException("maxInvokes must be positive");
+        }
+        this.maxInvokes = maxInvokes;
+        this.duration = duration.toNanos();
+        this.slots = new AtomicLongArray(maxInvokes * 2);
+        this.cursor = new AtomicLong();
+        this.waitStrategy = waitStrategy;
+        this.resetSequence = 0;
+    }
+
+    @Override
+    public long invoke(final int permits) throws InterruptedException {
+        checkPermits(permits);
+        final long until = reserve(cursor.getAndAdd(permits), permits);
+        waitStrategy.await(until);
+        return until;
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits) {
+        checkPermits(permits);
+        return tryReserve(permits, 0) != Long.MIN_VALUE;
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits, final Duration maxWait) throws InterruptedException {
+        checkPermits(permits);
+        final long until = tryReserve(permits, maxWait.toNanos());
+        if (until == Long.MIN_VALUE) {
+            return false;
+        }
+        waitStrategy.await(until);
+        return true;
+    }
+
+    /**
+     * Cancelling the future vacates the slots of the invocation, so that they do not pause their next owners.
+     */
+    @Override
+    public CompletableFuture<Long> invokeAsync(final int permits) {
+        return ReservedFuture.of(reserve(permits));
+    }
+
+    /**
+     * Cancelling the reservation vacates the slots of the invocation, so that they do not pause their next owners.
+     */
+    @Override
+    public Reservation reserve(final int permits) {
+        checkPermits(permits);
+        final long sequence = cursor.getAndAdd(permits);
+        final long until = reserve(sequence, permits);
+        return new Reservation(until, () -> vacate(sequence, permits, until));
+    }
+
+    @Override
+    public void reset() {
+        resetSequence = cursor.get();
+    }
+
+    private void checkPermits(final int permits) {
+        if (permits <= 0 || permits > maxInvokes) {
+            throw new IllegalArgumentException("permits must be between 1 and max invokes");
+        }
+    }
+
+    /**
+     * Take the sequences at the cursor only if they can be released within 'maxWait' nanoseconds. The release time of
+     * the previous owner of a slot is final once it is published, so it is checked before the sequences are taken with
+     * a compare-and-set. Nothing is recorded if the invocation is rejected.
+     *
+     * @return the release time, or Long.MIN_VALUE if rejected
+     */
+    private long tryReserve(final int permits, final long maxWait) {
+        while (true) {
+            final long sequence = cursor.get();
+            if (!awaitPublished(sequence, permits)) {
+                // another caller has already taken the sequences and published its release time
+                continue;
+            }
+            final long now = nanoTime();
+            final long until = releaseTime(sequence, permits, now);
+            if (until - now > maxWait) {
+                return Long.MIN_VALUE;
+            }
+            if (cursor.compareAndSet(sequence, sequence + permits)) {
+                publish(sequence, permits, until);
+                return until;
+            }
+        }
+    }
+
+    private long reserve(final long sequence, final int permits) {
+        awaitPublished(sequence, permits);
+        final long until = releaseTime(sequence, permits, nanoTime());
+        publish(sequence, permits, until);
+        return until;
+    }
+
+    /**
+     * Each permit takes its own slot, so an invocation of N permits visits N slots.
+     */
+    private long releaseTime(final long sequence, final int permits, final long now) {
+        long until = now;
+        for (long s = Math.max(sequence, resetSequence + maxInvokes); s < sequence + permits; s++) {
+            until = Math.max(until, slots.get(slot(s)) + duration);
+        }
+        return until;
+    }
+
+    private void publish(final long sequence, final int permits, final long until) {
+        for (long s = sequence; s < sequence + permits; s++) {
+            final int slot = slot(s);
+            slots.lazySet(slot, until);
+            slots.set(slot + 1, s + 1);
+        }
+    }
+
+    /**
+     * A later owner of a slot always has a later release time, so a slot still holding the release time of the
+     * invocation has not been taken over.
+     */
+    private boolean vacate(final long sequence, final int permits, final long until) {
+        boolean vacated = false;
+        for (long s = sequence; s < sequence + permits; s++) {
+            vacated |= slots.compareAndSet(slot(s), until, VACANT);
+        }
+        return vacated;
+    }
+
+    private int slot(final long sequence) {
+        return (int) (sequence % maxInvokes) * 2;
+    }
+
+    private boolean awaitPublished(final long sequence, final int permits) {
+        for (long s = sequence; s < sequence + permits; s++) {
+            if (!awaitPublished(slot(s), s - maxInvokes)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The previous owner of a slot publishes its release time right after it takes its sequence, so this wait is
+     * normally very short. It never covers the pause of the previous owner.
+     *
+     * @return false if the slot has already been taken over by a later sequence
+     */
+    private boolean awaitPublished(final int slot, final long previous) {
+        if (previous < 0) {
+            return slots.get(slot + 1) == 0;
+        }
+        int spins = 0;
+        long published;
+        while ((published = slots.get(slot + 1)) < previous + 1) {
+            if (++spins < SPINS_BEFORE_YIELD) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        return published == previous + 1;
+    }
+}
@@ -0,0 +1,263 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A rate limiter of many limits at once, e.g. 100 per second, 2,000 per minute and 50,000 per hour. An invocation is
+ * released once it fits in all of them, and is recorded in all of them at the same release time, or in none of them
+ * if it is rejected.
+ * <p>
+ * A composite rate limiter can have children, e.g. a child per tenant under a global limit. An invocation of a child
+ * is limited by the limits of the child and all of its ancestors, and is recorded in all of them. A child of a child
+ * is limited by three levels, and so on.
+ * <p>
+ * All rate limiters of a hierarchy share a single lock, the time source and the wait strategy of the root. An
+ * invocation takes the lock once for all levels, reads the time once, computes its release time from every limit and
+ * records it in every limit. The lock is held only to compute and record the release time; the invocation is paused
+ * once, after the lock is released. Chaining rate limiters instead takes a lock and pauses for every limit, and a
+ * permit taken from the first limit is lost when the invocation is then rejected by the second one.
+ * <p>
+ * Invocations paused by the limits of one child are recorded in the limits of the parent ahead of the invocations of
+ * other children, so the history of a limit is not in the order of release times. Every permit is therefore released
+ * after the latest of the 'maxInvokes' permits before it, see {@link History}.
+ */
+public class CompositeRateLimiter implements RateLimiter {
+
+    private final CompositeRateLimiter parent;
+    private final Window[] windows;
+    private final int maxPermits;
+    private final Object lock;
+    private final WaitStrategy waitStrategy;
+    private final TimeSource timeSource;
+
+    public CompositeRateLimiter(final Limit... limits) {
+        this(Arrays.asList(limits), WaitStrategy.sleep());
+    }
+
+    public CompositeRateLimiter(final List<Limit> limits, final WaitStrategy waitStrategy) {
+        this(limits, waitStrategy, TimeSource.system());
+    }
+
+    /**
+     * @param limits       the limits which an invocation has to fit in
+     * @param waitStrategy how an invocation is paused
+     * @param timeSource   where the current time is read from
+     */
+    public CompositeRateLimiter(final List<Limit> limits, final WaitStrategy waitStrategy,
+                                final TimeSource timeSource) {
+        this(null, limits, new Object(), waitStrategy, timeSource);
+    }
+
+    private CompositeRateLimiter(final CompositeRateLimiter parent, final List<Limit> limits, final Object lock,
+                                 final WaitStrategy waitStrategy, final TimeSource timeSource) {
+        if (limits.isEmpty()) {
+            throw new IllegalArgumentException("limits cannot be empty");
+        }
+        this.parent = parent;
+        this.windows = new Window[limits.size()];
+        int maxPermits = parent == null ? Integer.MAX_VALUE : parent.maxPermits;
+        for (int i = 0; i < windows.length; i++) {
+            final Limit limit = limits.get(i);
+            windows[i] = new Window(new History(limit.maxInvokes, limit.samplingInterval), limit.duration);
+            maxPermits = Math.min(maxPermits, limit.maxInvokes);
+        }
+        this.maxPermits = maxPermits;
+        this.lock = lock;
+        this.waitStrategy = waitStrategy;
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * Create a child, whose invocations are limited by its own limits and the ones of this rate limiter.
+     *
+     * @param limits the limits of the child
+     * @return a child which shares the lock, the wait strategy and the time source of this rate limiter
+     */
+    public CompositeRateLimiter child(final Limit... limits) {
+        return child(Arrays.asList(limits));
+    }
+
+    public CompositeRateLimiter child(final List<Limit> limits) {
+        return new CompositeRateLimiter(this, limits, lock, waitStrategy, timeSource);
+    }
+
+    /**
+     * @param permits the number of invokes this invocation counts as, between 1 and the smallest max invokes of all
+     *                levels.
+     */
+    @Override
+    public long invoke(final int permits) throws InterruptedException {
+        checkPermits(permits);
+        final long until;
+        synchronized (lock) {
+            until = reserve(permits, Long.MAX_VALUE);
+        }
+        waitStrategy.await(until, timeSource);
+        return until;
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits) {
+        checkPermits(permits);
+        synchronized (lock) {
+            return reserve(permits, 0) != History.NONE;
+        }
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits, final Duration maxWait) throws InterruptedException {
+        checkPermits(permits);
+        final long until;
+        synchronized (lock) {
+            until = reserve(permits, maxWait.toNanos());
+        }
+        if (until == History.NONE) {
+            return false;
+        }
+        waitStrategy.await(until, timeSource);
+        return true;
+    }
+
+    /**
+     * Cancelling the future returns the permits to every level which can tell them apart from the invocations
+     * recorded after them, see {@link History#cancel(long, long, int)}.
+     */
+    @Override
+    public CompletableFuture<Long> invokeAsync(final int permits) {
+        return ReservedFuture.of(reserve(permits));
+    }
+
+    /**
+     * Cancelling the reservation returns the permits to every level which can tell them apart from the invocations
+     * recorded after them, see {@link History#cancel(long, long, int)}.
+     */
+    @Override
+    public Reservation reserve(final int permits) {
+        checkPermits(permits);
+        final int levels = levels();
+        final long[] generations = new long[levels];
+        final long[] ends = new long[levels];
+        final long until;
+        synchronized (lock) {
+            until = reserve(permits, Long.MAX_VALUE);
+            int i = 0;
+            for (CompositeRateLimiter level = this; level != null; level = level.parent) {
+                for (Window window : level.windows) {
+                    generations[i] = window.history.generation();
+                    ends[i++] = window.history.issued();
+                }
+            }
+        }
+        return new Reservation(until, timeSource, () -> cancel(generations, ends, permits));
+    }
+
+    /**
+     * Reset the limits of this rate limiter. The limits of its parent and its children are kept.
+     */
+    @Override
+    public void reset() {
+        synchronized (lock) {
+            for (Window window : windows) {
+                window.history.clear();
+            }
+        }
+    }
+
+    private void checkPermits(final int permits) {
+        if (permits <= 0 || permits > maxPermits) {
+            throw new IllegalArgumentException("permits must be between 1 and max invokes");
+        }
+    }
+
+    /**
+     * Under the lock.
+     *
+     * @return the release time, or {@link History#NONE} if it cannot be released within 'maxWait'.
+     */
+    private long reserve(final int permits, final long maxWait) {
+        final long now = timeSource.nanoTime();
+        long until = now;
+        for (CompositeRateLimiter level = this; level != null; level = level.parent) {
+            for (Window window : level.windows) {
+                final long releaseTime = window.history.releaseTimeOutOfOrder(now, permits, window.duration);
+                if (releaseTime - until > 0) {
+                    until = releaseTime;
+                }
+            }
+        }
+        if (until - now > maxWait) {
+            return History.NONE;
+        }
+        for (CompositeRateLimiter level = this; level != null; level = level.parent) {
+            for (Window window : level.windows) {
+                window.history.record(until, permits);
+            }
+        }
+        return until;
+    }
+
+    private boolean cancel(final long[] generations, final long[] ends, final int permits) {
+        synchronized (lock) {
+            boolean cancelled = true;
+            int i = 0;
+            for (CompositeRateLimiter level = this; level != null; level = level.parent) {
+                for (Window window : level.windows) {
+                    cancelled &= window.history.cancel(generations[i], ends[i++], permits);
+                }
+            }
+            return cancelled;
+        }
+    }
+
+    private int levels() {
+        int levels = 0;
+        for (CompositeRateLimiter level = this; level != null; level = level.parent) {
+            levels += level.windows.length;
+        }
+        return levels;
+    }
+
+    /**
+     * At most 'maxInvokes' invocations in last 'duration'.
+     */
+    public static final class Limit {
+
+        private final int maxInvokes;
+        private final long duration;
+        private final int samplingInterval;
+
+        public Limit(final int maxInvokes, final Duration duration) {
+            this(maxInvokes, duration, 1);
+        }
+
+        /**
+         * @param maxInvokes       max invokes in last 'duration'
+         * @param duration         the duration of the rate
+         * @param samplingInterval the number of invocations merged into a record, see {@link SynchronizedRateLimiter}
+         */
+        public Limit(final int maxInvokes, final Duration duration, final int samplingInterval) {
+            if (maxInvokes <= 0) {
+                throw new IllegalArgumentException("maxInvokes must be positive");
+            }
+            if (samplingInterval >= maxInvokes) {
+                throw new IllegalArgumentException("samplingInterval cannot be more than max invokes");
+            }
+            this.maxInvokes = maxInvokes;
+            this.duration = duration.toNanos();
+            this.samplingInterval = samplingInterval;
+        }
+    }
+
+    private static final class Window {
+        private final History history;
+        private final long duration;
+
+        private Window(final History history, final long duration) {
+            this.history = history;
+            this.duration = duration;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A rate limiter shared by many nodes, which allows at most 'maxInvokes' invocations in last 'duration' across all of
+ * them.
+ * <p>
+ * A node leases blocks of 'leaseSize' permits from a {@link PermitStore}, and releases invocations from its leases
+ * without asking the store. A lease is renewed in the background when the node is running out of permits, so that
+ * most invocations never wait for the store. Therefore, a busy node takes more permits than an idle one.
+ * <p>
+ * A leased permit can only be used within 'leaseTime' after the lease was asked for, and it is wasted if it is not
+ * used by then. A permit granted at time G is used between G and G + leaseTime, so the permits used in any 'duration'
+ * were granted in a window of 'duration + leaseTime'. The store limits that window to 'maxInvokes' permits, hence
+ * there are never more than 'maxInvokes' invocations in any 'duration' across all nodes, at the cost of a sustained
+ * rate of 'maxInvokes' per 'duration + leaseTime'. Keep 'leaseTime' short compared with 'duration', and 'leaseSize'
+ * small compared with the share of a node.
+ */
+public class DistributedRateLimiter implements RateLimiter {
+
+    private static final ExecutorService RENEWER = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "rate-limiter-lease");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final PermitStore store;
+    private final String name;
+    private final int maxInvokes;
+    private final Duration window;
+    private final int leaseSize;
+    private final long leaseTime;
+    private final WaitStrategy waitStrategy;
+    private final Executor executor;
+
+    // leases are used in order, the current one expires first.
+    private int currentPermits;
+    private long currentExpiry;
+    private int nextPermits;
+    private long nextExpiry;
+    // a renewal in flight, or null.
+    private CompletableFuture<Void> renewal;
+    // the store has nothing to grant until then.
+    private long retryAt;
+
+    public DistributedRateLimiter(final PermitStore store, final String name, final int maxInvokes,
+                                  final Duration duration, final int leaseSize, final Duration leaseTime) {
+        this(store, name, maxInvokes, duration, leaseSize, leaseTime, WaitStrategy.sleep(), RENEWER);
+    }
+
+    /**
+     * @param store        the store shared by all nodes
+     * @param name         the name of the limit in the store
+     * @param maxInvokes   max invokes of all nodes together in last 'duration'
+     * @param duration     the duration of the rate
+     * @param leaseSize    the number of permits leased at once
+     * @param leaseTime    how long leased permits can be used
+     * @param waitStrategy how an invocation is paused until the store can grant permits again
+     * @param executor     the executor to renew leases on, as asking the store may block
+     */
+    public DistributedRateLimiter(final PermitStore store, final String name, final int maxInvokes,
+                                  final Duration duration, final int leaseSize, final Duration leaseTime,
+                                  final WaitStrategy waitStrategy, final Executor executor) {
+        if (leaseSize <= 0 || leaseSize > maxInvokes) {
+            throw new IllegalArgumentException("leaseSize must be between 1 and max invokes");
+        }
+        this.store = store;
+        this.name = name;
+        this.maxInvokes = maxInvokes;
+        this.window = duration.plus(leaseTime);
+        this.leaseSize = leaseSize;
+        this.leaseTime = leaseTime.toNanos();
+        this.waitStrategy = waitStrategy;
+        this.executor = executor;
+        this.retryAt = nanoTime();
+    }
+
+    @Override
+    public long invoke(final int permits) throws InterruptedException {
+        checkPermits(permits);
+        return acquire(permits, Long.MAX_VALUE);
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits) {
+        checkPermits(permits);
+        synchronized (this) {
+            final long now = nanoTime();
+            if (take(permits, now)) {
+                return true;
+            }
+            if (retryAt - now <= 0) {
+                renew(permits);
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits, final Duration maxWait) throws InterruptedException {
+        checkPermits(permits);
+        return acquire(permits, maxWait.toNanos()) != History.NONE;
+    }
+
+    /**
+     * The future is completed once the permits are taken from a lease. Cancelling it before that takes nothing.
+     */
+    @Override
+    public CompletableFuture<Long> invokeAsync(final int permits) {
+        checkPermits(permits);
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+        acquireAsync(permits, future);
+        return future;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, as permits are taken from a lease only once it is due
+     */
+    @Override
+    public Reservation reserve(final int permits) {
+        throw new UnsupportedOperationException("distributed rate limiter cannot record ahead of time");
+    }
+
+    @Override
+    public boolean supportsReservation() {
+        return false;
+    }
+
+    /**
+     * Drop the leases of this node. Permits granted by the store still count in the store.
+     */
+    @Override
+    public synchronized void reset() {
+        currentPermits = 0;
+        nextPermits = 0;
+    }
+
+    private void checkPermits(final int permits) {
+        if (permits <= 0 || permits > maxInvokes) {
+            throw new IllegalArgumentException("permits must be between 1 and max invokes");
+        }
+    }
+
+    /**
+     * @return the release time, or {@link History#NONE} if the permits cannot be taken within 'maxWait'.
+     */
+    private long acquire(final int permits, final long maxWait) throws InterruptedException {
+        final long deadline = nanoTime() + Math.min(maxWait, Long.MAX_VALUE / 2);
+        while (true) {
+            final CompletableFuture<Void> pending;
+            final long until;
+            synchronized (this) {
+                final long now = nanoTime();
+                if (take(permits, now)) {
+                    return now;
+                }
+                if (now - deadline > 0) {
+                    return History.NONE;
+                }
+                until = retryAt;
+                pending = until - now > 0 ? null : renew(permits);
+            }
+            if (pending == null) {
+                if (until - deadline > 0) {
+                    return History.NONE;
+                }
+                waitStrategy.await(until);
+            } else if (!join(pending, deadline)) {
+                return History.NONE;
+            }
+        }
+    }
+
+    private void acquireAsync(final int permits, final CompletableFuture<Long> future) {
+        final CompletableFuture<Void> pending;
+        final long now;
+        final boolean taken;
+        final long delay;
+        synchronized (this) {
+            if (future.isDone()) {
+                return;
+            }
+            now = nanoTime();
+            taken = take(permits, now);
+            delay = retryAt - now;
+            pending = taken || delay > 0 ? null : renew(permits);
+        }
+        if (taken) {
+            // completed out of the lock, as dependent stages may run on this thread.
+            future.complete(now);
+        } else if (pending == null) {
+            CompletableFuture.delayedExecutor(delay, NANOSECONDS, executor)
+                    .execute(() -> acquireAsync(permits, future));
+        } else {
+            pending.whenComplete((ignored, e) -> {
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    acquireAsync(permits, future);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return false if the deadline has passed before the renewal is done.
+     */
+    private static boolean join(final CompletableFuture<Void> pending, final long deadline)
+            throws InterruptedException {
+        try {
+            pending.get(Math.max(0, deadline - nanoTime()), NANOSECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Take the permits from the leases, and renew them in the background if less than half a lease is left. Under
+     * the lock of this rate limiter.
+     */
+    private boolean take(final int permits, final long now) {
+        if (currentExpiry - now <= 0) {
+            currentPermits = nextPermits;
+            currentExpiry = nextExpiry;
+            nextPermits = 0;
+        }
+        if (nextExpiry - now <= 0) {
+            nextPermits = 0;
+        }
+        if (currentExpiry - now <= 0) {
+            currentPermits = 0;
+        }
+        if (currentPermits + nextPermits < permits) {
+            return false;
+        }
+        final int fromCurrent = Math.min(currentPermits, permits);
+        currentPermits -= fromCurrent;
+        nextPermits -= permits - fromCurrent;
+        if (currentPermits == 0) {
+            currentPermits = nextPermits;
+            currentExpiry = nextExpiry;
+            nextPermits = 0;
+        }
+        if (currentPermits + nextPermits < leaseSize / 2 && retryAt - now <= 0) {
+            renew(0);
+        }
+        return true;
+    }
+
+    /**
+     * Start a renewal unless there is one in flight. Under the lock of this rate limiter.
+     *
+     * @param permits the number of permits an invocation is waiting for
+     * @return the renewal in flight
+     */
+    private CompletableFuture<Void> renew(final int permits) {
+        if (renewal != null) {
+            return renewal;
+        }
+        final int requested = Math.max(leaseSize, permits - currentPermits - nextPermits);
+        // stored before the lease is asked for, as an executor running it on this thread clears it right away.
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        renewal = future;
+        try {
+            executor.execute(() -> lease(requested, future));
+        } catch (RuntimeException e) {
+            renewal = null;
+            throw e;
+        }
+        return future;
+    }
+
+    private void lease(final int requested, final CompletableFuture<Void> future) {
+        final long start = nanoTime();
+        final PermitStore.Grant grant;
+        try {
+            grant = store.acquire(name, maxInvokes, window, requested);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                clearRenewal(future);
+            }
+            future.completeExceptionally(e);
+            return;
+        }
+        synchronized (this) {
+            clearRenewal(future);
+            // the lease counts from the time it was asked for, which is no later than the time it was granted.
+            final long expiry = start + leaseTime;
+            if (grant.permits() == 0) {
+                retryAt = start + grant.retryAfter();
+            } else if (currentPermits == 0) {
+                currentPermits = grant.permits();
+                currentExpiry = expiry;
+            } else if (nextPermits == 0) {
+                nextPermits = grant.permits();
+                nextExpiry = expiry;
+            } else {
+                // merged into the next lease, which expires earlier, so that no permit is used after its own expiry.
+                nextPermits += grant.permits();
+            }
+        }
+        future.complete(null);
+    }
+
+    /**
+     * Under the lock of this rate limiter.
+     */
+    private void clearRenewal(final CompletableFuture<Void> future) {
+        if (renewal == future) {
+            renewal = null;
+        }
+    }
+}
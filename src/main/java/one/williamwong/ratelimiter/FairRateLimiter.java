@@ -0,0 +1,315 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * A rate limiter which releases paused invocations in the order they arrive. Threads paused by the other rate
+ * limiters race for the lock whenever it is released, so an unlucky invocation may be paused for many windows while
+ * later ones are released on their first try.
+ * <p>
+ * Paused invocations wait in a queue per priority, 0 being the highest. Only the head of the queue, i.e. the earliest
+ * invocation of the highest priority, waits for its release time; the others wait on their own {@link Condition}
+ * until they become the head. An invocation of a higher priority jumps ahead of the invocations of lower priorities
+ * which are still in the queue, e.g. health checks ahead of batch jobs. Invocations through the methods of
+ * {@link RateLimiter} take the lowest priority.
+ * <p>
+ * The queue holds at most 'maxQueueDepth' invocations. An invocation arriving at a full queue fails fast: 'invoke'
+ * throws an {@link IllegalStateException} and 'tryInvoke' returns false, and nothing is recorded. 'invokeAsync' is
+ * recorded right away, ahead of the queue.
+ */
+public class FairRateLimiter extends AbstractRateLimiter {
+
+    private final ReentrantLock lock;
+    private final ArrayDeque<Condition>[] queues;
+    private final int maxQueueDepth;
+    private int queueDepth;
+
+    public FairRateLimiter(final int maxInvokes, final Duration duration) {
+        this(maxInvokes, duration, 1);
+    }
+
+    public FairRateLimiter(final int maxInvokes, final Duration duration, final int samplingInterval) {
+        this(maxInvokes, duration, samplingInterval, Integer.MAX_VALUE, 1);
+    }
+
+    public FairRateLimiter(final int maxInvokes, final Duration duration, final int samplingInterval,
+                           final int maxQueueDepth, final int numOfPriorities) {
+        this(maxInvokes, duration, samplingInterval, maxQueueDepth, numOfPriorities, null);
+    }
+
+    /**
+     * @param maxInvokes       max invokes in last 'duration'
+     * @param duration         the duration of the rate
+     * @param samplingInterval the number of invocations merged into a record
+     * @param maxQueueDepth    the max number of paused invocations, beyond which an invocation fails fast
+     * @param numOfPriorities  the number of priorities, e.g. 3 for health checks, paid and free tiers
+     * @param listener         the listener of invocations, or null
+     */
+    @SuppressWarnings("unchecked")
+    public FairRateLimiter(final int maxInvokes, final Duration duration, final int samplingInterval,
+                           final int maxQueueDepth, final int numOfPriorities, final RateLimiterListener listener) {
+        // waits on conditions, which are timed by the system clock.
+        super(maxInvokes, duration, samplingInterval, WaitStrategy.park(), listener, TimeSource.system(),
+                HistoryStore.heap());
+        if (maxQueueDepth <= 0) {
+            throw new IllegalArgumentException("maxQueueDepth must be positive");
+        }
+        if (numOfPriorities <= 0) {
+            throw new IllegalArgumentException("numOfPriorities must be positive");
+        }
+        this.lock = new ReentrantLock();
+        this.queues = (ArrayDeque<Condition>[]) new ArrayDeque<?>[numOfPriorities];
+        for (int i = 0; i < numOfPriorities; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+        this.maxQueueDepth = maxQueueDepth;
+    }
+
+    /**
+     * @throws IllegalStateException if the queue is full
+     */
+    @Override
+    public long invoke(final int permits) throws InterruptedException {
+        return invoke(permits, queues.length - 1);
+    }
+
+    /**
+     * Same as {@link #invoke(int)}, queued with the given priority.
+     *
+     * @param priority between 0, the highest, and 'numOfPriorities - 1'
+     * @throws IllegalStateException if the queue is full
+     */
+    public long invoke(final int permits, final int priority) throws InterruptedException {
+        checkPermits(permits);
+        checkPriority(priority);
+        lock.lockInterruptibly();
+        try {
+            final long start = nanoTime();
+            final long until = awaitReleaseTime(start, permits, priority, Long.MAX_VALUE);
+            if (until == History.NONE) {
+                rejected(permits);
+                throw new IllegalStateException("queue is full");
+            }
+            admitted(permits, until - start);
+            return record(until, permits);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rejected if any invocation is paused, even if the window has room for this one.
+     */
+    @Override
+    public boolean tryInvoke(final int permits) {
+        checkPermits(permits);
+        lock.lock();
+        try {
+            if (queueDepth > 0) {
+                rejected(permits);
+                return false;
+            }
+            return tryRecord(permits);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits, final Duration maxWait) throws InterruptedException {
+        return tryInvoke(permits, maxWait, queues.length - 1);
+    }
+
+    /**
+     * Same as {@link #tryInvoke(int, Duration)}, queued with the given priority. It is rejected if the queue is full,
+     * or if it is still in the queue after 'maxWait'.
+     *
+     * @param priority between 0, the highest, and 'numOfPriorities - 1'
+     */
+    public boolean tryInvoke(final int permits, final Duration maxWait, final int priority)
+            throws InterruptedException {
+        checkPermits(permits);
+        checkPriority(priority);
+        lock.lockInterruptibly();
+        try {
+            final long start = nanoTime();
+            final long until = awaitReleaseTime(start, permits, priority, maxWait.toNanos());
+            if (until == History.NONE) {
+                rejected(permits);
+                return false;
+            }
+            admitted(permits, until - start);
+            record(until, permits);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Reservation reserve(final int permits) {
+        checkPermits(permits);
+        lock.lock();
+        try {
+            return recordReservation(permits);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the whole batch under a single lock and a single read of the time, ahead of the queue like
+     * 'invokeAsync'.
+     */
+    @Override
+    public int admit(final long[] releaseTimesOut, final int requested) {
+        checkBatch(releaseTimesOut, requested);
+        lock.lock();
+        try {
+            return recordBatch(releaseTimesOut, requested);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    boolean cancel(final long generation, final long end, final int permits) {
+        lock.lock();
+        try {
+            final boolean cancelled = cancelReservation(generation, end, permits);
+            if (cancelled) {
+                signalHead();
+            }
+            return cancelled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of paused invocations.
+     */
+    public int queueDepth() {
+        lock.lock();
+        try {
+            return queueDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes effect right away. The head of the queue wakes up and computes its release time again at the new rate.
+     */
+    @Override
+    public void setRate(final int maxInvokes, final Duration duration) {
+        lock.lock();
+        try {
+            changeRate(maxInvokes, duration);
+            signalHead();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void reset() {
+        lock.lock();
+        try {
+            resetHistory();
+            signalHead();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkPriority(final int priority) {
+        if (priority < 0 || priority >= queues.length) {
+            throw new IllegalArgumentException("priority must be between 0 and number of priorities - 1");
+        }
+    }
+
+    /**
+     * Wait in the queue until the invocation is the head and can be released, under the lock. An invocation which can
+     * be released right away when nothing is paused is not queued at all.
+     *
+     * @param start   the time the invocation arrives (measured with System.nanoTime())
+     * @param maxWait the maximum time to wait in nanoseconds
+     * @return the release time, or {@link History#NONE} if the queue is full or the invocation cannot be released
+     * within 'maxWait'.
+     */
+    private long awaitReleaseTime(final long start, final int permits, final int priority, final long maxWait)
+            throws InterruptedException {
+        if (queueDepth == 0 && releaseTime(start, permits) == start) {
+            return start;
+        }
+        if (queueDepth == maxQueueDepth) {
+            return History.NONE;
+        }
+        final Condition waiter = lock.newCondition();
+        queues[priority].addLast(waiter);
+        queueDepth++;
+        try {
+            while (true) {
+                final long now = nanoTime();
+                if (waiter == head()) {
+                    final long until = releaseTime(now, permits);
+                    if (until == now) {
+                        dequeue(waiter, priority);
+                        return now;
+                    }
+                    if (until - start > maxWait) {
+                        dequeue(waiter, priority);
+                        return History.NONE;
+                    }
+                    waiter.awaitNanos(until - now);
+                } else if (maxWait == Long.MAX_VALUE) {
+                    waiter.await();
+                } else if (start + maxWait - now > 0) {
+                    waiter.awaitNanos(start + maxWait - now);
+                } else {
+                    dequeue(waiter, priority);
+                    return History.NONE;
+                }
+            }
+        } catch (InterruptedException e) {
+            dequeue(waiter, priority);
+            throw e;
+        }
+    }
+
+    /**
+     * Remove a waiter from the queue, and wake up the next head, which waits for the lock until the invocation of
+     * the removed waiter is recorded.
+     */
+    private void dequeue(final Condition waiter, final int priority) {
+        if (queues[priority].peekFirst() == waiter) {
+            queues[priority].pollFirst();
+        } else {
+            queues[priority].remove(waiter);
+        }
+        queueDepth--;
+        signalHead();
+    }
+
+    private void signalHead() {
+        final Condition head = head();
+        if (head != null) {
+            head.signal();
+        }
+    }
+
+    private Condition head() {
+        for (ArrayDeque<Condition> queue : queues) {
+            if (!queue.isEmpty()) {
+                return queue.peekFirst();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,94 @@
+package one.williamwong.ratelimiter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link PermitStore} shared by processes on the same host, e.g. for tests. Every name is kept in a memory-mapped
+ * file in 'directory', and grants are serialized across processes with a {@link FileLock} on the file. Grant times
+ * are measured with the wall clock, which is shared by the processes.
+ * <p>
+ * A file takes 16 bytes per max invoke. A file lock is held on behalf of the whole JVM, so a process should open a
+ * directory with a single store.
+ */
+public class FilePermitStore implements PermitStore, Closeable {
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9._-]+");
+
+    private final Path directory;
+    private final Map<String, MappedLog> logs;
+
+    public FilePermitStore(final Path directory) {
+        this.directory = directory;
+        this.logs = new HashMap<>();
+    }
+
+    @Override
+    public synchronized Grant acquire(final String name, final int maxInvokes, final Duration window,
+                                      final int permits) {
+        try {
+            final MappedLog log = log(name, maxInvokes);
+            final FileLock lock = log.channel.lock();
+            try {
+                final GrantLog grantLog = new GrantLog(log.buffer.asLongBuffer(), maxInvokes);
+                return grantLog.grant(wallClockNanos(), permits, window.toNanos());
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (MappedLog log : logs.values()) {
+            log.channel.close();
+        }
+        logs.clear();
+    }
+
+    private MappedLog log(final String name, final int maxInvokes) throws IOException {
+        MappedLog log = logs.get(name);
+        if (log == null) {
+            if (!NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException("name can only have letters, digits, '.', '_' and '-'");
+            }
+            Files.createDirectories(directory);
+            final FileChannel channel = FileChannel.open(directory.resolve(name + ".permits"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // a new file is filled with zeros, which is an empty log.
+            final long size = GrantLog.capacity(maxInvokes) * (long) Long.BYTES;
+            log = new MappedLog(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            logs.put(name, log);
+        }
+        return log;
+    }
+
+    private static long wallClockNanos() {
+        final Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    private static final class MappedLog {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private MappedLog(final FileChannel channel, final MappedByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package one.williamwong.ratelimiter;
+
+/**
+ * A count-min sketch estimating how often a key has been seen recently, in constant memory no matter how many keys
+ * there are.
+ * <p>
+ * A key is counted in one counter of each of 4 rows, picked by a different hash per row, and its frequency is the
+ * smallest of them, so it is over-estimated only when every row collides with hotter keys. Once 10 times as many
+ * keys as counters per row have been counted, all counters are halved, so that keys which were hot long ago fade out.
+ * <p>
+ * Counters are updated without synchronisation, so concurrent updates may be lost. That only makes the estimates a
+ * little lower, which is fine for telling hot keys from cold ones.
+ */
+final class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int[] SEEDS = {0x97cb3127, 0xc2b2ae35, 0x85ebca6b, 0x27d4eb2f};
+
+    private final int[][] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param width the number of counters per row, rounded up to a power of 2
+     */
+    FrequencySketch(final int width) {
+        final int size = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+        this.counters = new int[DEPTH][size];
+        this.mask = size - 1;
+        this.sampleSize = size * 10;
+    }
+
+    /**
+     * Count the key once more.
+     */
+    void increment(final Object key) {
+        final int hash = key.hashCode();
+        for (int row = 0; row < DEPTH; row++) {
+            final int index = index(hash, row);
+            if (counters[row][index] < Integer.MAX_VALUE) {
+                counters[row][index]++;
+            }
+        }
+        if (++additions >= sampleSize) {
+            age();
+        }
+    }
+
+    /**
+     * @return the estimated number of times the key has been counted recently
+     */
+    int frequency(final Object key) {
+        final int hash = key.hashCode();
+        int frequency = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, counters[row][index(hash, row)]);
+        }
+        return frequency;
+    }
+
+    private int index(final int hash, final int row) {
+        final int mixed = (hash ^ (hash >>> 16)) * SEEDS[row];
+        return (mixed ^ (mixed >>> 16)) & mask;
+    }
+
+    private void age() {
+        additions = 0;
+        for (int[] row : counters) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>>= 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free rate limiter of the generic cell rate algorithm, whose whole state is a single atomic long.
+ * <p>
+ * Every permit is given an emission interval of 'duration / maxInvokes'. The state is the theoretical arrival time
+ * (TAT), i.e. when all the permits recorded so far would have been released if they were released evenly. An
+ * invocation can be released once the TAT is no more than 'burst - 1' emission intervals ahead, and it moves the TAT
+ * by its emission intervals.
+ * <p>
+ * Trade-offs against the sliding-log rate limiters:
+ * <ul>
+ * <li>memory is constant, no matter how large 'maxInvokes' is, and there is no sampling error.</li>
+ * <li>invocations are paced evenly. A burst of up to 'burst' invocations is released at once, after which there are
+ * up to 'burst - 1 + maxInvokes' invocations in a 'duration'. With the default burst of 1, there are never more than
+ * 'maxInvokes' in any 'duration', but 'maxInvokes' invocations cannot be released at once either.</li>
+ * <li>the emission interval is kept in whole nanoseconds, rounded up, so limits of more than an invoke per 100
+ * nanoseconds are noticeably lower than asked for.</li>
+ * </ul>
+ */
+public class GcraRateLimiter implements RateLimiter {
+
+    private final int burst;
+    private final WaitStrategy waitStrategy;
+    private final TimeSource timeSource;
+    private final AtomicLong theoreticalArrivalTime;
+    private volatile Rate rate;
+
+    public GcraRateLimiter(final int maxInvokes, final Duration duration) {
+        this(maxInvokes, duration, 1);
+    }
+
+    public GcraRateLimiter(final int maxInvokes, final Duration duration, final int burst) {
+        this(maxInvokes, duration, burst, WaitStrategy.sleep());
+    }
+
+    public GcraRateLimiter(final int maxInvokes, final Duration duration, final int burst,
+                           final WaitStrategy waitStrategy) {
+        this(maxInvokes, duration, burst, waitStrategy, TimeSource.system());
+    }
+
+    /**
+     * @param maxInvokes   max invokes in last 'duration', when invoked evenly
+     * @param duration     the duration of the rate
+     * @param burst        how many invokes can be released at once, between 1 and 'maxInvokes'
+     * @param waitStrategy how an invocation is paused
+     * @param timeSource   where the current time is read from
+     */
+    public GcraRateLimiter(final int maxInvokes, final Duration duration, final int burst,
+                           final WaitStrategy waitStrategy, final TimeSource timeSource) {
+        if (burst <= 0 || burst > maxInvokes) {
+            throw new IllegalArgumentException("burst must be between 1 and max invokes");
+        }
+        this.burst = burst;
+        this.waitStrategy = waitStrategy;
+        this.timeSource = timeSource;
+        this.rate = new Rate(maxInvokes, duration.toNanos(), burst);
+        this.theoreticalArrivalTime = new AtomicLong(timeSource.nanoTime());
+    }
+
+    @Override
+    public long invoke(final int permits) throws InterruptedException {
+        checkPermits(permits);
+        final long until = reserve(permits, Long.MAX_VALUE);
+        waitStrategy.await(until, timeSource);
+        return until;
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits) {
+        checkPermits(permits);
+        return reserve(permits, 0) != History.NONE;
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits, final Duration maxWait) throws InterruptedException {
+        checkPermits(permits);
+        final long until = reserve(permits, maxWait.toNanos());
+        if (until == History.NONE) {
+            return false;
+        }
+        waitStrategy.await(until, timeSource);
+        return true;
+    }
+
+    /**
+     * Cancelling the future returns the permits only if nothing has been recorded after them, as the TAT cannot tell
+     * invocations apart.
+     */
+    @Override
+    public CompletableFuture<Long> invokeAsync(final int permits) {
+        return ReservedFuture.of(reserve(permits));
+    }
+
+    /**
+     * Cancelling the reservation returns the permits only if nothing has been recorded after them, as the TAT cannot
+     * tell invocations apart.
+     */
+    @Override
+    public Reservation reserve(final int permits) {
+        checkPermits(permits);
+        final Rate rate = this.rate;
+        final long increment = rate.increment(permits);
+        while (true) {
+            final long now = timeSource.nanoTime();
+            final long tat = theoreticalArrivalTime.get();
+            final long next = (tat - now > 0 ? tat : now) + increment;
+            if (theoreticalArrivalTime.compareAndSet(tat, next)) {
+                final long until = releaseTime(tat, now, rate.tolerance);
+                return new Reservation(until, timeSource,
+                        () -> theoreticalArrivalTime.compareAndSet(next, next - increment));
+            }
+        }
+    }
+
+    /**
+     * The new rate applies from the next invocation. The TAT is kept, i.e. the invocations recorded before are paid
+     * at the rate they were recorded with. A burst larger than 'maxInvokes' is cut down to 'maxInvokes'.
+     */
+    @Override
+    public void setRate(final int maxInvokes, final Duration duration) {
+        if (maxInvokes <= 0) {
+            throw new IllegalArgumentException("maxInvokes must be positive");
+        }
+        rate = new Rate(maxInvokes, duration.toNanos(), Math.min(burst, maxInvokes));
+    }
+
+    @Override
+    public void reset() {
+        theoreticalArrivalTime.set(timeSource.nanoTime());
+    }
+
+    private void checkPermits(final int permits) {
+        if (permits <= 0 || permits > rate.maxInvokes) {
+            throw new IllegalArgumentException("permits must be between 1 and max invokes");
+        }
+    }
+
+    /**
+     * @return the release time, or {@link History#NONE} if it cannot be released within 'maxWait'.
+     */
+    private long reserve(final int permits, final long maxWait) {
+        final Rate rate = this.rate;
+        final long increment = rate.increment(permits);
+        while (true) {
+            final long now = timeSource.nanoTime();
+            final long tat = theoreticalArrivalTime.get();
+            final long until = releaseTime(tat, now, rate.tolerance);
+            if (until - now > maxWait) {
+                return History.NONE;
+            }
+            if (theoreticalArrivalTime.compareAndSet(tat, (tat - now > 0 ? tat : now) + increment)) {
+                return until;
+            }
+        }
+    }
+
+    private static long releaseTime(final long tat, final long now, final long tolerance) {
+        final long until = tat - tolerance;
+        return until - now > 0 ? until : now;
+    }
+
+    /**
+     * The rate, which is replaced as a whole, so that an invocation never sees half of a change.
+     */
+    private static final class Rate {
+        private final int maxInvokes;
+        private final long duration;
+        private final long tolerance;
+
+        private Rate(final int maxInvokes, final long duration, final int burst) {
+            this.maxInvokes = maxInvokes;
+            this.duration = duration;
+            // rounded down, so that a burst is never larger than asked for.
+            this.tolerance = (burst - 1) * (duration / maxInvokes)
+                    + (burst - 1) * (duration % maxInvokes) / maxInvokes;
+        }
+
+        /**
+         * @return the emission intervals of 'permits', rounded up to whole nanoseconds.
+         */
+        private long increment(final int permits) {
+            final long remainder = (long) permits * (duration % maxInvokes);
+            return permits * (duration / maxInvokes) + (remainder + maxInvokes - 1) / maxInvokes;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package one.williamwong.ratelimiter;
+
+import java.nio.LongBuffer;
+
+/**
+ * The grants of a {@link PermitStore}, kept as a ring of [grant time, permits] entries in a {@link LongBuffer}, so
+ * that the same log can live on the heap or in a mapped file.
+ * <p>
+ * Layout: [head, size, total permits, max invokes], followed by 'maxInvokes' entries. Every entry holds at least one
+ * permit, so 'maxInvokes' entries are enough for any window.
+ */
+final class GrantLog {
+
+    private static final int HEAD = 0;
+    private static final int SIZE = 1;
+    private static final int TOTAL = 2;
+    private static final int MAX_INVOKES = 3;
+    private static final int HEADER = 4;
+
+    private final LongBuffer buffer;
+    private final int maxInvokes;
+
+    /**
+     * Attach to the log in the buffer, initializing it if the buffer is empty.
+     */
+    GrantLog(LongBuffer buffer, int maxInvokes) {
+        if (buffer.capacity() < capacity(maxInvokes)) {
+            throw new IllegalArgumentException("buffer is too small for max invokes");
+        }
+        final long existing = buffer.get(MAX_INVOKES);
+        if (existing == 0) {
+            buffer.put(HEAD, 0);
+            buffer.put(SIZE, 0);
+            buffer.put(TOTAL, 0);
+            buffer.put(MAX_INVOKES, maxInvokes);
+        } else if (existing != maxInvokes) {
+            throw new IllegalArgumentException("max invokes " + maxInvokes + " does not match " + existing);
+        }
+        this.buffer = buffer;
+        this.maxInvokes = maxInvokes;
+    }
+
+    /**
+     * @return the number of longs taken by a log of 'maxInvokes'
+     */
+    static int capacity(int maxInvokes) {
+        return HEADER + maxInvokes * 2;
+    }
+
+    int maxInvokes() {
+        return maxInvokes;
+    }
+
+    /**
+     * Grant as many of 'permits' as there are left in last 'window'.
+     *
+     * @param now     current time of the store
+     * @param permits the number of permits asked for
+     * @param window  the window in the same unit as 'now'
+     * @return the grant
+     */
+    PermitStore.Grant grant(long now, int permits, long window) {
+        int head = (int) buffer.get(HEAD);
+        int size = (int) buffer.get(SIZE);
+        long total = buffer.get(TOTAL);
+        while (size > 0 && buffer.get(time(head)) <= now - window) {
+            total -= buffer.get(time(head) + 1);
+            head = (head + 1) % maxInvokes;
+            size--;
+        }
+        final int granted = (int) Math.min(permits, maxInvokes - total);
+        final PermitStore.Grant grant;
+        if (granted > 0) {
+            final int tail = (head + size) % maxInvokes;
+            // a wall clock may step back, the log is kept in order anyway.
+            final long time = size == 0 ? now : Math.max(now, buffer.get(time((head + size - 1) % maxInvokes)));
+            buffer.put(time(tail), time);
+            buffer.put(time(tail) + 1, granted);
+            size++;
+            total += granted;
+            grant = PermitStore.Grant.of(granted, 0);
+        } else {
+            grant = PermitStore.Grant.of(0, buffer.get(time(head)) + window - now);
+        }
+        buffer.put(HEAD, head);
+        buffer.put(SIZE, size);
+        buffer.put(TOTAL, total);
+        return grant;
+    }
+
+    private static int time(int entry) {
+        return HEADER + entry * 2;
+    }
+}
@@ -0,0 +1,463 @@
+package one.williamwong.ratelimiter;
+
+/**
+ * The invocation history of a rate limiter, kept as a ring of entries.
+ * <p>
+ * Permits are numbered in the order they are issued. Every entry covers a run of consecutive permits and keeps the
+ * release time of the latest invocation in the run, together with the number right after its last permit ('end').
+ * Therefore, an invocation of N permits is a single entry, and the entry holding a given permit can be found with a
+ * binary search.
+ * <p>
+ * If `samplingInterval` is N, invocations are merged into the latest entry until it holds N permits. A merged entry
+ * reports the latest release time of its invocations for all of its permits, so a rate limiter may release a
+ * little later than it could, but never earlier.
+ * <p>
+ * As long as every entry but the last one holds exactly 'samplingInterval' permits, which is the case when every
+ * invocation takes a single permit, the ends follow from the start of the head and are not kept, so an entry only
+ * takes its release time. The ends are kept once an invocation breaks that, until the history is cleared, or compacted
+ * while it holds again.
+ * <p>
+ * The ring starts with the given capacity and grows up to the number of entries 'maxInvokes' permits can take, so
+ * that a history which is rarely used stays small. The ring is kept in a {@link HistoryStore}. A history in a mapped
+ * file takes its whole capacity up front and keeps its state in the header of the file after every change, so that
+ * the next process can carry on with it.
+ * <p>
+ * 'maxInvokes' and 'duration' can be changed with {@link #setRate(int, long)}, which keeps the entries. The release
+ * time of a permit dropped before 'maxInvokes' is raised is unknown, so it is taken as the latest release time of the
+ * dropped entries, which is never earlier than it was.
+ */
+final class History {
+
+    static final long NONE = Long.MIN_VALUE;
+
+    private final int samplingInterval;
+    private final HistoryStore store;
+    // the file of the history, or null if it is not kept beyond the process.
+    private final HistoryStore.Attached attached;
+    private int maxInvokes;
+    private int maxCapacity;
+    private long duration;
+    private Longs times;
+    // the ends of the entries, or null while every entry but the last one holds exactly 'samplingInterval' permits.
+    private Longs ends;
+    // the largest 'maxInvokes' since the ends are kept, as entries may still hold as many permits.
+    private int endsMaxInvokes;
+    private int head;
+    private int size;
+    private long issued;
+    private long headStart;
+    private long tailStart;
+    private long generation;
+    // the latest release time of the entries dropped from the head, or NONE.
+    private long dropped;
+
+    History(int maxInvokes, int samplingInterval) {
+        this(maxInvokes, samplingInterval, Integer.MAX_VALUE);
+    }
+
+    History(int maxInvokes, int samplingInterval, int initialCapacity) {
+        this(maxInvokes, samplingInterval, initialCapacity, HistoryStore.heap(), 0);
+    }
+
+    /**
+     * @param duration the duration of the rate limiter in nanoseconds, which the store may encode release times with
+     */
+    History(int maxInvokes, int samplingInterval, int initialCapacity, HistoryStore store, long duration) {
+        this.maxInvokes = maxInvokes;
+        this.samplingInterval = samplingInterval;
+        // every entry but the first and the last one holds at least 'samplingInterval' permits.
+        this.maxCapacity = (int) Math.ceil(maxInvokes * 1.0d / samplingInterval) + 1;
+        this.store = store;
+        this.duration = duration;
+        this.attached = store.attach(maxInvokes, samplingInterval, maxCapacity);
+        if (attached == null) {
+            final int capacity = Math.min(initialCapacity, maxCapacity);
+            this.times = store.allocateTimes(capacity, duration);
+            clear();
+        } else {
+            this.times = attached.times;
+            this.ends = attached.ends;
+            load();
+        }
+    }
+
+    void clear() {
+        if (attached == null) {
+            this.ends = null;
+            this.endsMaxInvokes = maxInvokes;
+        }
+        this.generation++;
+        this.head = 0;
+        this.size = 0;
+        this.issued = 0;
+        this.headStart = 0;
+        this.tailStart = 0;
+        this.dropped = NONE;
+        save();
+    }
+
+    long issued() {
+        return issued;
+    }
+
+    /**
+     * @return a number which changes whenever the history is cleared, so that the permits issued before can be told
+     * from the ones issued after.
+     */
+    long generation() {
+        return generation;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * An invocation of N permits can only be released 'duration' after the release of the 'maxInvokes' th permit
+     * before its last permit. An invocation of more than 'maxInvokes' permits, which was let in before 'maxInvokes'
+     * was lowered, is released 'duration' after the last permit.
+     *
+     * @param now      current time (measured with System.nanoTime())
+     * @param permits  the number of permits of the invocation
+     * @param duration the duration of the rate in nanoseconds
+     * @return the earliest time the invocation can be released
+     */
+    long releaseTime(long now, int permits, long duration) {
+        final long referenceRecord = timeOf(Math.min(issued - 1, issued + permits - 1 - maxInvokes));
+        if (referenceRecord != NONE && (now - referenceRecord) < duration) {
+            return duration + referenceRecord;
+        }
+        return now;
+    }
+
+    /**
+     * Same as {@link #releaseTime(long, int, long)}, for a history whose invocations are not recorded in the order of
+     * their release times, e.g. a level of a {@link CompositeRateLimiter} shared by invocations which are paused by
+     * other levels. Every permit of the invocation can only be released 'duration' after the 'maxInvokes' th permit
+     * before it, so the latest release time of those permits is taken, rather than the one of the last permit.
+     */
+    long releaseTimeOutOfOrder(long now, int permits, long duration) {
+        final long from = Math.max(headStart, issued - maxInvokes);
+        final long to = Math.min(issued, issued + permits - maxInvokes);
+        long latest = NONE;
+        for (int offset = from < to ? offsetOf(from) : size; offset < size; offset++) {
+            final int slot = slot(offset);
+            final long time = times.get(slot);
+            if (time != NONE && (latest == NONE || time - latest > 0)) {
+                latest = time;
+            }
+            if (endAt(offset) >= to) {
+                break;
+            }
+        }
+        if (latest != NONE && (now - latest) < duration) {
+            return duration + latest;
+        }
+        return now;
+    }
+
+    /**
+     * @param permit the number of a permit
+     * @return the release time of the invocation holding the permit, or {@link #NONE} if there is no such invocation.
+     * A permit which has been dropped takes the latest release time of the dropped entries.
+     */
+    long timeOf(long permit) {
+        if (permit < 0 || permit >= issued) {
+            return NONE;
+        }
+        if (permit < headStart) {
+            return dropped;
+        }
+        return times.get(slot(offsetOf(permit)));
+    }
+
+    /**
+     * Record an invocation of 'permits' permits released at 'time'. Entries which can no longer be referred by any
+     * later invocation, i.e. which end before the last 'maxInvokes' permits, are dropped.
+     */
+    void record(long time, int permits) {
+        if (ends == null && !staysUniform(permits)) {
+            keepEnds();
+        }
+        final long tailEnd = issued;
+        issued += permits;
+        while (size > 0 && endAt(0) <= issued - maxInvokes) {
+            removeHead();
+        }
+        if (size == times.capacity() && size < maxCapacity && attached == null) {
+            resize(Math.min(maxCapacity, Math.max(2, size * 2)));
+        }
+        final boolean full = size == times.capacity();
+        if (size > 0 && (full || tailEnd - tailStart < samplingInterval)) {
+            final int tail = slot(size - 1);
+            // the latest release time of the merged invocations, which may not be recorded in order.
+            final long previous = times.get(tail);
+            times.put(tail, previous != NONE && previous - time > 0 ? previous : time);
+            putEnd(tail, issued);
+        } else {
+            final int tail = slot(size);
+            tailStart = issued - permits;
+            times.put(tail, time);
+            putEnd(tail, issued);
+            size++;
+        }
+        save();
+    }
+
+    /**
+     * Change the rate, keeping the entries. Entries which can no longer be referred by any later invocation are
+     * dropped, and the ring is shrunk if it is larger than the new limit takes. Otherwise, the ring is only copied
+     * again if the store encodes release times or ends too narrow for the new rate, e.g. a compact store whose
+     * release times no longer cover twice the new duration.
+     *
+     * @param maxInvokes the max invokes in last 'duration', more than the sampling interval
+     * @param duration   the duration of the rate in nanoseconds
+     * @throws UnsupportedOperationException if 'maxInvokes' is changed for a history in a mapped file, whose size is
+     *                                       fixed by the file
+     */
+    void setRate(int maxInvokes, long duration) {
+        if (samplingInterval >= maxInvokes) {
+            throw new IllegalArgumentException("samplingInterval cannot be more than max invokes");
+        }
+        if (attached != null && maxInvokes != this.maxInvokes) {
+            throw new UnsupportedOperationException("max invokes of a history in a mapped file cannot be changed");
+        }
+        this.endsMaxInvokes = Math.max(endsMaxInvokes, maxInvokes);
+        this.maxInvokes = maxInvokes;
+        this.maxCapacity = (int) Math.ceil(maxInvokes * 1.0d / samplingInterval) + 1;
+        this.duration = duration;
+        while (size > 0 && endAt(0) <= issued - maxInvokes) {
+            removeHead();
+        }
+        if (attached == null && (store.outgrows(times, ends, duration, endsMaxInvokes)
+                || times.capacity() > maxCapacity)) {
+            resize(Math.max(size, Math.min(times.capacity(), maxCapacity)));
+        }
+        save();
+    }
+
+    /**
+     * Return the permits of an invocation recorded earlier, so that they no longer pause any later invocation.
+     * <p>
+     * If no permit has been issued after the invocation, its permits are taken back and will be issued again.
+     * Otherwise, if the invocation has an entry on its own, the entry is vacated, so that it does not pause the
+     * invocation referring to it. An invocation merged with others cannot be told apart from them, so its permits
+     * are not returned.
+     *
+     * @param generation the generation when the invocation was recorded
+     * @param end        the number of issued permits right after the invocation was recorded
+     * @param permits    the number of permits of the invocation
+     * @return true if the permits are returned
+     */
+    boolean cancel(long generation, long end, int permits) {
+        if (generation != this.generation || end - permits < headStart || end > issued) {
+            return false;
+        }
+        final int offset = offsetOf(end - 1);
+        final int slot = slot(offset);
+        final long start = offset == 0 ? headStart : endAt(offset - 1);
+        if (end == issued) {
+            issued -= permits;
+            putEnd(slot, issued);
+            if (issued == start) {
+                size--;
+                if (offset > 0) {
+                    tailStart = offset == 1 ? headStart : endAt(offset - 2);
+                }
+            }
+            save();
+            return true;
+        }
+        if (endAt(offset) == end && start == end - permits) {
+            times.put(slot, NONE);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drop the entries released at or before 'expiry', and shrink the ring if it is mostly unused. An entry released
+     * 'duration' ago can no longer pause any invocation, so dropping it does not change any release time. A history
+     * without any entry releases its ring entirely, and a history whose entries hold 'samplingInterval' permits again
+     * no longer keeps their ends.
+     *
+     * @param expiry entries released at or before this time (measured with System.nanoTime()) are dropped.
+     */
+    void compact(long expiry) {
+        while (size > 0 && (times.get(head) == NONE || times.get(head) - expiry <= 0)) {
+            removeHead();
+        }
+        if (attached == null && ends != null && isUniform()) {
+            ends = null;
+            endsMaxInvokes = maxInvokes;
+        }
+        if (attached == null && size <= times.capacity() / 4) {
+            resize(size * 2);
+        }
+        save();
+    }
+
+    /**
+     * Walks through all entries, so it takes time proportional to the size of the history.
+     *
+     * @param since permits released at or before this time (measured with System.nanoTime()) are not counted.
+     * @return the number of permits released after 'since', including the ones to be released later. A merged entry
+     * counts all of its permits at the release time of its latest invocation.
+     */
+    long permitsSince(long since) {
+        long permits = 0;
+        long start = headStart;
+        for (int i = 0; i < size; i++) {
+            final int slot = slot(i);
+            if (times.get(slot) != NONE && times.get(slot) - since > 0) {
+                permits += endAt(i) - start;
+            }
+            start = endAt(i);
+        }
+        return permits;
+    }
+
+    /**
+     * @return the approximate number of bytes taken by this history.
+     */
+    long footprint() {
+        // object header and fields, plus an array of 'capacity' times and another of 'capacity' ends, if kept.
+        final Longs ends = this.ends;
+        final long width = times.width() + (ends == null ? 0 : ends.width());
+        return times.capacity() == 0 ? 64 : 64 + 2 * 16 + width * times.capacity();
+    }
+
+    /**
+     * @return the offset from the head of the entry holding the given permit, which must be in the history.
+     */
+    private int offsetOf(long permit) {
+        final Longs ends = this.ends;
+        if (ends == null) {
+            return (int) ((permit - headStart) / samplingInterval);
+        }
+        if (ends.get(head) > permit) {
+            return 0;
+        }
+        int low = 1;
+        int high = size - 1;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (ends.get(slot(mid)) > permit) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private void removeHead() {
+        final long time = times.get(head);
+        if (time != NONE && (dropped == NONE || time - dropped > 0)) {
+            dropped = time;
+        }
+        headStart = endAt(0);
+        head = slot(1);
+        size--;
+    }
+
+    /**
+     * @return the number right after the last permit of the entry at the given offset from the head
+     */
+    private long endAt(int offset) {
+        final Longs ends = this.ends;
+        if (ends == null) {
+            return Math.min(headStart + (offset + 1L) * samplingInterval, issued);
+        }
+        return ends.get(slot(offset));
+    }
+
+    private void putEnd(int slot, long end) {
+        if (ends != null) {
+            ends.put(slot, end);
+        }
+    }
+
+    /**
+     * @return true if every entry but the last one still holds exactly 'samplingInterval' permits, and the last one
+     * no more, after an invocation of 'permits' permits is recorded. A ring which is full merges into the last entry
+     * whatever it holds, so it is taken as breaking it.
+     */
+    private boolean staysUniform(int permits) {
+        if (permits > samplingInterval) {
+            return false;
+        }
+        final long tailPermits = issued - tailStart;
+        return size == 0 || tailPermits + permits <= samplingInterval
+                || tailPermits == samplingInterval && size < maxCapacity;
+    }
+
+    /**
+     * @return true if every entry but the last one holds exactly 'samplingInterval' permits, and the last one no more.
+     */
+    private boolean isUniform() {
+        for (int i = 0; i < size; i++) {
+            if (ends.get(slot(i)) != Math.min(headStart + (i + 1L) * samplingInterval, issued)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Start keeping the ends of the entries, before the permits of an invocation which breaks their layout are issued.
+     */
+    private void keepEnds() {
+        final Longs kept = store.allocateEnds(times.capacity(), endsMaxInvokes);
+        for (int i = 0; i < size; i++) {
+            kept.put(slot(i), endAt(i));
+        }
+        ends = kept;
+    }
+
+    private void resize(int capacity) {
+        final Longs resizedTimes = store.allocateTimes(capacity, duration);
+        final Longs resizedEnds = ends == null ? null : store.allocateEnds(capacity, endsMaxInvokes);
+        for (int i = 0; i < size; i++) {
+            resizedTimes.put(i, times.get(slot(i)));
+            if (resizedEnds != null) {
+                resizedEnds.put(i, ends.get(slot(i)));
+            }
+        }
+        times = resizedTimes;
+        ends = resizedEnds;
+        head = 0;
+    }
+
+    private void load() {
+        final Longs header = attached.header;
+        head = (int) header.get(HistoryStore.Attached.HEAD);
+        size = (int) header.get(HistoryStore.Attached.SIZE);
+        issued = header.get(HistoryStore.Attached.ISSUED);
+        headStart = header.get(HistoryStore.Attached.HEAD_START);
+        tailStart = header.get(HistoryStore.Attached.TAIL_START);
+        generation = header.get(HistoryStore.Attached.GENERATION);
+        dropped = attached.dropped.get(0);
+    }
+
+    /**
+     * Keep the state in the header of the file, after the entries it refers to are written.
+     */
+    private void save() {
+        if (attached != null) {
+            final Longs header = attached.header;
+            header.put(HistoryStore.Attached.HEAD, head);
+            header.put(HistoryStore.Attached.SIZE, size);
+            header.put(HistoryStore.Attached.ISSUED, issued);
+            header.put(HistoryStore.Attached.HEAD_START, headStart);
+            header.put(HistoryStore.Attached.TAIL_START, tailStart);
+            header.put(HistoryStore.Attached.GENERATION, generation);
+            attached.dropped.put(0, dropped);
+        }
+    }
+
+    private int slot(int offset) {
+        final int slot = head + offset;
+        return slot < times.capacity() ? slot : slot - times.capacity();
+    }
+}
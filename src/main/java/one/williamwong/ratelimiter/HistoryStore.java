@@ -0,0 +1,253 @@
+package one.williamwong.ratelimiter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Where a rate limiter keeps its invocation history.
+ * <ul>
+ * <li>{@link #heap()} keeps it in arrays on the heap, the default.</li>
+ * <li>{@link #offHeap()} keeps it in direct buffers, so that a history of millions of records is not scanned by the
+ * garbage collector.</li>
+ * <li>{@link #mapped(Path)} keeps it in a memory-mapped file, so that a restarted process carries on with the history
+ * of the previous one rather than starting with an empty window.</li>
+ * <li>{@link #compact(Duration)} keeps release times on the heap in 16 or 32 bits rather than 64, and the ends of
+ * entries in 32 bits.</li>
+ * </ul>
+ */
+public abstract class HistoryStore {
+
+    private static final HistoryStore HEAP = new HistoryStore() {
+        @Override
+        Longs allocate(final int capacity) {
+            return capacity == 0 ? Longs.EMPTY : new Longs.Heap(new long[capacity]);
+        }
+    };
+
+    private static final HistoryStore OFF_HEAP = new HistoryStore() {
+        @Override
+        Longs allocate(final int capacity) {
+            if (capacity == 0) {
+                return Longs.EMPTY;
+            }
+            final LongBuffer[] segments = new LongBuffer[Longs.segmentsOf(capacity)];
+            for (int i = 0; i < segments.length; i++) {
+                final int size = Math.min(Longs.SEGMENT_SIZE, capacity - i * Longs.SEGMENT_SIZE);
+                segments[i] = ByteBuffer.allocateDirect(size * Long.BYTES)
+                        .order(ByteOrder.nativeOrder())
+                        .asLongBuffer();
+            }
+            return new Longs.Buffers(segments, capacity, 0);
+        }
+    };
+
+    HistoryStore() {
+    }
+
+    public static HistoryStore heap() {
+        return HEAP;
+    }
+
+    /**
+     * A direct buffer is freed once it is garbage collected, so a history which grows and shrinks often may hold more
+     * native memory than it uses for a while.
+     */
+    public static HistoryStore offHeap() {
+        return OFF_HEAP;
+    }
+
+    /**
+     * Release times are kept in the file as wall clock time, so that another process can tell how long ago they
+     * were. A step of the wall clock between two processes moves the history by the same amount.
+     * <p>
+     * The file takes 16 bytes per record for the whole window up front, but pages are only written as the history
+     * fills them. It must not be used by more than one rate limiter at a time, and an existing file must have been
+     * written with the same 'maxInvokes' and 'samplingInterval'. Writes survive the process, but not the host, as
+     * they are not forced to the disk.
+     *
+     * @param file the file of the history, which is created if it does not exist
+     */
+    public static HistoryStore mapped(final Path file) {
+        return new Mapped(file);
+    }
+
+    /**
+     * Release times are kept as offsets from a moving epoch, in units of 'resolution' rounded up, so an invocation may
+     * be released up to 'resolution' later than it could. The width is the smallest of 16 and 32 bits which covers
+     * twice the duration of the rate limiter in 'resolution', e.g. 32 bits cover durations up to 1 second in
+     * nanoseconds, and 16 bits cover durations up to 16 milliseconds in microseconds. Release times take 64 bits if
+     * neither does.
+     * <p>
+     * A record takes 2 or 4 bytes while every entry holds 'samplingInterval' permits, e.g. while every invocation takes
+     * a single permit, as its end is not kept. Otherwise, the end takes another 4 bytes, as an offset from a moving
+     * epoch too, or 8 bytes if 'maxInvokes' is 2^29 or more. A record on the heap takes 8 and 16 bytes respectively.
+     *
+     * @param resolution the unit of release times
+     */
+    public static HistoryStore compact(final Duration resolution) {
+        final long nanos = resolution.toNanos();
+        if (nanos <= 0) {
+            throw new IllegalArgumentException("resolution must be positive");
+        }
+        return new HistoryStore() {
+            @Override
+            Longs allocate(final int capacity) {
+                return HEAP.allocate(capacity);
+            }
+
+            @Override
+            Longs allocateTimes(final int capacity, final long duration) {
+                final int bits = Longs.Offsets.bitsFor(duration, nanos);
+                return bits == 0 ? allocate(capacity) : Longs.Offsets.of(capacity, nanos, bits);
+            }
+
+            @Override
+            Longs allocateEnds(final int capacity, final int maxInvokes) {
+                // the ends of a history are less than 4 'maxInvokes' apart, which 32 bits cover.
+                return maxInvokes < 1 << 29 ? Longs.Offsets.of(capacity, 1, 32) : allocate(capacity);
+            }
+
+            @Override
+            boolean outgrows(final Longs times, final Longs ends, final long duration, final int maxInvokes) {
+                final int bits = Longs.Offsets.bitsFor(duration, nanos);
+                return times.width() < (bits == 0 ? 8 : bits / 8)
+                        || ends != null && ends.width() < (maxInvokes < 1 << 29 ? 4 : 8);
+            }
+        };
+    }
+
+    /**
+     * @return 'capacity' longs, for a history which grows and shrinks
+     */
+    abstract Longs allocate(int capacity);
+
+    /**
+     * @param duration the duration of the rate limiter in nanoseconds, which release times are within of each other
+     * @return 'capacity' release times, for a history which grows and shrinks
+     */
+    Longs allocateTimes(final int capacity, final long duration) {
+        return allocate(capacity);
+    }
+
+    /**
+     * @param maxInvokes the largest max invokes of the history since its ends are kept, which bounds how far apart the
+     *                   ends are
+     * @return 'capacity' ends of entries, for a history which grows and shrinks
+     */
+    Longs allocateEnds(final int capacity, final int maxInvokes) {
+        return allocate(capacity);
+    }
+
+    /**
+     * @param ends the ends, or null if they are not kept
+     * @return true if 'times' and 'ends' are encoded too narrow for 'duration' and 'maxInvokes', so that they must be
+     * copied into ones allocated for them. Wider ones still cover them.
+     */
+    boolean outgrows(final Longs times, final Longs ends, final long duration, final int maxInvokes) {
+        return false;
+    }
+
+    /**
+     * @return the history kept beyond the process with 'capacity' records, or null if this store does not keep it.
+     */
+    Attached attach(final int maxInvokes, final int samplingInterval, final int capacity) {
+        return null;
+    }
+
+    /**
+     * A history in a file. The header keeps the state of the history, see {@link History}. The latest release time of
+     * the dropped entries is kept right after it, as a wall clock time like the release times of the entries.
+     */
+    static final class Attached {
+        static final int MAX_INVOKES = 0;
+        static final int SAMPLING_INTERVAL = 1;
+        static final int HEAD = 2;
+        static final int SIZE = 3;
+        static final int ISSUED = 4;
+        static final int HEAD_START = 5;
+        static final int TAIL_START = 6;
+        static final int GENERATION = 7;
+        static final int DROPPED = 8;
+        static final int HEADER = 9;
+
+        final Longs header;
+        final Longs dropped;
+        final Longs times;
+        final Longs ends;
+
+        Attached(Longs header, Longs dropped, Longs times, Longs ends) {
+            this.header = header;
+            this.dropped = dropped;
+            this.times = times;
+            this.ends = ends;
+        }
+    }
+
+    private static final class Mapped extends HistoryStore {
+
+        private final Path file;
+
+        private Mapped(final Path file) {
+            this.file = file;
+        }
+
+        @Override
+        Longs allocate(final int capacity) {
+            throw new UnsupportedOperationException("a mapped history does not grow");
+        }
+
+        @Override
+        Attached attach(final int maxInvokes, final int samplingInterval, final int capacity) {
+            // the mapping stays valid after the channel is closed.
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final long wallClockShift = wallClockNanos() - System.nanoTime();
+                final Longs header = map(channel, 0, Attached.DROPPED, 0);
+                final Longs dropped = map(channel, Attached.DROPPED, 1, wallClockShift);
+                final long existing = header.get(Attached.MAX_INVOKES);
+                if (existing == 0) {
+                    // a new file is filled with zeros.
+                    header.put(Attached.MAX_INVOKES, maxInvokes);
+                    header.put(Attached.SAMPLING_INTERVAL, samplingInterval);
+                    dropped.put(0, History.NONE);
+                } else if (existing != maxInvokes || header.get(Attached.SAMPLING_INTERVAL) != samplingInterval) {
+                    throw new IllegalArgumentException("max invokes " + maxInvokes + " and sampling interval "
+                            + samplingInterval + " do not match " + file);
+                }
+                final Longs times = map(channel, Attached.HEADER, capacity, wallClockShift);
+                final Longs ends = map(channel, Attached.HEADER + (long) capacity, capacity, 0);
+                return new Attached(header, dropped, times, ends);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * @param offset the offset in longs
+         */
+        private static Longs map(final FileChannel channel, final long offset, final int capacity, final long shift)
+                throws IOException {
+            final LongBuffer[] segments = new LongBuffer[Longs.segmentsOf(capacity)];
+            for (int i = 0; i < segments.length; i++) {
+                final long start = offset + (long) i * Longs.SEGMENT_SIZE;
+                final int size = Math.min(Longs.SEGMENT_SIZE, capacity - i * Longs.SEGMENT_SIZE);
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start * Long.BYTES,
+                        (long) size * Long.BYTES).asLongBuffer();
+            }
+            return new Longs.Buffers(segments, capacity, shift);
+        }
+
+        private static long wallClockNanos() {
+            final Instant now = Instant.now();
+            return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+        }
+    }
+}
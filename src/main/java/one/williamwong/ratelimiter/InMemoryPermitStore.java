@@ -0,0 +1,32 @@
+package one.williamwong.ratelimiter;
+
+import java.nio.LongBuffer;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * A {@link PermitStore} in the current process, e.g. shared by {@link DistributedRateLimiter}s of several components,
+ * or to simulate nodes in tests. Every name is locked on its own.
+ */
+public class InMemoryPermitStore implements PermitStore {
+
+    private final ConcurrentHashMap<String, GrantLog> logs;
+
+    public InMemoryPermitStore() {
+        this.logs = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public Grant acquire(final String name, final int maxInvokes, final Duration window, final int permits) {
+        final GrantLog log = logs.computeIfAbsent(name,
+                k -> new GrantLog(LongBuffer.allocate(GrantLog.capacity(maxInvokes)), maxInvokes));
+        if (log.maxInvokes() != maxInvokes) {
+            throw new IllegalArgumentException("max invokes " + maxInvokes + " does not match " + log.maxInvokes());
+        }
+        synchronized (log) {
+            return log.grant(nanoTime(), permits, window.toNanos());
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A rate limiter per key, e.g. per tenant or per API key. Every key is limited to at most 'maxInvokes' invocations
+ * in last 'duration' on its own.
+ * <p>
+ * The window of a key is created on its first invocation with a small history, which grows with the invocation rate
+ * of the key. Windows are kept in a {@link ConcurrentHashMap}, which locks per bin, and every window is locked on its
+ * own. An invocation takes the lock of its window only to compute and record its release time; it is paused after
+ * the lock is released.
+ * <p>
+ * Windows are maintained on the calling threads, there is no background thread. Once in a while:
+ * <ul>
+ * <li>a window without any invocation in last 'duration' holds nothing which could pause an invocation, so it is
+ * evicted after it has been idle for 'idleTimeout'.</li>
+ * <li>a window which is still in use is compacted, i.e. entries released before last 'duration' are dropped, and
+ * its history is shrunk if it is mostly unused.</li>
+ * <li>if there are more than 'maxKeys' windows, the least recently used windows are evicted even if they are not
+ * idle. An evicted key starts with an empty window on its next invocation, so it may be released earlier than it
+ * should. Choose 'maxKeys' large enough to hold the keys in use.</li>
+ * </ul>
+ * <p>
+ * When 'tryInvoke' rejects a key, the time until which the key is throttled is kept in a {@link RejectionCache} of
+ * 'rejectionCacheSize' slots, shared by the hottest rejected keys. Until then, 'tryInvoke' of the key is rejected by a
+ * single volatile read, without looking up or locking its window, which keeps abusive keys cheap to reject. A cached
+ * rejection is exact: the window of the key frees up only as time passes.
+ *
+ * @param <K> the type of keys
+ */
+public class KeyedRateLimiter<K> {
+
+    private static final int INITIAL_CAPACITY = 2;
+    private static final int DEFAULT_REJECTION_CACHE_SIZE = 1024;
+
+    private final int maxInvokes;
+    private final long duration;
+    private final int samplingInterval;
+    private final long idleTimeout;
+    private final int maxKeys;
+    private final ConcurrentHashMap<K, Window> windows;
+    private final AtomicLong lastMaintenance;
+    private final AtomicBoolean maintaining;
+    private final RejectionCache<K> rejections;
+    private final WaitStrategy waitStrategy;
+    private final TimeSource timeSource;
+
+    public KeyedRateLimiter(final int maxInvokes, final Duration duration) {
+        this(maxInvokes, duration, 1, duration, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxInvokes       max invokes of a key in last 'duration'
+     * @param duration         the duration of the rate
+     * @param samplingInterval the sampling interval of the history of a key, see {@link SynchronizedRateLimiter}
+     * @param idleTimeout      how long a window is kept after its last invocation has expired
+     * @param maxKeys          the max number of windows to be kept
+     */
+    public KeyedRateLimiter(final int maxInvokes, final Duration duration, final int samplingInterval,
+                            final Duration idleTimeout, final int maxKeys) {
+        this(maxInvokes, duration, samplingInterval, idleTimeout, maxKeys, DEFAULT_REJECTION_CACHE_SIZE);
+    }
+
+    /**
+     * @param maxInvokes         max invokes of a key in last 'duration'
+     * @param duration           the duration of the rate
+     * @param samplingInterval   the sampling interval of the history of a key, see {@link SynchronizedRateLimiter}
+     * @param idleTimeout        how long a window is kept after its last invocation has expired
+     * @param maxKeys            the max number of windows to be kept
+     * @param rejectionCacheSize the number of throttled keys whose rejections are cached, or 0 to cache none
+     */
+    public KeyedRateLimiter(final int maxInvokes, final Duration duration, final int samplingInterval,
+                            final Duration idleTimeout, final int maxKeys, final int rejectionCacheSize) {
+        this(maxInvokes, duration, samplingInterval, idleTimeout, maxKeys, rejectionCacheSize, WaitStrategy.sleep(),
+                TimeSource.system());
+    }
+
+    /**
+     * @param maxInvokes         max invokes of a key in last 'duration'
+     * @param duration           the duration of the rate
+     * @param samplingInterval   the sampling interval of the history of a key, see {@link SynchronizedRateLimiter}
+     * @param idleTimeout        how long a window is kept after its last invocation has expired
+     * @param maxKeys            the max number of windows to be kept
+     * @param rejectionCacheSize the number of throttled keys whose rejections are cached, or 0 to cache none
+     * @param waitStrategy       how an invocation is paused until its release time
+     * @param timeSource         where the current time is read from
+     */
+    public KeyedRateLimiter(final int maxInvokes, final Duration duration, final int samplingInterval,
+                            final Duration idleTimeout, final int maxKeys, final int rejectionCacheSize,
+                            final WaitStrategy waitStrategy, final TimeSource timeSource) {
+        if (samplingInterval >= maxInvokes) {
+            throw new IllegalArgumentException("samplingInterval cannot be more than max invokes");
+        }
+        if (maxKeys <= 0) {
+            throw new IllegalArgumentException("maxKeys must be positive");
+        }
+        if (rejectionCacheSize < 0) {
+            throw new IllegalArgumentException("rejectionCacheSize cannot be negative");
+        }
+        this.maxInvokes = maxInvokes;
+        this.duration = duration.toNanos();
+        this.samplingInterval = samplingInterval;
+        this.idleTimeout = idleTimeout.toNanos();
+        this.maxKeys = maxKeys;
+        this.windows = new ConcurrentHashMap<>();
+        this.lastMaintenance = new AtomicLong(timeSource.nanoTime());
+        this.maintaining = new AtomicBoolean();
+        this.rejections = rejectionCacheSize == 0 ? null : new RejectionCache<>(rejectionCacheSize);
+        this.waitStrategy = waitStrategy;
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * Same as {@link RateLimiter#invoke()}, limited by the window of the key.
+     */
+    public long invoke(final K key) throws InterruptedException {
+        return invoke(key, 1);
+    }
+
+    /**
+     * Same as {@link RateLimiter#invoke(int)}, limited by the window of the key.
+     */
+    public long invoke(final K key, final int permits) throws InterruptedException {
+        checkPermits(permits);
+        final long until = reserve(key, permits, Long.MAX_VALUE);
+        waitStrategy.await(until, timeSource);
+        return until;
+    }
+
+    /**
+     * Same as {@link RateLimiter#tryInvoke()}, limited by the window of the key.
+     */
+    public boolean tryInvoke(final K key) {
+        return tryInvoke(key, 1);
+    }
+
+    /**
+     * Same as {@link RateLimiter#tryInvoke(int)}, limited by the window of the key.
+     */
+    public boolean tryInvoke(final K key, final int permits) {
+        checkPermits(permits);
+        if (rejections != null && rejections.isThrottled(key, timeSource.nanoTime())) {
+            return false;
+        }
+        return reserve(key, permits, 0) != History.NONE;
+    }
+
+    /**
+     * Reset the windows of all keys.
+     */
+    public void reset() {
+        windows.forEach((key, window) -> evict(key, window));
+    }
+
+    /**
+     * @return the estimated number of recent rejections of the key by 'tryInvoke', e.g. to tell abusive keys, or 0
+     * if rejections are not cached. Rejections by the cache itself are not counted.
+     */
+    public int recentRejections(final K key) {
+        return rejections == null ? 0 : rejections.rejections(key);
+    }
+
+    /**
+     * @return the number of keys having a window.
+     */
+    public int size() {
+        return windows.size();
+    }
+
+    /**
+     * Walks through all windows, so it takes time proportional to the number of keys.
+     *
+     * @return the approximate number of bytes taken by the windows of all keys.
+     */
+    public long memoryFootprint() {
+        long footprint = 0;
+        for (Window window : windows.values()) {
+            synchronized (window) {
+                // a map entry, plus a window.
+                footprint += 48 + 32 + window.history.footprint();
+            }
+        }
+        return footprint;
+    }
+
+    /**
+     * Evict idle windows and compact the others. It is done regularly by invocations, but it can be triggered
+     * manually, e.g. before reading {@link #memoryFootprint()}.
+     */
+    public void maintain() {
+        if (!maintaining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final long now = timeSource.nanoTime();
+            lastMaintenance.set(now);
+            for (Map.Entry<K, Window> entry : windows.entrySet()) {
+                final Window window = entry.getValue();
+                final boolean idle;
+                synchronized (window) {
+                    window.history.compact(now - duration);
+                    idle = window.history.isEmpty() && now - window.lastAccess >= idleTimeout;
+                }
+                if (idle) {
+                    evict(entry.getKey(), window);
+                }
+            }
+            if (windows.size() > maxKeys) {
+                evictLeastRecentlyUsed();
+            }
+        } finally {
+            maintaining.set(false);
+        }
+    }
+
+    private long reserve(final K key, final int permits, final long maxWait) {
+        while (true) {
+            final Window window = window(key);
+            final long until;
+            final long now;
+            synchronized (window) {
+                if (window.evicted) {
+                    continue;
+                }
+                now = timeSource.nanoTime();
+                window.lastAccess = now;
+                until = window.history.releaseTime(now, permits, duration);
+                if (until - now > maxWait) {
+                    if (rejections != null) {
+                        // cached under the lock, so that a window evicted after it also evicts the rejection.
+                        final long untilAPermit = permits == 1 ? until : window.history.releaseTime(now, 1, duration);
+                        if (untilAPermit - now > 0) {
+                            rejections.reject(key, untilAPermit, now);
+                        }
+                    }
+                    return History.NONE;
+                }
+                window.history.record(until, permits);
+            }
+            if (now - lastMaintenance.get() >= Math.max(idleTimeout, duration) || windows.size() > maxKeys) {
+                maintain();
+            }
+            return until;
+        }
+    }
+
+    private Window window(final K key) {
+        final Window window = windows.get(key);
+        if (window != null) {
+            return window;
+        }
+        return windows.computeIfAbsent(key, k -> new Window(new History(maxInvokes, samplingInterval, INITIAL_CAPACITY),
+                timeSource.nanoTime()));
+    }
+
+    private void evict(final K key, final Window window) {
+        synchronized (window) {
+            window.evicted = true;
+        }
+        if (rejections != null) {
+            rejections.invalidate(key);
+        }
+        windows.remove(key, window);
+    }
+
+    /**
+     * Evict down to 90% of 'maxKeys', so that the cost of sorting is shared by many invocations. The ages of the
+     * windows are sorted as primitives to find the age from which windows are evicted, rather than sorting the
+     * windows themselves.
+     */
+    private void evictLeastRecentlyUsed() {
+        final List<Map.Entry<K, Window>> entries = new ArrayList<>(windows.entrySet());
+        final int target = maxKeys - maxKeys / 10;
+        final int excess = entries.size() - target;
+        if (excess <= 0) {
+            return;
+        }
+        final long now = timeSource.nanoTime();
+        final long[] ages = new long[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            final Window window = entries.get(i).getValue();
+            synchronized (window) {
+                ages[i] = now - window.lastAccess;
+            }
+        }
+        final long[] sortedAges = ages.clone();
+        Arrays.sort(sortedAges);
+        final long minAge = sortedAges[sortedAges.length - excess];
+        for (int i = 0; i < entries.size() && windows.size() > target; i++) {
+            if (ages[i] >= minAge) {
+                final Map.Entry<K, Window> entry = entries.get(i);
+                evict(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void checkPermits(final int permits) {
+        if (permits <= 0 || permits > maxInvokes) {
+            throw new IllegalArgumentException("permits must be between 1 and max invokes");
+        }
+    }
+
+    private static final class Window {
+        private final History history;
+        private long lastAccess;
+        private boolean evicted;
+
+        private Window(final History history, final long now) {
+            this.history = history;
+            this.lastAccess = now;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package one.williamwong.ratelimiter;
+
+import java.nio.LongBuffer;
+
+/**
+ * A fixed-size array of longs, on the heap or in buffers, which may be off the heap or mapped from a file.
+ * <p>
+ * A buffer cannot hold more than 2 GB, so longs in buffers are split into segments of {@link #SEGMENT_SIZE}. Buffers
+ * can also keep times with another origin, e.g. the wall clock, which are shifted when they are read and written.
+ */
+abstract class Longs {
+
+    static final int SEGMENT_SHIFT = 27;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    static final Longs EMPTY = new Heap(new long[0]);
+
+    abstract long get(int index);
+
+    abstract void put(int index, long value);
+
+    abstract int capacity();
+
+    /**
+     * @return the bytes taken by every value
+     */
+    int width() {
+        return 8;
+    }
+
+    /**
+     * @return the number of segments needed for 'capacity' longs
+     */
+    static int segmentsOf(long capacity) {
+        return (int) ((capacity + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+    }
+
+    static final class Heap extends Longs {
+
+        private final long[] values;
+
+        Heap(long[] values) {
+            this.values = values;
+        }
+
+        @Override
+        long get(int index) {
+            return values[index];
+        }
+
+        @Override
+        void put(int index, long value) {
+            values[index] = value;
+        }
+
+        @Override
+        int capacity() {
+            return values.length;
+        }
+    }
+
+    static final class Buffers extends Longs {
+
+        private final LongBuffer[] segments;
+        private final int capacity;
+        private final long shift;
+
+        /**
+         * @param shift added to every value but {@link History#NONE} when it is written, and taken away when read.
+         */
+        Buffers(LongBuffer[] segments, int capacity, long shift) {
+            this.segments = segments;
+            this.capacity = capacity;
+            this.shift = shift;
+        }
+
+        @Override
+        long get(int index) {
+            final long value = segments[index >>> SEGMENT_SHIFT].get(index & (SEGMENT_SIZE - 1));
+            return shift == 0 || value == History.NONE ? value : value - shift;
+        }
+
+        @Override
+        void put(int index, long value) {
+            segments[index >>> SEGMENT_SHIFT].put(index & (SEGMENT_SIZE - 1),
+                    shift == 0 || value == History.NONE ? value : value + shift);
+        }
+
+        @Override
+        int capacity() {
+            return capacity;
+        }
+    }
+
+    /**
+     * Times kept as offsets of 'resolution' from an epoch in 16 or 32 bits, rounded up, so that a time read back is
+     * never earlier than the one written, and later by less than 'resolution'.
+     * <p>
+     * Times are written in order, so when a time is beyond the range of the epoch, the epoch is moved to it and the
+     * other times are written again. Times which are then too old for the range are kept as the oldest time in the
+     * range instead, which is still later than they were. The range must cover twice the duration of the rate
+     * limiter, so that such a time is still too old to pause any invocation.
+     */
+    abstract static class Offsets extends Longs {
+
+        private static final long UNSET = Long.MIN_VALUE;
+
+        private final long resolution;
+        private final long maxOffset;
+        private long epoch;
+
+        Offsets(long resolution, int bits) {
+            this.resolution = resolution;
+            this.maxOffset = (1L << (bits - 1)) - 1;
+            this.epoch = UNSET;
+        }
+
+        /**
+         * @return 16 or 32 bits to cover twice 'duration' with 'resolution', or 0 if neither does.
+         */
+        static int bitsFor(long duration, long resolution) {
+            final long units = 2 * duration / resolution + 1;
+            return units < Short.MAX_VALUE ? 16 : units < Integer.MAX_VALUE ? 32 : 0;
+        }
+
+        /**
+         * @param capacity   the number of times
+         * @param resolution the resolution in nanoseconds
+         * @param bits       16 or 32
+         */
+        static Offsets of(int capacity, long resolution, int bits) {
+            return bits == 16 ? new Shorts(new short[capacity], resolution) : new Ints(new int[capacity], resolution);
+        }
+
+        /**
+         * @return the offset, or the minimum value for {@link History#NONE}
+         */
+        abstract long offset(int index);
+
+        abstract void offset(int index, long offset);
+
+        @Override
+        final long get(int index) {
+            final long offset = offset(index);
+            return offset == -maxOffset - 1 ? History.NONE : epoch + offset * resolution;
+        }
+
+        @Override
+        final void put(int index, long value) {
+            if (value == History.NONE) {
+                offset(index, -maxOffset - 1);
+                return;
+            }
+            if (epoch == UNSET) {
+                epoch = value;
+            }
+            long offset = ceilDiv(value - epoch);
+            if (offset > maxOffset) {
+                rebase(value);
+                offset = 0;
+            }
+            offset(index, Math.max(offset, -maxOffset));
+        }
+
+        private void rebase(long newEpoch) {
+            final long oldEpoch = epoch;
+            epoch = newEpoch;
+            for (int i = 0; i < capacity(); i++) {
+                final long offset = offset(i);
+                if (offset != -maxOffset - 1) {
+                    offset(i, Math.max(ceilDiv(oldEpoch + offset * resolution - newEpoch), -maxOffset));
+                }
+            }
+        }
+
+        private long ceilDiv(long nanos) {
+            return -Math.floorDiv(-nanos, resolution);
+        }
+    }
+
+    static final class Ints extends Offsets {
+
+        private final int[] offsets;
+
+        Ints(int[] offsets, long resolution) {
+            super(resolution, 32);
+            this.offsets = offsets;
+        }
+
+        @Override
+        long offset(int index) {
+            return offsets[index];
+        }
+
+        @Override
+        void offset(int index, long offset) {
+            offsets[index] = (int) offset;
+        }
+
+        @Override
+        int capacity() {
+            return offsets.length;
+        }
+
+        @Override
+        int width() {
+            return 4;
+        }
+    }
+
+    static final class Shorts extends Offsets {
+
+        private final short[] offsets;
+
+        Shorts(short[] offsets, long resolution) {
+            super(resolution, 16);
+            this.offsets = offsets;
+        }
+
+        @Override
+        long offset(int index) {
+            return offsets[index];
+        }
+
+        @Override
+        void offset(int index, long offset) {
+            offsets[index] = (short) offset;
+        }
+
+        @Override
+        int capacity() {
+            return offsets.length;
+        }
+
+        @Override
+        int width() {
+            return 2;
+        }
+    }
+}
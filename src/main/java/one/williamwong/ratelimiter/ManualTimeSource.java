@@ -0,0 +1,63 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A time source which only moves when it is told to, for deterministic tests.
+ * <p>
+ * It is also a {@link WaitStrategy}, which pauses an invocation by moving the time to its release time rather than
+ * waiting, so that a test runs without sleeping. {@link RateLimiter#invokeAsync()} is still completed by the system
+ * clock, and does not work with this time source.
+ */
+public final class ManualTimeSource implements TimeSource, WaitStrategy {
+
+    private final AtomicLong time;
+
+    public ManualTimeSource() {
+        this(0);
+    }
+
+    /**
+     * @param time the time to start from in nanoseconds
+     */
+    public ManualTimeSource(final long time) {
+        this.time = new AtomicLong(time);
+    }
+
+    @Override
+    public long nanoTime() {
+        return time.get();
+    }
+
+    /**
+     * Move the time forward to 'until', if it is not there yet.
+     */
+    @Override
+    public void await(final long until) {
+        time.accumulateAndGet(until, Math::max);
+    }
+
+    /**
+     * Move the time forward to 'until' if it is measured with this time source, or else pause until 'timeSource' has
+     * reached it.
+     */
+    @Override
+    public void await(final long until, final TimeSource timeSource) throws InterruptedException {
+        if (timeSource == this) {
+            await(until);
+        } else {
+            WaitStrategy.super.await(until, timeSource);
+        }
+    }
+
+    /**
+     * Move the time forward by 'duration'.
+     */
+    public void advance(final Duration duration) {
+        if (duration.isNegative()) {
+            throw new IllegalArgumentException("duration cannot be negative");
+        }
+        time.addAndGet(duration.toNanos());
+    }
+}
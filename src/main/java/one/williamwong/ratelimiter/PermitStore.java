@@ -0,0 +1,57 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+
+/**
+ * The shared state of a {@link DistributedRateLimiter}, e.g. an in-process store, a file shared by processes on the
+ * same host, or an adapter for a remote key-value store.
+ * <p>
+ * A store grants permits of a named limit, and never grants more than 'maxInvokes' permits of a name in any 'window'.
+ * A granted permit counts from the time it is granted, whether or not it is used. The store measures time with its
+ * own clock, so nodes do not have to agree on the time.
+ */
+public interface PermitStore {
+
+    /**
+     * Grant as many of 'permits' as there are left, atomically across all nodes sharing the store.
+     *
+     * @param name       the name of the limit
+     * @param maxInvokes max permits of the name to be granted in any 'window'
+     * @param window     the window of the limit
+     * @param permits    the number of permits asked for
+     * @return the permits granted, which may be fewer than asked for.
+     */
+    Grant acquire(String name, int maxInvokes, Duration window, int permits);
+
+    /**
+     * Permits granted by a {@link PermitStore}.
+     */
+    final class Grant {
+        private final int permits;
+        private final long retryAfter;
+
+        private Grant(final int permits, final long retryAfter) {
+            this.permits = permits;
+            this.retryAfter = retryAfter;
+        }
+
+        /**
+         * @param permits    the number of permits granted
+         * @param retryAfter if nothing is granted, nanoseconds until a permit can be granted, otherwise 0.
+         */
+        public static Grant of(final int permits, final long retryAfter) {
+            if (permits < 0 || retryAfter < 0) {
+                throw new IllegalArgumentException("permits and retryAfter cannot be negative");
+            }
+            return new Grant(permits, retryAfter);
+        }
+
+        public int permits() {
+            return permits;
+        }
+
+        public long retryAfter() {
+            return retryAfter;
+        }
+    }
+}
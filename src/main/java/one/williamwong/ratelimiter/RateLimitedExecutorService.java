@@ -0,0 +1,369 @@
+package one.williamwong.ratelimiter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * An {@link ExecutorService} which hands the tasks submitted to it over to another executor service at the rate
+ * allowed by a rate limiter, so that a submitting thread is never paused by the rate limiter.
+ * <p>
+ * Submitted tasks wait in a bounded queue. A single dispatcher thread drains up to 'maxBatchSize' of them at a time,
+ * takes their release times with a single {@link RateLimiter#admit(long[], int)}, and hands every task over at its
+ * release time, so that all the tasks the window has room for are handed over at once. Rate limiters which do not
+ * record invocations ahead of time, as told by {@link RateLimiter#supportsReservation()}, are invoked for every task
+ * instead.
+ * <p>
+ * If the rate limiter throws an exception, the tasks of the batch not handed over yet are never run: the futures of
+ * the ones submitted complete with the exception, which is passed to the uncaught exception handler of the dispatcher
+ * for the others. The dispatcher goes on with the next batch.
+ * <p>
+ * A task submitted to a full queue is handled by the {@link RejectionPolicy}. Shutting down this executor service
+ * hands the queued tasks over at the rate allowed, and then shuts down the executor service it wraps, which therefore
+ * should not be shared. The tasks returned by {@link #shutdownNow()} are the ones still in the queue; tasks already
+ * drained by the dispatcher, and admitted by the rate limiter, are dropped.
+ */
+public class RateLimitedExecutorService extends AbstractExecutorService {
+
+    /**
+     * What happens to a task submitted when the queue is full.
+     */
+    public enum RejectionPolicy {
+        /**
+         * Throw a {@link RejectedExecutionException}.
+         */
+        ABORT,
+        /**
+         * Drop the task.
+         */
+        DISCARD,
+        /**
+         * Drop the oldest task in the queue, and queue the task.
+         */
+        DISCARD_OLDEST,
+        /**
+         * Invoke the rate limiter and run the task on the submitting thread, which slows down the submitter.
+         */
+        CALLER_RUNS
+    }
+
+    private static final int RUNNING = 0;
+    private static final int SHUTDOWN = 1;
+    private static final int STOP = 2;
+
+    private final ExecutorService executorService;
+    private final RateLimiter rateLimiter;
+    private final TimeSource timeSource;
+    private final BlockingQueue<Runnable> queue;
+    private final RejectionPolicy rejectionPolicy;
+    private final int maxBatchSize;
+    private final boolean reserving;
+    private final Thread dispatcher;
+    private volatile int state = RUNNING;
+    // only read and written by the dispatcher.
+    private final List<Runnable> batch;
+    private final long[] releaseTimes;
+
+    public RateLimitedExecutorService(final ExecutorService executorService, final RateLimiter rateLimiter) {
+        this(executorService, rateLimiter, Integer.MAX_VALUE, RejectionPolicy.ABORT, 64);
+    }
+
+    public RateLimitedExecutorService(final ExecutorService executorService, final RateLimiter rateLimiter,
+                                      final int maxQueueSize, final RejectionPolicy rejectionPolicy,
+                                      final int maxBatchSize) {
+        this(executorService, rateLimiter, maxQueueSize, rejectionPolicy, maxBatchSize, TimeSource.system());
+    }
+
+    /**
+     * @param executorService the executor service the tasks are handed over to, shut down with this one
+     * @param rateLimiter     the rate limiter which releases the tasks, a permit each
+     * @param maxQueueSize    the max number of tasks waiting to be handed over
+     * @param rejectionPolicy what happens to a task submitted when the queue is full
+     * @param maxBatchSize    the max number of tasks admitted by the rate limiter at once
+     * @param timeSource      the time source of the rate limiter, which its release times are measured with
+     */
+    public RateLimitedExecutorService(final ExecutorService executorService, final RateLimiter rateLimiter,
+                                      final int maxQueueSize, final RejectionPolicy rejectionPolicy,
+                                      final int maxBatchSize, final TimeSource timeSource) {
+        if (maxQueueSize <= 0) {
+            throw new IllegalArgumentException("maxQueueSize must be positive");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        this.executorService = executorService;
+        this.rateLimiter = rateLimiter;
+        this.timeSource = timeSource;
+        // an array of Integer.MAX_VALUE slots cannot be allocated.
+        this.queue = maxQueueSize == Integer.MAX_VALUE
+                ? new LinkedBlockingQueue<>()
+                : new ArrayBlockingQueue<>(maxQueueSize);
+        this.rejectionPolicy = rejectionPolicy;
+        this.maxBatchSize = maxBatchSize;
+        this.batch = new ArrayList<>(maxBatchSize);
+        this.releaseTimes = new long[maxBatchSize];
+        this.reserving = rateLimiter.supportsReservation();
+        this.dispatcher = new Thread(this::dispatch, "rate-limited-executor-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Create an executor service which runs every task on a thread of its own, a virtual thread when the JVM
+     * supports them (Java 21 or later), or else a thread of a cached pool.
+     *
+     * @see #RateLimitedExecutorService(ExecutorService, RateLimiter, int, RejectionPolicy, int)
+     */
+    public static RateLimitedExecutorService threadPerTask(final RateLimiter rateLimiter, final int maxQueueSize,
+                                                           final RejectionPolicy rejectionPolicy,
+                                                           final int maxBatchSize) {
+        return new RateLimitedExecutorService(
+                newThreadPerTaskExecutor(), rateLimiter, maxQueueSize, rejectionPolicy, maxBatchSize);
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (state != RUNNING) {
+            throw new RejectedExecutionException("rate limited executor service is shut down");
+        }
+        if (!queue.offer(task) && !reject(task)) {
+            return;
+        }
+        // the dispatcher may have drained the queue for the last time after the check above.
+        if (state != RUNNING && queue.remove(task)) {
+            throw new RejectedExecutionException("rate limited executor service is shut down");
+        }
+    }
+
+    /**
+     * @return the number of tasks waiting to be handed over.
+     */
+    public int queueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public void shutdown() {
+        if (state == RUNNING) {
+            state = SHUTDOWN;
+            dispatcher.interrupt();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        state = STOP;
+        dispatcher.interrupt();
+        final List<Runnable> tasks = new ArrayList<>();
+        queue.drainTo(tasks);
+        tasks.addAll(executorService.shutdownNow());
+        return tasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return state != RUNNING;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return !dispatcher.isAlive() && executorService.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = nanoTime() + unit.toNanos(timeout);
+        TimeUnit.NANOSECONDS.timedJoin(dispatcher, Math.max(1, deadline - nanoTime()));
+        return !dispatcher.isAlive() && executorService.awaitTermination(deadline - nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(final Runnable runnable, final T value) {
+        return new Task<>(runnable, value);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(final Callable<T> callable) {
+        return new Task<>(callable);
+    }
+
+    /**
+     * @return true if the task is queued after all
+     */
+    private boolean reject(final Runnable task) {
+        switch (rejectionPolicy) {
+            case DISCARD:
+                return false;
+            case DISCARD_OLDEST:
+                do {
+                    queue.poll();
+                } while (!queue.offer(task));
+                return true;
+            case CALLER_RUNS:
+                try {
+                    rateLimiter.invoke();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("interrupted while the task was paused", e);
+                }
+                task.run();
+                return false;
+            default:
+                throw new RejectedExecutionException("queue of rate limited executor service is full");
+        }
+    }
+
+    private void dispatch() {
+        try {
+            Runnable task;
+            while ((task = take()) != null) {
+                batch.add(task);
+                queue.drainTo(batch, maxBatchSize - 1);
+                final boolean handedOver = handOver();
+                batch.clear();
+                if (!handedOver) {
+                    return;
+                }
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * @return the next task, waiting for it while this executor service is running, or null once it is shut down and
+     * the queue is empty
+     */
+    private Runnable take() {
+        while (state != STOP) {
+            if (state == SHUTDOWN) {
+                return queue.poll();
+            }
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                // shut down, so the queue is drained without waiting.
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hand over the tasks of the batch at their release times.
+     *
+     * @return false if this executor service is stopped in the meantime
+     */
+    private boolean handOver() {
+        final int size = batch.size();
+        int handedOver = 0;
+        try {
+            if (reserving) {
+                rateLimiter.admit(releaseTimes, size);
+            }
+            for (; handedOver < size; handedOver++) {
+                if (reserving ? !pauseUntil(releaseTimes[handedOver]) : !invoke()) {
+                    return false;
+                }
+                try {
+                    executorService.execute(batch.get(handedOver));
+                } catch (RejectedExecutionException e) {
+                    // the executor service handed over to is shut down by someone else; nothing can run the task.
+                }
+            }
+        } catch (RuntimeException e) {
+            fail(handedOver, e);
+        }
+        return true;
+    }
+
+    /**
+     * Fail the tasks of the batch from 'from', which the rate limiter has not released.
+     */
+    private void fail(final int from, final RuntimeException cause) {
+        boolean dropped = false;
+        for (int i = from; i < batch.size(); i++) {
+            final Runnable task = batch.get(i);
+            if (task instanceof Task) {
+                ((Task<?>) task).fail(cause);
+            } else {
+                dropped = true;
+            }
+        }
+        if (dropped) {
+            dispatcher.getUncaughtExceptionHandler().uncaughtException(dispatcher, cause);
+        }
+    }
+
+    /**
+     * @return false if this executor service is stopped before the release time
+     */
+    private boolean pauseUntil(final long releaseTime) {
+        long delay;
+        while ((delay = releaseTime - timeSource.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, delay);
+            // a shut down only drains the queue without waiting, the release times are still kept.
+            Thread.interrupted();
+            if (state == STOP) {
+                return false;
+            }
+        }
+        return state != STOP;
+    }
+
+    /**
+     * @return false if this executor service is stopped before the invocation is released
+     */
+    private boolean invoke() {
+        while (state != STOP) {
+            try {
+                rateLimiter.invoke();
+                return true;
+            } catch (InterruptedException e) {
+                // interrupted by a shut down, the invocation is paused again.
+            }
+        }
+        return false;
+    }
+
+    private static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * A submitted task, whose future can be completed with the exception of the rate limiter.
+     */
+    private static final class Task<T> extends FutureTask<T> {
+
+        private Task(final Runnable runnable, final T value) {
+            super(runnable, value);
+        }
+
+        private Task(final Callable<T> callable) {
+            super(callable);
+        }
+
+        private void fail(final Throwable cause) {
+            setException(cause);
+        }
+    }
+}
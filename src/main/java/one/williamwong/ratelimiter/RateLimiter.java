@@ -1,6 +1,9 @@
 package one.williamwong.ratelimiter;
 
+import java.time.Duration;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A helper class to limit how many invokes within a given duration.
@@ -13,10 +16,153 @@ public interface RateLimiter {
      * then the this method will be blocked for (T - T').
      * If T' invoke T, then the method return immediately.
      *
-     * @return the release time (measured with System.nanoTime())
+     * @return the release time (measured with the time source of the rate limiter)
      * @throws InterruptedException if interrupted when the invocation is paused.
      */
-    long invoke() throws InterruptedException;
+    default long invoke() throws InterruptedException {
+        return invoke(1);
+    }
+
+    /**
+     * Same as {@link #invoke()}, but the invocation counts as 'permits' invokes. For example, a rate limiter of
+     * bytes per second can be invoked with the number of bytes to be sent.
+     *
+     * @param permits the number of invokes this invocation counts as, between 1 and the max invokes.
+     * @return the release time (measured with the time source of the rate limiter)
+     * @throws InterruptedException if interrupted when the invocation is paused.
+     */
+    long invoke(int permits) throws InterruptedException;
+
+    /**
+     * Invoke only if it can be released immediately. Nothing is recorded if the invocation is rejected.
+     *
+     * @return true if the invocation is released, false if it would have to be paused.
+     */
+    default boolean tryInvoke() {
+        return tryInvoke(1);
+    }
+
+    /**
+     * Same as {@link #tryInvoke()}, but the invocation counts as 'permits' invokes.
+     *
+     * @param permits the number of invokes this invocation counts as, between 1 and the max invokes.
+     * @return true if the invocation is released, false if it would have to be paused.
+     */
+    boolean tryInvoke(int permits);
+
+    /**
+     * Invoke only if it can be released within 'maxWait'. If so, this method is paused until the release time like
+     * {@link #invoke()}. Otherwise, it returns immediately and nothing is recorded.
+     *
+     * @param maxWait the maximum time to be paused
+     * @return true if the invocation is released, false if it cannot be released within 'maxWait'.
+     * @throws InterruptedException if interrupted when the invocation is paused.
+     */
+    default boolean tryInvoke(Duration maxWait) throws InterruptedException {
+        return tryInvoke(1, maxWait);
+    }
+
+    /**
+     * Same as {@link #tryInvoke(Duration)}, but the invocation counts as 'permits' invokes.
+     *
+     * @param permits the number of invokes this invocation counts as, between 1 and the max invokes.
+     * @param maxWait the maximum time to be paused
+     * @return true if the invocation is released, false if it cannot be released within 'maxWait'.
+     * @throws InterruptedException if interrupted when the invocation is paused.
+     */
+    boolean tryInvoke(int permits, Duration maxWait) throws InterruptedException;
+
+    /**
+     * Same as {@link #invoke()}, but never blocks. The invocation is recorded right away, and the returned future is
+     * completed with the release time when it is due. Futures are completed by a timer thread shared by all rate
+     * limiters, so dependent stages should use an executor of their own for any heavy work.
+     * <p>
+     * Cancelling the future before it is completed returns the invokes to the rate limiter.
+     *
+     * @return a future of the release time (measured with the time source of the rate limiter)
+     */
+    default CompletableFuture<Long> invokeAsync() {
+        return invokeAsync(1);
+    }
+
+    /**
+     * Same as {@link #invokeAsync()}, but the invocation counts as 'permits' invokes.
+     *
+     * @param permits the number of invokes this invocation counts as, between 1 and the max invokes.
+     * @return a future of the release time (measured with the time source of the rate limiter)
+     */
+    CompletableFuture<Long> invokeAsync(int permits);
+
+    /**
+     * Same as {@link #invokeAsync()}, but returns the reservation itself rather than a future, so that the caller
+     * learns the release time right away and can schedule the invocation, e.g. with a
+     * {@link java.util.concurrent.ScheduledExecutorService} after {@link Reservation#delay(java.util.concurrent.TimeUnit)},
+     * or cancel it to return the invokes to the rate limiter.
+     *
+     * @return the reservation of an invocation
+     * @throws UnsupportedOperationException if the rate limiter does not record invocations ahead of time, see
+     *                                       {@link #supportsReservation()}
+     */
+    default Reservation reserve() {
+        return reserve(1);
+    }
+
+    /**
+     * Same as {@link #reserve()}, but the invocation counts as 'permits' invokes.
+     *
+     * @param permits the number of invokes this invocation counts as, between 1 and the max invokes.
+     * @return the reservation of an invocation
+     * @throws UnsupportedOperationException if the rate limiter does not record invocations ahead of time, see
+     *                                       {@link #supportsReservation()}
+     */
+    Reservation reserve(int permits);
+
+    /**
+     * @return true if the rate limiter records invocations ahead of time, i.e. supports {@link #reserve(int)} and
+     * {@link #admit(long[], int)}
+     */
+    default boolean supportsReservation() {
+        return true;
+    }
+
+    /**
+     * Record 'requested' invocations of a permit each ahead of time, like {@link #reserve()}, and write their release
+     * times into 'releaseTimesOut', so that a producer can dispatch a batch of elements on schedule without calling
+     * the rate limiter for every one of them. The invocations cannot be cancelled.
+     *
+     * @param releaseTimesOut the array the release times are written into from index 0, in the order of the
+     *                        invocations
+     * @param requested       the number of invocations, between 0 and the length of 'releaseTimesOut'
+     * @return the number of invocations which can be released right away
+     * @throws UnsupportedOperationException if the rate limiter does not record invocations ahead of time, see
+     *                                       {@link #supportsReservation()}
+     */
+    default int admit(long[] releaseTimesOut, int requested) {
+        if (requested < 0 || requested > releaseTimesOut.length) {
+            throw new IllegalArgumentException("requested must be between 0 and the length of releaseTimesOut");
+        }
+        int released = 0;
+        for (int i = 0; i < requested; i++) {
+            final Reservation reservation = reserve();
+            releaseTimesOut[i] = reservation.releaseTime();
+            if (reservation.delay(TimeUnit.NANOSECONDS) <= 0) {
+                released++;
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Change the rate to at most 'maxInvokes' invocations in last 'duration', without resetting the rate limiter. The
+     * invocations recorded before are kept, and count towards the new rate.
+     *
+     * @param maxInvokes max invokes in last 'duration'
+     * @param duration   the duration of the rate
+     * @throws UnsupportedOperationException if the rate of the rate limiter cannot be changed
+     */
+    default void setRate(int maxInvokes, Duration duration) {
+        throw new UnsupportedOperationException("the rate of " + getClass().getSimpleName() + " cannot be changed");
+    }
 
     /**
      * Reset all historical records.
@@ -0,0 +1,28 @@
+package one.williamwong.ratelimiter;
+
+/**
+ * Callbacks on the invocations of a rate limiter, e.g. to export metrics, see {@link RateLimiterMetrics}.
+ * <p>
+ * Callbacks are made on the invoking thread, possibly under the lock of the rate limiter. They must be quick,
+ * non-blocking, and should not allocate. A rate limiter without a listener skips them with a single null check.
+ */
+public interface RateLimiterListener {
+
+    /**
+     * An invocation is recorded, and released after 'waitTime'. A paused invocation is reported once it is released,
+     * and an invocation interrupted while paused is not reported at all. A reservation is reported when it is made.
+     *
+     * @param permits  the number of permits of the invocation
+     * @param waitTime the time in nanoseconds the invocation is paused, 0 if released right away.
+     */
+    default void onAdmitted(int permits, long waitTime) {
+    }
+
+    /**
+     * An invocation is rejected by tryInvoke, nothing is recorded.
+     *
+     * @param permits the number of permits of the invocation
+     */
+    default void onRejected(int permits) {
+    }
+}
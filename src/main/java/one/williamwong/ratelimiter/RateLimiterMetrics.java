@@ -0,0 +1,88 @@
+package one.williamwong.ratelimiter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link RateLimiterListener} which counts invocations and keeps a histogram of their wait times. Recording takes
+ * a few uncontended atomic additions and never allocates. A single instance can be shared by many rate limiters to
+ * aggregate them.
+ */
+public final class RateLimiterMetrics implements RateLimiterListener {
+
+    private final LongAdder admitted;
+    private final LongAdder throttled;
+    private final LongAdder rejected;
+    private final LongAdder totalWaitTime;
+    private final WaitTimeHistogram waitTimes;
+
+    public RateLimiterMetrics() {
+        this.admitted = new LongAdder();
+        this.throttled = new LongAdder();
+        this.rejected = new LongAdder();
+        this.totalWaitTime = new LongAdder();
+        this.waitTimes = new WaitTimeHistogram();
+    }
+
+    @Override
+    public void onAdmitted(final int permits, final long waitTime) {
+        admitted.increment();
+        if (waitTime > 0) {
+            throttled.increment();
+            totalWaitTime.add(waitTime);
+        }
+        waitTimes.record(waitTime);
+    }
+
+    @Override
+    public void onRejected(final int permits) {
+        rejected.increment();
+    }
+
+    /**
+     * @return the number of invocations recorded, whether paused or not.
+     */
+    public long admitted() {
+        return admitted.sum();
+    }
+
+    /**
+     * @return the number of invocations recorded which had to be paused.
+     */
+    public long throttled() {
+        return throttled.sum();
+    }
+
+    /**
+     * @return the number of invocations rejected by tryInvoke.
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return the total time in nanoseconds invocations are paused.
+     */
+    public long totalWaitTime() {
+        return totalWaitTime.sum();
+    }
+
+    /**
+     * @param percentile between 0 and 100, e.g. 99.9
+     * @return the wait time in nanoseconds at the percentile of all recorded invocations, with a relative error of
+     * 1 / 16.
+     */
+    public long waitTimePercentile(final double percentile) {
+        return waitTimes.percentile(percentile);
+    }
+
+    /**
+     * Reset all counters. Invocations recorded concurrently may or may not be counted.
+     */
+    public void reset() {
+        admitted.reset();
+        throttled.reset();
+        rejected.reset();
+        totalWaitTime.reset();
+        waitTimes.reset();
+    }
+}
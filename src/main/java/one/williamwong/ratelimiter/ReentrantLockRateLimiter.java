@@ -0,0 +1,177 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * A rate limiter which waits on a {@link Condition} of its {@link ReentrantLock}, so the lock is released while an
+ * invocation is paused and a paused virtual thread does not pin its carrier thread. Other invocations can be recorded
+ * while one is paused, so the release time is computed again whenever a paused invocation wakes up.
+ */
+public class ReentrantLockRateLimiter extends AbstractRateLimiter {
+
+    private final ReentrantLock lock;
+    private final Condition released;
+
+    public ReentrantLockRateLimiter(final int maxInvokes, final Duration duration) {
+        this(maxInvokes, duration, 1);
+    }
+
+    public ReentrantLockRateLimiter(final int maxInvokes, final Duration duration, final int samplingInterval) {
+        this(maxInvokes, duration, samplingInterval, null);
+    }
+
+    public ReentrantLockRateLimiter(final int maxInvokes, final Duration duration, final int samplingInterval,
+                                    final RateLimiterListener listener) {
+        // waits on the condition, which is timed by the system clock.
+        super(maxInvokes, duration, samplingInterval, WaitStrategy.park(), listener, TimeSource.system(),
+                HistoryStore.heap());
+        this.lock = new ReentrantLock();
+        this.released = lock.newCondition();
+    }
+
+    @Override
+    public long invoke(final int permits) throws InterruptedException {
+        checkPermits(permits);
+        lock.lockInterruptibly();
+        try {
+            final long start = nanoTime();
+            final long until = awaitReleaseTime(start, permits, Long.MAX_VALUE);
+            admitted(permits, until - start);
+            return record(until, permits);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits) {
+        checkPermits(permits);
+        lock.lock();
+        try {
+            return tryRecord(permits);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits, final Duration maxWait) throws InterruptedException {
+        checkPermits(permits);
+        lock.lockInterruptibly();
+        try {
+            final long start = nanoTime();
+            final long until = awaitReleaseTime(start, permits, maxWait.toNanos());
+            if (until == History.NONE) {
+                rejected(permits);
+                return false;
+            }
+            admitted(permits, until - start);
+            record(until, permits);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Reservation reserve(final int permits) {
+        checkPermits(permits);
+        lock.lock();
+        try {
+            return recordReservation(permits);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the whole batch under a single lock and a single read of the time.
+     */
+    @Override
+    public int admit(final long[] releaseTimesOut, final int requested) {
+        checkBatch(releaseTimesOut, requested);
+        lock.lock();
+        try {
+            return recordBatch(releaseTimesOut, requested);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    boolean cancel(final long generation, final long end, final int permits) {
+        lock.lock();
+        try {
+            final boolean cancelled = cancelReservation(generation, end, permits);
+            if (cancelled) {
+                released.signalAll();
+            }
+            return cancelled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the permits recorded in last 'duration' over max invokes, see {@link #windowUtilisation()}.
+     */
+    public double utilisation() {
+        lock.lock();
+        try {
+            return windowUtilisation();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes effect right away. Paused invocations wake up and compute their release time again at the new rate.
+     */
+    @Override
+    public void setRate(final int maxInvokes, final Duration duration) {
+        lock.lock();
+        try {
+            changeRate(maxInvokes, duration);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void reset() {
+        lock.lock();
+        try {
+            resetHistory();
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait on the condition until the invocation can be released, under the lock.
+     *
+     * @param start   the time the invocation starts waiting (measured with System.nanoTime())
+     * @param permits the number of permits of the invocation
+     * @param maxWait the maximum time to wait in nanoseconds
+     * @return the release time, or {@link History#NONE} if it cannot be released within 'maxWait'.
+     */
+    private long awaitReleaseTime(final long start, final int permits, final long maxWait)
+            throws InterruptedException {
+        long now = start;
+        long until;
+        while ((until = releaseTime(now, permits)) != now) {
+            if (until - start > maxWait) {
+                return History.NONE;
+            }
+            released.awaitNanos(until - now);
+            now = nanoTime();
+        }
+        return now;
+    }
+}
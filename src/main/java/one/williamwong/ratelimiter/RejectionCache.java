@@ -0,0 +1,92 @@
+package one.williamwong.ratelimiter;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Remembers until when a key is throttled, so that the invocations of a key rejected again and again, e.g. an abusive
+ * API key, are rejected by a single volatile read, without looking up and locking the window of the key.
+ * <p>
+ * Keys are kept in a fixed number of slots, picked by their hash. A slot is taken over by another key only when the
+ * rejection it holds has expired, or when the other key has been rejected at least as often recently, as estimated by
+ * a {@link FrequencySketch}, so that a burst of keys rejected once does not push out the hot ones. Its memory is
+ * therefore bounded, no matter how many keys are rejected.
+ *
+ * @param <K> the type of keys
+ */
+final class RejectionCache<K> {
+
+    private final AtomicReferenceArray<Rejection<K>> slots;
+    private final int mask;
+    private final FrequencySketch sketch;
+
+    /**
+     * @param size the number of slots, rounded up to a power of 2
+     */
+    RejectionCache(final int size) {
+        final int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        // a few counters per slot keep the collisions of the sketch below the ones of the slots.
+        this.sketch = new FrequencySketch(capacity * 4);
+    }
+
+    /**
+     * @param now current time (measured with System.nanoTime())
+     * @return true if the key is known to be throttled at 'now'
+     */
+    boolean isThrottled(final K key, final long now) {
+        final Rejection<K> rejection = slots.get(slot(key));
+        return rejection != null && rejection.until - now > 0 && rejection.key.equals(key);
+    }
+
+    /**
+     * Count a rejection of the key, and remember it if it is hot enough to take the slot.
+     *
+     * @param until the earliest time an invocation of the key can be released
+     * @param now   current time (measured with System.nanoTime())
+     */
+    void reject(final K key, final long until, final long now) {
+        sketch.increment(key);
+        final int slot = slot(key);
+        final Rejection<K> incumbent = slots.get(slot);
+        if (incumbent == null
+                || incumbent.until - now <= 0
+                || incumbent.key.equals(key)
+                || sketch.frequency(key) >= sketch.frequency(incumbent.key)) {
+            slots.set(slot, new Rejection<>(key, until));
+        }
+    }
+
+    /**
+     * Forget the rejection of the key, e.g. when its window is evicted.
+     */
+    void invalidate(final K key) {
+        final int slot = slot(key);
+        final Rejection<K> rejection = slots.get(slot);
+        if (rejection != null && rejection.key.equals(key)) {
+            slots.compareAndSet(slot, rejection, null);
+        }
+    }
+
+    /**
+     * @return the estimated number of recent rejections of the key
+     */
+    int rejections(final K key) {
+        return sketch.frequency(key);
+    }
+
+    private int slot(final K key) {
+        final int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static final class Rejection<K> {
+        private final K key;
+        private final long until;
+
+        private Rejection(final K key, final long until) {
+            this.key = key;
+            this.until = until;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package one.williamwong.ratelimiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Invokes recorded by a rate limiter ahead of their release time, see {@link RateLimiter#reserve(int)}. A reservation
+ * holds its invokes until it is cancelled; the invocation can go ahead at its release time without calling the rate
+ * limiter again, e.g. from a task scheduled after {@link #delay(TimeUnit)}.
+ * <p>
+ * Cancelling a reservation returns its invokes to the rate limiter, as far as the rate limiter can tell them apart
+ * from the invokes recorded after them.
+ */
+public final class Reservation {
+
+    private static final AtomicIntegerFieldUpdater<Reservation> CANCELLED =
+            AtomicIntegerFieldUpdater.newUpdater(Reservation.class, "cancelled");
+
+    private final long releaseTime;
+    private final TimeSource timeSource;
+    private final BooleanSupplier canceller;
+    private volatile int cancelled;
+
+    Reservation(long releaseTime, BooleanSupplier canceller) {
+        this(releaseTime, TimeSource.system(), canceller);
+    }
+
+    /**
+     * @param timeSource the time source of the rate limiter, which the release time is measured with
+     */
+    Reservation(long releaseTime, TimeSource timeSource, BooleanSupplier canceller) {
+        this.releaseTime = releaseTime;
+        this.timeSource = timeSource;
+        this.canceller = canceller;
+    }
+
+    /**
+     * @return the release time (measured with the time source of the rate limiter, System.nanoTime() by default)
+     */
+    public long releaseTime() {
+        return releaseTime;
+    }
+
+    /**
+     * @param unit the unit of the delay
+     * @return the time left until the release time, or a non-positive value if it has passed, e.g. to schedule the
+     * invocation with a {@link java.util.concurrent.ScheduledExecutorService}.
+     */
+    public long delay(TimeUnit unit) {
+        return unit.convert(releaseTime - timeSource.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return true if the invokes are returned to the rate limiter. Only the first call may return true.
+     */
+    public boolean cancel() {
+        return CANCELLED.compareAndSet(this, 0, 1) && canceller.getAsBoolean();
+    }
+
+    /**
+     * @return true if {@link #cancel()} has been called, whether or not the invokes were returned.
+     */
+    public boolean isCancelled() {
+        return cancelled != 0;
+    }
+}
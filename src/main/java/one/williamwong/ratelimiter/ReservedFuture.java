@@ -0,0 +1,72 @@
+package one.williamwong.ratelimiter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A future completed with the release time of a {@link Reservation}.
+ * <p>
+ * All pending futures are completed by a single timer thread shared by all rate limiters, so waiting for a release
+ * does not take a thread. Cancelling the future cancels the reservation.
+ */
+final class ReservedFuture extends CompletableFuture<Long> {
+
+    private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+
+    private final Reservation reservation;
+    private volatile ScheduledFuture<?> timer;
+
+    private ReservedFuture(Reservation reservation) {
+        this.reservation = reservation;
+    }
+
+    static CompletableFuture<Long> of(Reservation reservation) {
+        final ReservedFuture future = new ReservedFuture(reservation);
+        final long releaseTime = reservation.releaseTime();
+        final long delay = reservation.delay(NANOSECONDS);
+        if (delay <= 0) {
+            future.complete(releaseTime);
+        } else {
+            future.timer = TIMER.schedule(() -> future.complete(releaseTime), delay, NANOSECONDS);
+            // the future may be cancelled before the task is assigned, in which case 'cancel' could not remove it.
+            if (future.isDone()) {
+                future.timer.cancel(false);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Run the task on the timer thread after 'delay' nanoseconds, for rate limiters which try again rather than
+     * reserve ahead.
+     */
+    static void schedule(Runnable task, long delay) {
+        TIMER.schedule(task, delay, NANOSECONDS);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        final boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            reservation.cancel();
+            final ScheduledFuture<?> scheduled = timer;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+        return cancelled;
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "rate-limiter-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
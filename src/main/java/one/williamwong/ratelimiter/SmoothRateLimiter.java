@@ -0,0 +1,276 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A rate limiter which spaces the invocations of another rate limiter evenly, rather than letting 'maxInvokes' of
+ * them through at once after a reset or an idle period and then pausing the rest for nearly a whole 'duration'.
+ * <p>
+ * Invocations are paced before they are passed to the wrapped rate limiter, which still enforces its own limit, e.g.
+ * never more than 'maxInvokes' in any 'duration' with a sliding log. Time left unused while idle is saved up as
+ * permits, like Guava's SmoothBursty and SmoothWarmingUp:
+ * <ul>
+ * <li>up to 'maxBurst - 1' saved permits are free, so that up to 'maxBurst' invocations are released at once after a
+ * pause. The stable interval is 'duration / (maxInvokes - maxBurst + 1)', so that a burst and the invocations paced
+ * after it fit in the limit of the wrapped rate limiter, which does not pause them again. With the default burst of
+ * 1, invocations are never closer than 'duration / maxInvokes'.</li>
+ * <li>with a warm-up period, more permits are saved above them, which cost up to 3 times the stable interval. After an
+ * idle period of 'warmUpPeriod', the first invocations are paced 3 times apart, and the interval falls to the stable
+ * one over the warm-up period, so that a cold downstream is not hit at full rate right away.</li>
+ * </ul>
+ * An invocation pays for its permits with the pause of the next one, so the first invocation after an idle period is
+ * released right away. A rate limiter is cold when it is created or reset.
+ * <p>
+ * An invocation is passed to the wrapped rate limiter only at its paced time, so that the wrapped rate limiter
+ * records it when it is released. Therefore, nothing is recorded ahead of time, and {@link #reserve(int)} is not
+ * supported.
+ */
+public class SmoothRateLimiter implements RateLimiter {
+
+    private static final double COLD_FACTOR = 3;
+
+    private final RateLimiter rateLimiter;
+    private final int maxBurst;
+    private final long warmUpPeriod;
+    private final WaitStrategy waitStrategy;
+    private final TimeSource timeSource;
+    private final Object lock;
+    // read without the lock to check the permits of an invocation.
+    private volatile int maxInvokes;
+    private double stableInterval;
+    private double maxStoredPermits;
+    private double slope;
+    private double coolDownInterval;
+    private double storedPermits;
+    private long nextFree;
+
+    public SmoothRateLimiter(final RateLimiter rateLimiter, final int maxInvokes, final Duration duration) {
+        this(rateLimiter, maxInvokes, duration, 1);
+    }
+
+    public SmoothRateLimiter(final RateLimiter rateLimiter, final int maxInvokes, final Duration duration,
+                             final int maxBurst) {
+        this(rateLimiter, maxInvokes, duration, maxBurst, Duration.ZERO);
+    }
+
+    public SmoothRateLimiter(final RateLimiter rateLimiter, final int maxInvokes, final Duration duration,
+                             final int maxBurst, final Duration warmUpPeriod) {
+        this(rateLimiter, maxInvokes, duration, maxBurst, warmUpPeriod, WaitStrategy.sleep(), TimeSource.system());
+    }
+
+    /**
+     * @param rateLimiter  the rate limiter whose invocations are paced
+     * @param maxInvokes   max invokes in 'duration' of the wrapped rate limiter
+     * @param duration     the duration of the rate
+     * @param maxBurst     how many invokes can be released at once after a pause, between 1 and 'maxInvokes'
+     * @param warmUpPeriod how long the interval takes to fall to the stable one after an idle period, or zero
+     * @param waitStrategy how an invocation is paused
+     * @param timeSource   where the current time is read from
+     */
+    public SmoothRateLimiter(final RateLimiter rateLimiter, final int maxInvokes, final Duration duration,
+                             final int maxBurst, final Duration warmUpPeriod, final WaitStrategy waitStrategy,
+                             final TimeSource timeSource) {
+        if (maxBurst <= 0 || maxBurst > maxInvokes) {
+            throw new IllegalArgumentException("maxBurst must be between 1 and max invokes");
+        }
+        if (warmUpPeriod.isNegative()) {
+            throw new IllegalArgumentException("warmUpPeriod cannot be negative");
+        }
+        this.rateLimiter = rateLimiter;
+        this.maxBurst = maxBurst;
+        this.warmUpPeriod = warmUpPeriod.toNanos();
+        this.waitStrategy = waitStrategy;
+        this.timeSource = timeSource;
+        this.lock = new Object();
+        pace(maxInvokes, duration);
+        this.storedPermits = maxStoredPermits;
+        this.nextFree = timeSource.nanoTime();
+    }
+
+    @Override
+    public long invoke(final int permits) throws InterruptedException {
+        checkPermits(permits);
+        final long until;
+        synchronized (lock) {
+            until = take(timeSource.nanoTime(), permits, Long.MAX_VALUE);
+        }
+        waitStrategy.await(until, timeSource);
+        return rateLimiter.invoke(permits);
+    }
+
+    /**
+     * The paced time is taken only if the wrapped rate limiter releases the invocation too.
+     */
+    @Override
+    public boolean tryInvoke(final int permits) {
+        checkPermits(permits);
+        synchronized (lock) {
+            final double stored = storedPermits;
+            final long free = nextFree;
+            if (take(timeSource.nanoTime(), permits, 0) == History.NONE) {
+                return false;
+            }
+            if (!rateLimiter.tryInvoke(permits)) {
+                storedPermits = stored;
+                nextFree = free;
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The paced time is taken once the invocation is paused for it, even if the wrapped rate limiter then rejects the
+     * invocation.
+     */
+    @Override
+    public boolean tryInvoke(final int permits, final Duration maxWait) throws InterruptedException {
+        checkPermits(permits);
+        final long start = timeSource.nanoTime();
+        final long until;
+        synchronized (lock) {
+            until = take(start, permits, maxWait.toNanos());
+        }
+        if (until == History.NONE) {
+            return false;
+        }
+        waitStrategy.await(until, timeSource);
+        return rateLimiter.tryInvoke(permits, maxWait.minusNanos(Math.max(0, until - start)));
+    }
+
+    /**
+     * The invocation is passed to the wrapped rate limiter by the shared timer thread at its paced time. Cancelling
+     * the future before then cancels the invocation, but the paced time is not returned.
+     */
+    @Override
+    public CompletableFuture<Long> invokeAsync(final int permits) {
+        checkPermits(permits);
+        final long until;
+        synchronized (lock) {
+            until = take(timeSource.nanoTime(), permits, Long.MAX_VALUE);
+        }
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+        ReservedFuture.schedule(() -> {
+            if (!future.isDone()) {
+                rateLimiter.invokeAsync(permits).whenComplete((releaseTime, e) -> {
+                    if (e != null) {
+                        future.completeExceptionally(e);
+                    } else {
+                        future.complete(releaseTime);
+                    }
+                });
+            }
+        }, until - timeSource.nanoTime());
+        return future;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, as nothing is recorded ahead of time
+     */
+    @Override
+    public Reservation reserve(final int permits) {
+        throw new UnsupportedOperationException("smooth rate limiter cannot record ahead of time");
+    }
+
+    @Override
+    public boolean supportsReservation() {
+        return false;
+    }
+
+    /**
+     * Change the rate of the wrapped rate limiter, and then pace invocations at the new rate from now on, so that the
+     * pacing is left as it is if the wrapped rate limiter cannot change its rate. Saved permits beyond the new maximum
+     * are dropped.
+     */
+    @Override
+    public void setRate(final int maxInvokes, final Duration duration) {
+        if (maxInvokes < maxBurst) {
+            throw new IllegalArgumentException("maxInvokes cannot be less than max burst");
+        }
+        rateLimiter.setRate(maxInvokes, duration);
+        synchronized (lock) {
+            refill(timeSource.nanoTime());
+            pace(maxInvokes, duration);
+            storedPermits = Math.min(storedPermits, maxStoredPermits);
+        }
+    }
+
+    /**
+     * Reset the wrapped rate limiter, and make this one cold, as if it has been idle for long.
+     */
+    @Override
+    public void reset() {
+        synchronized (lock) {
+            storedPermits = maxStoredPermits;
+            nextFree = timeSource.nanoTime();
+        }
+        rateLimiter.reset();
+    }
+
+    private void checkPermits(final int permits) {
+        if (permits <= 0 || permits > maxInvokes) {
+            throw new IllegalArgumentException("permits must be between 1 and max invokes");
+        }
+    }
+
+    /**
+     * Under the lock.
+     */
+    private void pace(final int maxInvokes, final Duration duration) {
+        final double freePermits = maxBurst - 1;
+        this.maxInvokes = maxInvokes;
+        // a burst and the invocations paced after it never take more than 'maxInvokes' in any 'duration'.
+        stableInterval = duration.toNanos() / (maxInvokes - freePermits);
+        // the area under the ramp from the stable to the cold interval is the warm-up period.
+        final double warmUpPermits = 2 * warmUpPeriod / (stableInterval + COLD_FACTOR * stableInterval);
+        maxStoredPermits = freePermits + warmUpPermits;
+        slope = warmUpPermits == 0 ? 0 : (COLD_FACTOR - 1) * stableInterval / warmUpPermits;
+        // permits are saved up to the maximum in a warm-up period, or a permit per interval when there is none.
+        coolDownInterval = warmUpPeriod == 0 ? stableInterval : warmUpPeriod / maxStoredPermits;
+    }
+
+    /**
+     * Under the lock.
+     *
+     * @return the paced time, or {@link History#NONE} if it is more than 'maxWait' from now.
+     */
+    private long take(final long now, final int permits, final long maxWait) {
+        refill(now);
+        final long until = Math.max(now, nextFree);
+        if (until - now > maxWait) {
+            return History.NONE;
+        }
+        final double fromStored = Math.min(permits, storedPermits);
+        final double cost = storedCost(fromStored) + (permits - fromStored) * stableInterval;
+        storedPermits -= fromStored;
+        // rounded up, so that the paced invocations never get ahead of the limit of the wrapped rate limiter.
+        nextFree = until + (long) Math.ceil(cost);
+        return until;
+    }
+
+    /**
+     * Saved permits are taken from the top, i.e. the expensive ones of the warm-up ramp before the free ones.
+     *
+     * @return the cost of taking 'permits' of the saved permits in nanoseconds
+     */
+    private double storedCost(final double permits) {
+        final double freePermits = maxBurst - 1;
+        final double fromRamp = Math.min(permits, Math.max(0, storedPermits - freePermits));
+        return fromRamp * (interval(storedPermits) + interval(storedPermits - fromRamp)) / 2;
+    }
+
+    /**
+     * @return the interval of the saved permit at 'storedPermits' on the warm-up ramp
+     */
+    private double interval(final double storedPermits) {
+        return stableInterval + (storedPermits - (maxBurst - 1)) * slope;
+    }
+
+    private void refill(final long now) {
+        if (now - nextFree > 0) {
+            storedPermits = Math.min(maxStoredPermits, storedPermits + (now - nextFree) / coolDownInterval);
+            nextFree = now;
+        }
+    }
+}
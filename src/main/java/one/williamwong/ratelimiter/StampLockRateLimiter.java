@@ -9,20 +9,141 @@ public class StampLockRateLimiter extends AbstractRateLimiter {
 
 
     public StampLockRateLimiter(int maxInvokes, Duration duration) {
-        super(maxInvokes, duration, 1);
-        this.lock = new StampedLock();
+        this(maxInvokes, duration, 1);
     }
 
     public StampLockRateLimiter(int maxInvokes, Duration duration, int samplingInterval) {
-        super(maxInvokes, duration, samplingInterval);
+        this(maxInvokes, duration, samplingInterval, WaitStrategy.sleep());
+    }
+
+    public StampLockRateLimiter(int maxInvokes, Duration duration, int samplingInterval, WaitStrategy waitStrategy) {
+        this(maxInvokes, duration, samplingInterval, waitStrategy, null);
+    }
+
+    public StampLockRateLimiter(int maxInvokes, Duration duration, int samplingInterval, WaitStrategy waitStrategy,
+                                RateLimiterListener listener) {
+        this(maxInvokes, duration, samplingInterval, waitStrategy, listener, TimeSource.system());
+    }
+
+    public StampLockRateLimiter(int maxInvokes, Duration duration, int samplingInterval, WaitStrategy waitStrategy,
+                                RateLimiterListener listener, TimeSource timeSource) {
+        this(maxInvokes, duration, samplingInterval, waitStrategy, listener, timeSource, HistoryStore.heap());
+    }
+
+    /**
+     * @param maxInvokes       max invokes in last 'duration'
+     * @param duration         the duration of the rate
+     * @param samplingInterval the number of invocations merged into a record
+     * @param waitStrategy     how an invocation is paused
+     * @param listener         the listener of invocations, or null
+     * @param timeSource       where the current time is read from, which must be {@link TimeSource#system()} or
+     *                         {@link TimeSource#cached(Duration)} for a history in a mapped file
+     * @param historyStore     where the invocation history is kept
+     */
+    public StampLockRateLimiter(int maxInvokes, Duration duration, int samplingInterval, WaitStrategy waitStrategy,
+                                RateLimiterListener listener, TimeSource timeSource, HistoryStore historyStore) {
+        super(maxInvokes, duration, samplingInterval, waitStrategy, listener, timeSource, historyStore);
         this.lock = new StampedLock();
     }
 
 
-    @Override public long invoke() throws InterruptedException {
+    @Override public long invoke(int permits) throws InterruptedException {
+        checkPermits(permits);
+        final long stamp = lock.writeLock();
+        try {
+            return record(pauseIfRequired(permits), permits);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override public boolean tryInvoke(int permits) {
+        checkPermits(permits);
+        // reject without the write lock if an optimistic read already tells the invocation has to be paused.
+        final long optimisticStamp = lock.tryOptimisticRead();
+        if (optimisticStamp != 0) {
+            try {
+                final long now = now();
+                final boolean rejected = releaseTime(now, permits) != now;
+                if (lock.validate(optimisticStamp) && rejected) {
+                    rejected(permits);
+                    return false;
+                }
+            } catch (IndexOutOfBoundsException e) {
+                // the ring of the history is replaced while it is read, as a concurrent invocation grows it or a
+                // change of the rate resizes it, so decide under the write lock instead.
+            }
+        }
+        final long stamp = lock.writeLock();
+        try {
+            return tryRecord(permits);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override public boolean tryInvoke(int permits, Duration maxWait) throws InterruptedException {
+        checkPermits(permits);
+        final long stamp = lock.writeLock();
+        try {
+            return tryRecord(permits, maxWait.toNanos());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override public Reservation reserve(int permits) {
+        checkPermits(permits);
+        final long stamp = lock.writeLock();
+        try {
+            return recordReservation(permits);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Records the whole batch under a single lock and a single read of the time.
+     */
+    @Override public int admit(long[] releaseTimesOut, int requested) {
+        checkBatch(releaseTimesOut, requested);
+        final long stamp = lock.writeLock();
+        try {
+            return recordBatch(releaseTimesOut, requested);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override boolean cancel(long generation, long end, int permits) {
+        final long stamp = lock.writeLock();
+        try {
+            return cancelReservation(generation, end, permits);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the permits recorded in last 'duration' over max invokes, see {@link #windowUtilisation()}.
+     */
+    public double utilisation() {
+        final long stamp = lock.readLock();
+        try {
+            return windowUtilisation();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Takes effect from the next invocation. An invocation paused under the lock is released before the rate is
+     * changed.
+     */
+    @Override public void setRate(int maxInvokes, Duration duration) {
         final long stamp = lock.writeLock();
         try {
-            return record(pauseIfRequired());
+            changeRate(maxInvokes, duration);
         } finally {
             lock.unlockWrite(stamp);
         }
@@ -0,0 +1,268 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * A rate limiter which splits 'maxInvokes' across shards, so that threads on many cores do not contend on a single
+ * invocation history.
+ * <p>
+ * Every shard has its own history and lock, and allows its share of 'maxInvokes' in last 'duration'. A thread is
+ * mapped to a home shard by its id. An invocation is released right away by its home shard if it can, otherwise it
+ * borrows from the first other shard which can release it right away. Only if none can, it is recorded on the shard
+ * which is free the earliest, as told by a hint every shard keeps without its lock, so that only the lock of that shard
+ * is taken. The lock of a shard is held only to compute and record the release time; the invocation is paused after
+ * the lock is released.
+ * <p>
+ * Error bound: the shares add up to 'maxInvokes', so there are never more than 'maxInvokes' invocations in any
+ * 'duration', same as the other rate limiters. The error is on the other side:
+ * <ul>
+ * <li>an invocation of N permits has to fit in a single shard, so it may be paused while other shards together have
+ * enough permits, i.e. up to (N - 1) permits per shard may be left unused. Invocations of a single permit are not
+ * affected, and N is at most the smallest share.</li>
+ * <li>two invocations racing for the same earliest shard are recorded one after the other on that shard, so the
+ * later one may be released later than it could be on another shard.</li>
+ * </ul>
+ */
+public class StripedRateLimiter implements RateLimiter {
+
+    // the slots of what a reservation is cancelled with.
+    private static final int SHARD = 0;
+    private static final int GENERATION = 1;
+    private static final int END = 2;
+
+    private final int maxPermits;
+    private final long duration;
+    private final Shard[] shards;
+    private final WaitStrategy waitStrategy;
+
+    public StripedRateLimiter(final int maxInvokes, final Duration duration) {
+        this(maxInvokes, duration, Math.min(maxInvokes, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public StripedRateLimiter(final int maxInvokes, final Duration duration, final int numOfShards) {
+        this(maxInvokes, duration, numOfShards, WaitStrategy.sleep());
+    }
+
+    /**
+     * @param maxInvokes   max invokes of all shards together in last 'duration'
+     * @param duration     the duration of the rate
+     * @param numOfShards  the number of shards, e.g. the number of cores
+     * @param waitStrategy how an invocation is paused
+     */
+    public StripedRateLimiter(final int maxInvokes, final Duration duration, final int numOfShards,
+                              final WaitStrategy waitStrategy) {
+        if (numOfShards <= 0 || numOfShards > maxInvokes) {
+            throw new IllegalArgumentException("numOfShards must be between 1 and max invokes");
+        }
+        this.maxPermits = maxInvokes / numOfShards;
+        this.duration = duration.toNanos();
+        this.shards = new Shard[numOfShards];
+        for (int i = 0; i < numOfShards; i++) {
+            // the remainder is shared by the first shards.
+            shards[i] = new Shard(new History(maxPermits + (i < maxInvokes % numOfShards ? 1 : 0), 1));
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * @param permits the number of invokes this invocation counts as, between 1 and the smallest share of a shard.
+     */
+    @Override
+    public long invoke(final int permits) throws InterruptedException {
+        checkPermits(permits);
+        final long until = reserve(permits, Long.MAX_VALUE, null);
+        waitStrategy.await(until);
+        return until;
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits) {
+        checkPermits(permits);
+        final long now = nanoTime();
+        final int home = home();
+        for (int i = 0; i < shards.length; i++) {
+            if (shards[(home + i) % shards.length].reserve(now, permits, 0, duration, null) != History.NONE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits, final Duration maxWait) throws InterruptedException {
+        checkPermits(permits);
+        final long until = reserve(permits, maxWait.toNanos(), null);
+        if (until == History.NONE) {
+            return false;
+        }
+        waitStrategy.await(until);
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<Long> invokeAsync(final int permits) {
+        return ReservedFuture.of(reserve(permits));
+    }
+
+    @Override
+    public Reservation reserve(final int permits) {
+        checkPermits(permits);
+        final long[] reserved = new long[3];
+        final long until = reserve(permits, Long.MAX_VALUE, reserved);
+        final Shard shard = shards[(int) reserved[SHARD]];
+        return new Reservation(until, () -> shard.cancel(reserved[GENERATION], reserved[END], permits));
+    }
+
+    @Override
+    public void reset() {
+        for (Shard shard : shards) {
+            shard.clear();
+        }
+    }
+
+    private void checkPermits(final int permits) {
+        if (permits <= 0 || permits > maxPermits) {
+            throw new IllegalArgumentException("permits must be between 1 and max invokes of a shard");
+        }
+    }
+
+    /**
+     * @param reserved where the shard, the generation of its history and the end of the invocation are written, so
+     *                 that it can be cancelled, or null if it is not needed
+     * @return the release time of the invocation, or {@link History#NONE} if it cannot be released within 'maxWait'.
+     */
+    private long reserve(final int permits, final long maxWait, final long[] reserved) {
+        final int home = home();
+        final long now = nanoTime();
+        for (int i = 0; i < shards.length; i++) {
+            final int index = (home + i) % shards.length;
+            final long until = shards[index].reserve(now, permits, 0, duration, reserved);
+            if (until != History.NONE) {
+                return reserved(reserved, index, until);
+            }
+        }
+        // the hint of a shard which has not released the invocation right away is refreshed above, or in the future.
+        int earliest = home;
+        for (int i = 1; i < shards.length; i++) {
+            final int index = (home + i) % shards.length;
+            if (shards[index].busyUntil - shards[earliest].busyUntil < 0) {
+                earliest = index;
+            }
+        }
+        final long until = shards[earliest].reserve(now, permits, maxWait, duration, reserved);
+        if (until != History.NONE || maxWait == Long.MAX_VALUE) {
+            return reserved(reserved, earliest, until);
+        }
+        // the hint is for a single permit, or another invocation has taken the shard; only the shards whose hints are
+        // within 'maxWait' are locked.
+        for (int i = 0; i < shards.length; i++) {
+            final int index = (home + i) % shards.length;
+            if (index != earliest) {
+                final long other = shards[index].reserve(now, permits, maxWait, duration, reserved);
+                if (other != History.NONE) {
+                    return reserved(reserved, index, other);
+                }
+            }
+        }
+        return History.NONE;
+    }
+
+    private static long reserved(final long[] reserved, final int shard, final long until) {
+        if (reserved != null) {
+            reserved[SHARD] = shard;
+        }
+        return until;
+    }
+
+    private int home() {
+        final long id = Thread.currentThread().getId();
+        return (int) (((id * 0x9E3779B97F4A7C15L) >>> 32) % shards.length);
+    }
+
+    // shards are allocated one after another, so the hot fields of a shard are padded on both sides to be kept off the
+    // cache lines of its neighbours. Fields of a class are laid out after those of its superclass.
+    @SuppressWarnings("unused")
+    private abstract static class LeftPadding {
+        private long p01, p02, p03, p04, p05, p06, p07, p08;
+    }
+
+    private abstract static class Fields extends LeftPadding {
+        final History history;
+        // a lower bound of the release time of the next invocation, so that a full shard is skipped without its lock.
+        volatile long busyUntil;
+
+        Fields(final History history) {
+            this.history = history;
+            this.busyUntil = nanoTime();
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private abstract static class RightPadding extends Fields {
+        private long p11, p12, p13, p14, p15, p16, p17, p18;
+
+        RightPadding(final History history) {
+            super(history);
+        }
+    }
+
+    private static final class Shard extends RightPadding {
+
+        private Shard(final History history) {
+            super(history);
+        }
+
+        /**
+         * @param now      the time the hint of the shard is checked against, read before the lock is taken
+         * @param reserved where the generation of the history and the end of the invocation are written, or null
+         * @return the release time of the invocation, or {@link History#NONE} if it cannot be released within
+         * 'maxWait'.
+         */
+        private long reserve(final long now, final int permits, final long maxWait, final long duration,
+                             final long[] reserved) {
+            if (busyUntil - now > maxWait) {
+                return History.NONE;
+            }
+            synchronized (this) {
+                final long until = recordWithin(permits, maxWait, duration);
+                if (until != History.NONE && reserved != null) {
+                    reserved[GENERATION] = history.generation();
+                    reserved[END] = history.issued();
+                }
+                return until;
+            }
+        }
+
+        /**
+         * Under the lock of the shard. The time is read once the lock is taken, so that an invocation which waits for
+         * the lock is not recorded earlier than it is released, and the history stays in order.
+         */
+        private long recordWithin(final int permits, final long maxWait, final long duration) {
+            final long now = nanoTime();
+            final long until = history.releaseTime(now, permits, duration);
+            if (until - now > maxWait) {
+                busyUntil = history.releaseTime(now, 1, duration);
+                return History.NONE;
+            }
+            history.record(until, permits);
+            return until;
+        }
+
+        private boolean cancel(final long generation, final long end, final int permits) {
+            synchronized (this) {
+                busyUntil = nanoTime();
+                return history.cancel(generation, end, permits);
+            }
+        }
+
+        private void clear() {
+            synchronized (this) {
+                busyUntil = nanoTime();
+                history.clear();
+            }
+        }
+    }
+}
@@ -7,19 +7,113 @@ public class SynchronizedRateLimiter extends AbstractRateLimiter {
     private final Object lock;
 
     public SynchronizedRateLimiter(final int maxInvokes, final Duration duration) {
-        super(maxInvokes, duration, 1);
-        this.lock = new Object();
+        this(maxInvokes, duration, 1);
     }
 
     public SynchronizedRateLimiter(final int maxInvokes, final Duration duration, final int samplingInterval) {
-        super(maxInvokes, duration, samplingInterval);
+        this(maxInvokes, duration, samplingInterval, WaitStrategy.sleep());
+    }
+
+    public SynchronizedRateLimiter(final int maxInvokes, final Duration duration, final int samplingInterval,
+                                   final WaitStrategy waitStrategy) {
+        this(maxInvokes, duration, samplingInterval, waitStrategy, null);
+    }
+
+    public SynchronizedRateLimiter(final int maxInvokes, final Duration duration, final int samplingInterval,
+                                   final WaitStrategy waitStrategy, final RateLimiterListener listener) {
+        this(maxInvokes, duration, samplingInterval, waitStrategy, listener, TimeSource.system());
+    }
+
+    public SynchronizedRateLimiter(final int maxInvokes, final Duration duration, final int samplingInterval,
+                                   final WaitStrategy waitStrategy, final RateLimiterListener listener,
+                                   final TimeSource timeSource) {
+        this(maxInvokes, duration, samplingInterval, waitStrategy, listener, timeSource, HistoryStore.heap());
+    }
+
+    /**
+     * @param maxInvokes       max invokes in last 'duration'
+     * @param duration         the duration of the rate
+     * @param samplingInterval the number of invocations merged into a record
+     * @param waitStrategy     how an invocation is paused
+     * @param listener         the listener of invocations, or null
+     * @param timeSource       where the current time is read from, which must be {@link TimeSource#system()} or
+     *                         {@link TimeSource#cached(Duration)} for a history in a mapped file
+     * @param historyStore     where the invocation history is kept
+     */
+    public SynchronizedRateLimiter(final int maxInvokes, final Duration duration, final int samplingInterval,
+                                   final WaitStrategy waitStrategy, final RateLimiterListener listener,
+                                   final TimeSource timeSource, final HistoryStore historyStore) {
+        super(maxInvokes, duration, samplingInterval, waitStrategy, listener, timeSource, historyStore);
         this.lock = new Object();
     }
 
     @Override
-    public long invoke() throws InterruptedException {
+    public long invoke(final int permits) throws InterruptedException {
+        checkPermits(permits);
+        synchronized (lock) {
+            return record(pauseIfRequired(permits), permits);
+        }
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits) {
+        checkPermits(permits);
+        synchronized (lock) {
+            return tryRecord(permits);
+        }
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits, final Duration maxWait) throws InterruptedException {
+        checkPermits(permits);
+        synchronized (lock) {
+            return tryRecord(permits, maxWait.toNanos());
+        }
+    }
+
+    @Override
+    public Reservation reserve(final int permits) {
+        checkPermits(permits);
+        synchronized (lock) {
+            return recordReservation(permits);
+        }
+    }
+
+    /**
+     * Records the whole batch under a single lock and a single read of the time.
+     */
+    @Override
+    public int admit(final long[] releaseTimesOut, final int requested) {
+        checkBatch(releaseTimesOut, requested);
+        synchronized (lock) {
+            return recordBatch(releaseTimesOut, requested);
+        }
+    }
+
+    @Override
+    boolean cancel(final long generation, final long end, final int permits) {
+        synchronized (lock) {
+            return cancelReservation(generation, end, permits);
+        }
+    }
+
+    /**
+     * @return the permits recorded in last 'duration' over max invokes, see {@link #windowUtilisation()}.
+     */
+    public double utilisation() {
+        synchronized (lock) {
+            return windowUtilisation();
+        }
+    }
+
+    /**
+     * Takes effect from the next invocation. An invocation paused under the lock is released before the rate is
+     * changed.
+     */
+    @Override
+    public void setRate(final int maxInvokes, final Duration duration) {
         synchronized (lock) {
-            return record(pauseIfRequired());
+            changeRate(maxInvokes, duration);
         }
     }
 
@@ -0,0 +1,40 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+
+/**
+ * Where a rate limiter reads the current time from, in nanoseconds of the same origin as {@link System#nanoTime()}.
+ */
+@FunctionalInterface
+public interface TimeSource {
+
+    /**
+     * @return current time in nanoseconds
+     */
+    long nanoTime();
+
+    /**
+     * {@link System#nanoTime()}, the default.
+     */
+    static TimeSource system() {
+        return TimeSources.SYSTEM;
+    }
+
+    /**
+     * The time of {@link System#nanoTime()} cached by a background thread every 'resolution', so that reading it is a
+     * volatile read rather than a call to the OS clock. The time is cached 'resolution' ahead, so that it is up to
+     * 'resolution' ahead of {@link System#nanoTime()}, and behind it only by the timer slack of the OS. A rate limiter
+     * pauses an invocation until the cached time has reached its release time, so an invocation is released up to
+     * 'resolution' earlier, or later by the timer slack, than it would be with {@link System#nanoTime()}. Two
+     * invocations a 'duration' apart in the history of a rate limiter may therefore be released as little as
+     * 'duration' - 'resolution' apart, i.e. the rate is only kept to within 'resolution' either way. Only use it with
+     * durations much longer than 'resolution'.
+     * <p>
+     * A background thread is started for every distinct resolution, and shared by all rate limiters using it.
+     *
+     * @param resolution how often the cached time is updated
+     */
+    static TimeSource cached(final Duration resolution) {
+        return TimeSources.cached(resolution.toNanos());
+    }
+}
@@ -0,0 +1,54 @@
+package one.williamwong.ratelimiter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Implementations of {@link TimeSource}.
+ */
+final class TimeSources {
+
+    static final TimeSource SYSTEM = System::nanoTime;
+
+    private static final ConcurrentMap<Long, Cached> CACHED = new ConcurrentHashMap<>();
+
+    private TimeSources() {
+    }
+
+    static TimeSource cached(final long resolution) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("resolution must be positive");
+        }
+        return CACHED.computeIfAbsent(resolution, TimeSources::startCached);
+    }
+
+    private static Cached startCached(final long resolution) {
+        final Cached cached = new Cached(resolution);
+        final Thread thread = new Thread(() -> {
+            while (true) {
+                LockSupport.parkNanos(resolution);
+                cached.time = System.nanoTime() + resolution;
+            }
+        }, "rate-limiter-clock");
+        thread.setDaemon(true);
+        thread.start();
+        return cached;
+    }
+
+    static final class Cached implements TimeSource {
+
+        // a resolution ahead, so that it lags behind System.nanoTime() only by the timer slack of the OS, but it may be
+        // ahead of it by up to a resolution.
+        private volatile long time;
+
+        private Cached(final long resolution) {
+            this.time = System.nanoTime() + resolution;
+        }
+
+        @Override
+        public long nanoTime() {
+            return time;
+        }
+    }
+}
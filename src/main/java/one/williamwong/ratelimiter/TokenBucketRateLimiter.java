@@ -0,0 +1,180 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * A token bucket rate limiter. The bucket holds up to 'burst' tokens, and is refilled at 'maxInvokes' tokens per
+ * 'duration'. An invocation is released once there is a token in the bucket, and takes a token per permit. If there
+ * are not enough tokens, the bucket goes into debt, which the next invocations wait to be refilled, i.e. an
+ * invocation of many permits is paid by the invocations after it, like {@link GcraRateLimiter}.
+ * <p>
+ * Trade-offs against the sliding-log rate limiters:
+ * <ul>
+ * <li>memory is constant, no matter how large 'maxInvokes' is, and there is no sampling error.</li>
+ * <li>a full bucket releases 'burst' invocations at once, after which there are up to 'burst - 1 + maxInvokes'
+ * invocations in a 'duration'. With the default burst of 1, there are never more than 'maxInvokes' in any 'duration',
+ * but invocations are paced evenly.</li>
+ * <li>tokens are counted as a double under a lock. See {@link GcraRateLimiter} for the same algorithm without a
+ * lock.</li>
+ * </ul>
+ */
+public class TokenBucketRateLimiter implements RateLimiter {
+
+    private final int capacity;
+    private final WaitStrategy waitStrategy;
+    private final Object lock;
+    private volatile int maxInvokes;
+    private double tokensPerNano;
+    private double burst;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucketRateLimiter(final int maxInvokes, final Duration duration) {
+        this(maxInvokes, duration, 1);
+    }
+
+    public TokenBucketRateLimiter(final int maxInvokes, final Duration duration, final int burst) {
+        this(maxInvokes, duration, burst, WaitStrategy.sleep());
+    }
+
+    /**
+     * @param maxInvokes   max invokes in last 'duration', when invoked evenly
+     * @param duration     the duration of the rate
+     * @param burst        the capacity of the bucket, between 1 and 'maxInvokes'
+     * @param waitStrategy how an invocation is paused
+     */
+    public TokenBucketRateLimiter(final int maxInvokes, final Duration duration, final int burst,
+                                  final WaitStrategy waitStrategy) {
+        if (burst <= 0 || burst > maxInvokes) {
+            throw new IllegalArgumentException("burst must be between 1 and max invokes");
+        }
+        this.capacity = burst;
+        this.maxInvokes = maxInvokes;
+        this.tokensPerNano = maxInvokes / (double) duration.toNanos();
+        this.burst = burst;
+        this.waitStrategy = waitStrategy;
+        this.lock = new Object();
+        this.tokens = burst;
+        this.lastRefill = nanoTime();
+    }
+
+    @Override
+    public long invoke(final int permits) throws InterruptedException {
+        checkPermits(permits);
+        final long until;
+        synchronized (lock) {
+            until = take(nanoTime(), permits, Long.MAX_VALUE);
+        }
+        waitStrategy.await(until);
+        return until;
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits) {
+        checkPermits(permits);
+        synchronized (lock) {
+            return take(nanoTime(), permits, 0) != History.NONE;
+        }
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits, final Duration maxWait) throws InterruptedException {
+        checkPermits(permits);
+        final long until;
+        synchronized (lock) {
+            until = take(nanoTime(), permits, maxWait.toNanos());
+        }
+        if (until == History.NONE) {
+            return false;
+        }
+        waitStrategy.await(until);
+        return true;
+    }
+
+    /**
+     * Cancelling the future puts the tokens back into the bucket. Invocations recorded after it keep their release
+     * times.
+     */
+    @Override
+    public CompletableFuture<Long> invokeAsync(final int permits) {
+        return ReservedFuture.of(reserve(permits));
+    }
+
+    /**
+     * Cancelling the reservation puts the tokens back into the bucket. Invocations recorded after it keep their
+     * release times.
+     */
+    @Override
+    public Reservation reserve(final int permits) {
+        checkPermits(permits);
+        final long until;
+        synchronized (lock) {
+            until = take(nanoTime(), permits, Long.MAX_VALUE);
+        }
+        return new Reservation(until, () -> {
+            synchronized (lock) {
+                refill(nanoTime());
+                tokens = Math.min(burst, tokens + permits);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * The bucket is refilled at the old rate up to now, and at the new rate from now on. The tokens in the bucket,
+     * or its debt, are kept. A burst larger than 'maxInvokes' is cut down to 'maxInvokes'.
+     */
+    @Override
+    public void setRate(final int maxInvokes, final Duration duration) {
+        if (maxInvokes <= 0) {
+            throw new IllegalArgumentException("maxInvokes must be positive");
+        }
+        synchronized (lock) {
+            refill(nanoTime());
+            this.maxInvokes = maxInvokes;
+            this.tokensPerNano = maxInvokes / (double) duration.toNanos();
+            this.burst = Math.min(capacity, maxInvokes);
+            this.tokens = Math.min(burst, tokens);
+        }
+    }
+
+    @Override
+    public void reset() {
+        synchronized (lock) {
+            tokens = burst;
+            lastRefill = nanoTime();
+        }
+    }
+
+    private void checkPermits(final int permits) {
+        if (permits <= 0 || permits > maxInvokes) {
+            throw new IllegalArgumentException("permits must be between 1 and max invokes");
+        }
+    }
+
+    /**
+     * Under the lock.
+     *
+     * @return the release time, or {@link History#NONE} if it cannot be released within 'maxWait'.
+     */
+    private long take(final long now, final int permits, final long maxWait) {
+        refill(now);
+        final long wait = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+        if (wait > maxWait) {
+            return History.NONE;
+        }
+        tokens -= permits;
+        return now + wait;
+    }
+
+    private void refill(final long now) {
+        final long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(burst, tokens + elapsed * tokensPerNano);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package one.williamwong.ratelimiter;
+
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Implementations of {@link WaitStrategy}.
+ */
+final class WaitStrategies {
+
+    static final WaitStrategy SLEEP = until -> {
+        long pausedTime;
+        while ((pausedTime = until - nanoTime()) > 0) {
+            NANOSECONDS.sleep(pausedTime);
+        }
+    };
+
+    static final WaitStrategy PARK = until -> {
+        long pausedTime;
+        while ((pausedTime = until - nanoTime()) > 0) {
+            LockSupport.parkNanos(pausedTime);
+            checkInterrupted();
+        }
+    };
+
+    static final WaitStrategy BUSY_SPIN = until -> {
+        while (until - nanoTime() > 0) {
+            Thread.onSpinWait();
+            checkInterrupted();
+        }
+    };
+
+    static final WaitStrategy SPIN_YIELD_PARK = new SpinYieldPark(MICROSECONDS.toNanos(100), MICROSECONDS.toNanos(10));
+
+    private WaitStrategies() {
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    static final class SpinYieldPark implements WaitStrategy {
+        private final long parkThreshold;
+        private final long spinThreshold;
+
+        SpinYieldPark(long parkThreshold, long spinThreshold) {
+            if (spinThreshold > parkThreshold) {
+                throw new IllegalArgumentException("spinThreshold cannot be more than parkThreshold");
+            }
+            this.parkThreshold = parkThreshold;
+            this.spinThreshold = spinThreshold;
+        }
+
+        @Override
+        public void await(long until) throws InterruptedException {
+            long pausedTime;
+            while ((pausedTime = until - nanoTime()) > 0) {
+                if (pausedTime > parkThreshold) {
+                    LockSupport.parkNanos(pausedTime - parkThreshold);
+                } else if (pausedTime > spinThreshold) {
+                    Thread.yield();
+                } else {
+                    Thread.onSpinWait();
+                }
+                checkInterrupted();
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+
+/**
+ * How a rate limiter pauses an invocation until its release time.
+ */
+@FunctionalInterface
+public interface WaitStrategy {
+
+    /**
+     * Pause the current execution until 'until'.
+     *
+     * @param until the release time (measured with System.nanoTime())
+     * @throws InterruptedException if interrupted when paused.
+     */
+    void await(long until) throws InterruptedException;
+
+    /**
+     * Pause the current execution until 'timeSource' has reached 'until'. The time left is read from 'timeSource' and
+     * paused for with {@link #await(long)}, until no time is left.
+     *
+     * @param until      the release time (measured with 'timeSource')
+     * @param timeSource where the release time is measured with, usually the time source of the rate limiter
+     * @throws InterruptedException if interrupted when paused.
+     */
+    default void await(long until, TimeSource timeSource) throws InterruptedException {
+        if (timeSource == TimeSource.system()) {
+            await(until);
+            return;
+        }
+        long pausedTime;
+        while ((pausedTime = until - timeSource.nanoTime()) > 0) {
+            await(System.nanoTime() + pausedTime);
+        }
+    }
+
+    /**
+     * Sleep until the release time. It may oversleep by the timer slack of the OS, which could be tens of
+     * microseconds. This is the default strategy.
+     */
+    static WaitStrategy sleep() {
+        return WaitStrategies.SLEEP;
+    }
+
+    /**
+     * Park until the release time with {@link java.util.concurrent.locks.LockSupport#parkNanos(long)}. Same accuracy
+     * as {@link #sleep()}, but cheaper.
+     */
+    static WaitStrategy park() {
+        return WaitStrategies.PARK;
+    }
+
+    /**
+     * Spin on the current core until the release time. The most accurate strategy, but it takes a core for the whole
+     * pause. Only for latency-critical threads pinned on their own cores.
+     */
+    static WaitStrategy busySpin() {
+        return WaitStrategies.BUSY_SPIN;
+    }
+
+    /**
+     * Park while the release time is more than 'parkThreshold' away, then yield while it is more than 'spinThreshold'
+     * away, then spin.
+     *
+     * @param parkThreshold the remaining time below which it stops parking, should be more than the timer slack.
+     * @param spinThreshold the remaining time below which it stops yielding.
+     */
+    static WaitStrategy spinYieldPark(final Duration parkThreshold, final Duration spinThreshold) {
+        return new WaitStrategies.SpinYieldPark(parkThreshold.toNanos(), spinThreshold.toNanos());
+    }
+
+    /**
+     * Same as {@link #spinYieldPark(Duration, Duration)} with a park threshold of 100 microseconds and a spin threshold
+     * of 10 microseconds.
+     */
+    static WaitStrategy spinYieldPark() {
+        return WaitStrategies.SPIN_YIELD_PARK;
+    }
+}
@@ -0,0 +1,284 @@
+package one.williamwong.ratelimiter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * A lock-free sliding window counter. 'duration' is split into 'numOfBuckets' buckets, and the rate limiter keeps a
+ * count of permits for each of the last 'numOfBuckets + 1' buckets, so its memory is constant no matter how large
+ * 'maxInvokes' is.
+ * <p>
+ * Every bucket also keeps the time of its latest invocation. A bucket counts in the window until its latest invocation
+ * is 'duration' ago, i.e. the oldest bucket, which is only partly in the window, is counted as a whole rather than
+ * weighted by its overlap with the window. Therefore, the error is always on the safe side: there are never more than
+ * 'maxInvokes' invocations in any 'duration', and an invocation is released at most one bucket width, 'duration /
+ * numOfBuckets', later than it would be with an exact sliding log.
+ * <p>
+ * Permits are only ever added to the latest bucket, with a compare-and-set of its [bucket, sealed, count] word. A
+ * bucket is sealed before a later bucket is opened, so the counts of the earlier buckets are final whenever the latest
+ * one is checked.
+ * <p>
+ * Nothing is recorded ahead of time, so a throttled invocation waits and tries again, and invocations are not released
+ * in the order they arrive.
+ */
+public class WindowCounterRateLimiter implements RateLimiter {
+
+    private static final int DEFAULT_NUM_OF_BUCKETS = 10;
+    private static final long SEALED = 1L << 31;
+    private static final long COUNT = SEALED - 1;
+
+    private final int maxInvokes;
+    private final long duration;
+    private final int numOfBuckets;
+    private final long bucketWidth;
+    private final long origin;
+    private final WaitStrategy waitStrategy;
+    // slot of bucket b is b % (numOfBuckets + 1), keeping [(int) b, sealed, count] in a word.
+    private final AtomicLongArray states;
+    // the time of the latest invocation of the bucket in the slot.
+    private final AtomicLongArray latestTimes;
+    private final AtomicLong latestBucket;
+
+    public WindowCounterRateLimiter(final int maxInvokes, final Duration duration) {
+        this(maxInvokes, duration, DEFAULT_NUM_OF_BUCKETS);
+    }
+
+    public WindowCounterRateLimiter(final int maxInvokes, final Duration duration, final int numOfBuckets) {
+        this(maxInvokes, duration, numOfBuckets, WaitStrategy.sleep());
+    }
+
+    /**
+     * @param maxInvokes   max invokes in last 'duration'
+     * @param duration     the duration of the rate
+     * @param numOfBuckets the number of buckets 'duration' is split into
+     * @param waitStrategy how an invocation is paused
+     */
+    public WindowCounterRateLimiter(final int maxInvokes, final Duration duration, final int numOfBuckets,
+                                    final WaitStrategy waitStrategy) {
+        if (maxInvokes <= 0) {
+            throw new IllegalArgumentException("maxInvokes must be positive");
+        }
+        if (numOfBuckets <= 0) {
+            throw new IllegalArgumentException("numOfBuckets must be positive");
+        }
+        this.maxInvokes = maxInvokes;
+        this.duration = duration.toNanos();
+        this.numOfBuckets = numOfBuckets;
+        // rounded up, so that 'numOfBuckets' buckets always cover 'duration'.
+        this.bucketWidth = (this.duration + numOfBuckets - 1) / numOfBuckets;
+        this.origin = nanoTime();
+        this.waitStrategy = waitStrategy;
+        this.states = new AtomicLongArray(numOfBuckets + 1);
+        this.latestTimes = new AtomicLongArray(numOfBuckets + 1);
+        this.latestBucket = new AtomicLong();
+    }
+
+    @Override
+    public long invoke(final int permits) throws InterruptedException {
+        checkPermits(permits);
+        return acquire(permits, Long.MAX_VALUE);
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits) {
+        checkPermits(permits);
+        return tryAcquire(permits) != History.NONE;
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits, final Duration maxWait) throws InterruptedException {
+        checkPermits(permits);
+        return acquire(permits, maxWait.toNanos()) != History.NONE;
+    }
+
+    /**
+     * The future is completed once the permits are counted, by the timer thread shared by all rate limiters.
+     * Cancelling it before that counts nothing.
+     */
+    @Override
+    public CompletableFuture<Long> invokeAsync(final int permits) {
+        checkPermits(permits);
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+        acquireAsync(permits, future);
+        return future;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, as nothing is recorded ahead of time
+     */
+    @Override
+    public Reservation reserve(final int permits) {
+        throw new UnsupportedOperationException("window counter rate limiter cannot record ahead of time");
+    }
+
+    @Override
+    public boolean supportsReservation() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        for (int slot = 0; slot <= numOfBuckets; slot++) {
+            states.set(slot, 0);
+        }
+    }
+
+    private void checkPermits(final int permits) {
+        if (permits <= 0 || permits > maxInvokes) {
+            throw new IllegalArgumentException("permits must be between 1 and max invokes");
+        }
+    }
+
+    /**
+     * @return the release time, or {@link History#NONE} if it cannot be released within 'maxWait'.
+     */
+    private long acquire(final int permits, final long maxWait) throws InterruptedException {
+        final long start = nanoTime();
+        while (true) {
+            final long now = tryAcquire(permits);
+            if (now != History.NONE) {
+                return now;
+            }
+            final long until = retryTime(permits);
+            if (until - start > maxWait) {
+                return History.NONE;
+            }
+            waitStrategy.await(until);
+        }
+    }
+
+    private void acquireAsync(final int permits, final CompletableFuture<Long> future) {
+        if (future.isDone()) {
+            return;
+        }
+        final long now = tryAcquire(permits);
+        if (now != History.NONE) {
+            future.complete(now);
+        } else {
+            ReservedFuture.schedule(() -> acquireAsync(permits, future), retryTime(permits) - nanoTime());
+        }
+    }
+
+    /**
+     * Count the permits in the latest bucket if they fit in the window. Nothing is counted otherwise.
+     *
+     * @return the release time, or {@link History#NONE} if rejected
+     */
+    private long tryAcquire(final int permits) {
+        // the time is kept while this call moves the latest bucket and opens it, so that a bucket narrower than a
+        // retry is not missed for ever.
+        long now = nanoTime();
+        while (true) {
+            final long latest = latestBucket.get();
+            if (latest - bucketOf(now) > 0) {
+                // moved by another call, after the clock was read, so that the latest bucket is never ahead of 'now'.
+                now = nanoTime();
+                continue;
+            }
+            final long bucket = bucketOf(now);
+            if (bucket != latest) {
+                latestBucket.compareAndSet(latest, bucket);
+                continue;
+            }
+            final int slot = slotOf(bucket);
+            final long state = states.get(slot);
+            if (tagOf(state) != (int) bucket) {
+                open(bucket, state);
+                continue;
+            }
+            if ((state & SEALED) != 0) {
+                // a later bucket has been opened.
+                continue;
+            }
+            if ((state & COUNT) + countBefore(bucket, now) + permits > maxInvokes) {
+                return History.NONE;
+            }
+            // before the count, so that the time is never older than the permits it covers.
+            latestTimes.accumulateAndGet(slot, now, Math::max);
+            if (states.compareAndSet(slot, state, state + permits)) {
+                return now;
+            }
+        }
+    }
+
+    /**
+     * Seal the buckets in the window of 'bucket', including the ones never opened, so that nothing can be added to
+     * them once 'bucket' is opened.
+     */
+    private void open(final long bucket, final long previous) {
+        for (long b = bucket - 1; b >= bucket - numOfBuckets && b >= 0; b--) {
+            final int slot = slotOf(b);
+            long state;
+            while (((state = states.get(slot)) & SEALED) == 0 || tagOf(state) != (int) b) {
+                final int age = (int) b - tagOf(state);
+                if (age < 0) {
+                    // the slot has been taken by a later bucket.
+                    return;
+                }
+                final long sealed = age == 0 ? state | SEALED : ((long) (int) b << 32) | SEALED;
+                if (states.compareAndSet(slot, state, sealed)) {
+                    break;
+                }
+            }
+        }
+        if ((int) bucket - tagOf(previous) > 0) {
+            states.compareAndSet(slotOf(bucket), previous, (long) (int) bucket << 32);
+        }
+    }
+
+    /**
+     * @return the permits of the buckets before 'bucket' which are still in the window at 'now'
+     */
+    private long countBefore(final long bucket, final long now) {
+        long count = 0;
+        for (long b = bucket - 1; b >= bucket - numOfBuckets && b >= 0; b--) {
+            final int slot = slotOf(b);
+            final long state = states.get(slot);
+            if (tagOf(state) == (int) b && latestTimes.get(slot) - now + duration > 0) {
+                count += state & COUNT;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return when enough buckets have left the window for the permits, which may be earlier than the permits can
+     * actually be counted if other invocations take the room first.
+     */
+    private long retryTime(final int permits) {
+        final long now = nanoTime();
+        final long bucket = Math.max(bucketOf(now), latestBucket.get());
+        final int slot = slotOf(bucket);
+        final long state = states.get(slot);
+        long excess = (tagOf(state) == (int) bucket ? state & COUNT : 0) + countBefore(bucket, now)
+                + permits - maxInvokes;
+        for (long b = Math.max(bucket - numOfBuckets, 0); b < bucket && excess > 0; b++) {
+            final int oldest = slotOf(b);
+            final long oldestState = states.get(oldest);
+            final long leaveTime = latestTimes.get(oldest) + duration;
+            if (tagOf(oldestState) == (int) b && leaveTime - now > 0) {
+                excess -= oldestState & COUNT;
+                if (excess <= 0) {
+                    return leaveTime;
+                }
+            }
+        }
+        return excess > 0 ? Math.max(now, latestTimes.get(slot)) + duration : now;
+    }
+
+    private long bucketOf(final long time) {
+        return Math.max(0, (time - origin) / bucketWidth);
+    }
+
+    private int slotOf(final long bucket) {
+        return (int) (bucket % (numOfBuckets + 1));
+    }
+
+    private static int tagOf(final long state) {
+        return (int) (state >>> 32);
+    }
+}
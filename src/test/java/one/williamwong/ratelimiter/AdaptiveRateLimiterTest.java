@@ -0,0 +1,164 @@
+package one.williamwong.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveRateLimiterTest {
+
+    private static final Duration SECOND = Duration.ofSeconds(1);
+    private static final Duration TICK = Duration.ofMillis(1);
+    private static final int CAPACITY = 500;
+    private static final int OFFERED_LOAD = 2000;
+    private static final Duration BASE_LATENCY = Duration.ofMillis(10);
+    private static final Duration LATENCY_THRESHOLD = Duration.ofMillis(50);
+    private static final Duration TIMEOUT = Duration.ofMillis(200);
+    private static final int SECONDS = 120;
+    // a tick may release a few invocations, so that a rate is not rounded to whole ticks.
+    private static final int BURST = 10;
+
+    @Test
+    void test_limit_which_converges_to_capacity_of_downstream() {
+        final ManualTimeSource clock = new ManualTimeSource();
+        final AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(
+                new GcraRateLimiter(OFFERED_LOAD, SECOND, BURST, clock, clock), SECOND, 50, OFFERED_LOAD,
+                LATENCY_THRESHOLD, OFFERED_LOAD / 100, 0.9, clock);
+        final Simulation simulation = new Simulation(clock, rateLimiter);
+        simulation.run();
+
+        assertThat(simulation.convergenceTime).isBetween(1, 60);
+        assertThat(simulation.goodput()).isGreaterThan(CAPACITY * 9 / 10);
+    }
+
+    @Test
+    void test_fixed_limit_which_overloads_or_underuses_downstream() {
+        final ManualTimeSource highClock = new ManualTimeSource();
+        final Simulation high = new Simulation(highClock, new GcraRateLimiter(CAPACITY * 2, SECOND, BURST, highClock,
+                highClock));
+        high.run();
+        final ManualTimeSource lowClock = new ManualTimeSource();
+        final Simulation low = new Simulation(lowClock, new GcraRateLimiter(CAPACITY / 2, SECOND, BURST, lowClock,
+                lowClock));
+        low.run();
+
+        // every admitted call queues behind the others until it times out.
+        assertThat(high.goodput()).isLessThan(CAPACITY / 10);
+        assertThat(low.goodput()).isLessThanOrEqualTo(CAPACITY / 2);
+    }
+
+    @Test
+    void test_report_which_does_not_wait_for_set_rate_of_wrapped_rate_limiter() throws Exception {
+        final ManualTimeSource clock = new ManualTimeSource();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean blocking = new AtomicBoolean();
+        final GcraRateLimiter wrapped = new GcraRateLimiter(OFFERED_LOAD, SECOND, 1, clock, clock) {
+            @Override
+            public void setRate(final int maxInvokes, final Duration duration) {
+                if (blocking.compareAndSet(true, false)) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.setRate(maxInvokes, duration);
+            }
+        };
+        final AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(wrapped, SECOND, 10, OFFERED_LOAD,
+                LATENCY_THRESHOLD, 100, 0.5, clock);
+        blocking.set(true);
+
+        // the limit is raised to 20, and the wrapped rate limiter holds on to it.
+        final CompletableFuture<Void> success = CompletableFuture.runAsync(() -> rateLimiter.onSuccess(0));
+        entered.await();
+        CompletableFuture.runAsync(rateLimiter::onFailure).get(1, TimeUnit.SECONDS);
+
+        // the thread applying the raised limit applies the one cut meanwhile once it is done.
+        release.countDown();
+        success.get(1, TimeUnit.SECONDS);
+        assertThat(rateLimiter.limit()).isEqualTo(10);
+    }
+
+    /**
+     * A client offering 'OFFERED_LOAD' calls per second, through a rate limiter, to a downstream serving 'CAPACITY'
+     * calls per second in order. A call takes 'BASE_LATENCY' plus the time to serve the calls ahead of it, and fails
+     * if that is longer than 'TIMEOUT', but still takes its share of the capacity. Time is simulated in ticks.
+     */
+    private static final class Simulation {
+        private final ManualTimeSource clock;
+        private final RateLimiter rateLimiter;
+        private final AdaptiveRateLimiter adaptive;
+        private final long[] successes = new long[SECONDS];
+        // the first second since which the limit stays within 20% of the capacity, or -1.
+        private int convergenceTime = -1;
+
+        private Simulation(final ManualTimeSource clock, final RateLimiter rateLimiter) {
+            this.clock = clock;
+            this.rateLimiter = rateLimiter;
+            this.adaptive = rateLimiter instanceof AdaptiveRateLimiter ? (AdaptiveRateLimiter) rateLimiter : null;
+        }
+
+        private void run() {
+            final long ticksPerSecond = SECOND.toNanos() / TICK.toNanos();
+            final double servedPerTick = CAPACITY / (double) ticksPerSecond;
+            double backlog = 0;
+            for (int second = 0; second < SECONDS; second++) {
+                for (long tick = 0; tick < ticksPerSecond; tick++) {
+                    clock.advance(TICK);
+                    backlog = Math.max(0, backlog - servedPerTick);
+                    for (int i = 0; i < OFFERED_LOAD / ticksPerSecond; i++) {
+                        if (!rateLimiter.tryInvoke()) {
+                            continue;
+                        }
+                        final long latency = BASE_LATENCY.toNanos() + (long) (backlog / CAPACITY * 1e9);
+                        backlog++;
+                        if (latency > TIMEOUT.toNanos()) {
+                            report(-1);
+                        } else {
+                            successes[second]++;
+                            report(latency);
+                        }
+                    }
+                }
+                if (adaptive != null) {
+                    final boolean converged = Math.abs(adaptive.limit() - CAPACITY) <= CAPACITY / 5;
+                    if (!converged) {
+                        convergenceTime = -1;
+                    } else if (convergenceTime < 0) {
+                        convergenceTime = second;
+                    }
+                }
+            }
+        }
+
+        private void report(final long latency) {
+            if (adaptive == null) {
+                return;
+            }
+            if (latency < 0) {
+                adaptive.onFailure();
+            } else {
+                adaptive.onSuccess(latency);
+            }
+        }
+
+        /**
+         * @return the successes per second over the last half of the simulation
+         */
+        private long goodput() {
+            long total = 0;
+            for (int second = SECONDS / 2; second < SECONDS; second++) {
+                total += successes[second];
+            }
+            return total / (SECONDS - SECONDS / 2);
+        }
+    }
+}
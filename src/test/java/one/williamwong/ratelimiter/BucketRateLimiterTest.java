@@ -0,0 +1,145 @@
+package one.williamwong.ratelimiter;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.params.provider.Arguments.of;
+
+/**
+ * Token bucket and GCRA rate limiters pace invocations evenly, so they are tested on their own rather than in
+ * {@link RateLimiterTest}, which expects 'maxInvokes' invocations to be released at once.
+ */
+class BucketRateLimiterTest {
+
+    private static final Duration DURATION = Duration.ofMillis(100);
+    private static final int LIMIT = 1000;
+    private static final int BURST = 100;
+    // a millisecond per invoke, so that a burst is taken long before a token is refilled.
+    private static final Duration BURST_DURATION = Duration.ofSeconds(1);
+
+    static Stream<Arguments> arguments() {
+        return Stream.of(
+                of(new TokenBucketRateLimiter(LIMIT, DURATION),
+                        new TokenBucketRateLimiter(LIMIT, BURST_DURATION, BURST)),
+                of(new GcraRateLimiter(LIMIT, DURATION),
+                        new GcraRateLimiter(LIMIT, BURST_DURATION, BURST)));
+    }
+
+    @ParameterizedTest(name = "{index}: test_invoke_which_never_excess_limit_with_burst_of_one({arguments})")
+    @MethodSource(value = "arguments")
+    void test_invoke_which_never_excess_limit_with_burst_of_one(
+            final RateLimiter rateLimiter,
+            final RateLimiter burstRateLimiter) throws Exception {
+
+        final ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            final List<Future<long[]>> futures = new ArrayList<>();
+            for (int t = 0; t < 10; t++) {
+                futures.add(executor.submit(() -> {
+                    final long[] releaseTimes = new long[LIMIT / 5];
+                    for (int i = 0; i < releaseTimes.length; i++) {
+                        releaseTimes[i] = rateLimiter.invoke();
+                    }
+                    return releaseTimes;
+                }));
+            }
+            final long[] releaseTimes = new long[LIMIT * 2];
+            for (int t = 0; t < futures.size(); t++) {
+                System.arraycopy(futures.get(t).get(), 0, releaseTimes, t * (LIMIT / 5), LIMIT / 5);
+            }
+
+            // evenly paced, so every 'maxInvokes' invocations take 'duration', give or take a nanosecond of rounding.
+            Arrays.sort(releaseTimes);
+            for (int i = 0; i + LIMIT < releaseTimes.length; i++) {
+                assertThat(releaseTimes[i + LIMIT] - releaseTimes[i]).isGreaterThanOrEqualTo(DURATION.toNanos() - 1);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @ParameterizedTest(name = "{index}: test_try_invoke_which_releases_a_burst_at_once({arguments})")
+    @MethodSource(value = "arguments")
+    void test_try_invoke_which_releases_a_burst_at_once(
+            final RateLimiter rateLimiter,
+            final RateLimiter burstRateLimiter) throws Exception {
+
+        int released = 0;
+        while (burstRateLimiter.tryInvoke()) {
+            released++;
+        }
+        // a few more tokens may be refilled while the burst is taken.
+        assertThat(released).isBetween(BURST, BURST + 10);
+
+        // refilled at 'maxInvokes' per 'duration'.
+        NANOSECONDS.sleep(BURST_DURATION.toNanos() * BURST / LIMIT);
+        for (int i = 0; i < BURST / 2; i++) {
+            assertThat(burstRateLimiter.tryInvoke()).isTrue();
+        }
+    }
+
+    @ParameterizedTest(name = "{index}: test_try_invoke_with_max_wait({arguments})")
+    @MethodSource(value = "arguments")
+    void test_try_invoke_with_max_wait(
+            final RateLimiter rateLimiter,
+            final RateLimiter burstRateLimiter) throws Exception {
+
+        assertThat(rateLimiter.tryInvoke(LIMIT / 2)).isTrue();
+        // the next invocation is paced half of 'duration' later.
+        assertThat(rateLimiter.tryInvoke(Duration.ofMillis(1))).isFalse();
+        final long startTime = nanoTime();
+        assertThat(rateLimiter.tryInvoke(DURATION)).isTrue();
+        assertThat(nanoTime() - startTime).isGreaterThanOrEqualTo(DURATION.toNanos() / 2 - Duration.ofMillis(5).toNanos());
+    }
+
+    @ParameterizedTest(name = "{index}: test_invoke_async_which_returns_invokes_when_cancelled({arguments})")
+    @MethodSource(value = "arguments")
+    void test_invoke_async_which_returns_invokes_when_cancelled(
+            final RateLimiter rateLimiter,
+            final RateLimiter burstRateLimiter) throws Exception {
+
+        assertThat(burstRateLimiter.tryInvoke(BURST)).isTrue();
+        // released a permit later, and puts the bucket into debt of a burst.
+        final CompletableFuture<Long> pending = burstRateLimiter.invokeAsync(BURST);
+        final CompletableFuture<Long> cancelled = burstRateLimiter.invokeAsync(BURST);
+        assertThat(cancelled.cancel(false)).isTrue();
+
+        // the debt of the cancelled invocation is returned, so only the pending one has to be paid.
+        assertThat(burstRateLimiter.tryInvoke(1, BURST_DURATION.multipliedBy(BURST * 3 / 2).dividedBy(LIMIT))).isTrue();
+        assertThat(pending.isDone()).isTrue();
+    }
+
+    @ParameterizedTest(name = "{index}: test_set_rate_which_keeps_recorded_invocations({arguments})")
+    @MethodSource(value = "arguments")
+    void test_set_rate_which_keeps_recorded_invocations(
+            final RateLimiter rateLimiter,
+            final RateLimiter burstRateLimiter) throws Exception {
+
+        // the rate is set before asserting, which may take longer to load than paying the invocation back.
+        final long startTime = nanoTime();
+        final boolean released = rateLimiter.tryInvoke(LIMIT / 2);
+        rateLimiter.setRate(LIMIT / 10, DURATION);
+        assertThat(released).isTrue();
+
+        // the invocation recorded before still has to be paid, at the old rate or the new one.
+        assertThat(rateLimiter.tryInvoke(Duration.ofMillis(1))).isFalse();
+        assertThat(rateLimiter.tryInvoke(DURATION.multipliedBy(10))).isTrue();
+        assertThat(nanoTime() - startTime).isGreaterThanOrEqualTo(DURATION.toNanos() / 2);
+        assertThatThrownBy(() -> rateLimiter.tryInvoke(LIMIT / 2)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
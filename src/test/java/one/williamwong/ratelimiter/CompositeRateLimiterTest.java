@@ -0,0 +1,66 @@
+package one.williamwong.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompositeRateLimiterTest {
+
+    private static final Duration SECOND = Duration.ofSeconds(1);
+    private static final Duration MINUTE = Duration.ofMinutes(1);
+
+    @Test
+    void test_invoke_which_is_released_by_the_slowest_limit() throws Exception {
+        final ManualTimeSource clock = new ManualTimeSource();
+        final CompositeRateLimiter rateLimiter = new CompositeRateLimiter(Arrays.asList(
+                new CompositeRateLimiter.Limit(10, SECOND), new CompositeRateLimiter.Limit(15, MINUTE)), clock, clock);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(rateLimiter.invoke()).isEqualTo(0);
+        }
+        // the 11th to the 15th wait for the limit per second.
+        for (int i = 0; i < 5; i++) {
+            assertThat(rateLimiter.invoke()).isEqualTo(SECOND.toNanos());
+        }
+        // the 16th waits for the limit per minute.
+        assertThat(rateLimiter.invoke()).isEqualTo(MINUTE.toNanos());
+    }
+
+    @Test
+    void test_try_invoke_which_records_nothing_when_rejected_by_any_limit() {
+        final ManualTimeSource clock = new ManualTimeSource();
+        final CompositeRateLimiter rateLimiter = new CompositeRateLimiter(Arrays.asList(
+                new CompositeRateLimiter.Limit(10, SECOND), new CompositeRateLimiter.Limit(15, MINUTE)), clock, clock);
+
+        assertThat(rateLimiter.tryInvoke(10)).isTrue();
+        // rejected by the limit per second, and not taken from the limit per minute either.
+        assertThat(rateLimiter.tryInvoke(5)).isFalse();
+        assertThat(rateLimiter.tryInvoke(5)).isFalse();
+        clock.advance(SECOND);
+        assertThat(rateLimiter.tryInvoke(5)).isTrue();
+        assertThat(rateLimiter.tryInvoke()).isFalse();
+    }
+
+    @Test
+    void test_invoke_of_children_which_share_the_limit_of_parent() throws Exception {
+        final ManualTimeSource clock = new ManualTimeSource();
+        final CompositeRateLimiter global = new CompositeRateLimiter(
+                Arrays.asList(new CompositeRateLimiter.Limit(10, SECOND)), clock, clock);
+        final CompositeRateLimiter tenant1 = global.child(new CompositeRateLimiter.Limit(4, SECOND));
+        final CompositeRateLimiter tenant2 = global.child(new CompositeRateLimiter.Limit(8, SECOND));
+
+        // tenant 1 is paused by its own limit, which takes from the global limit ahead of time.
+        for (int i = 0; i < 8; i++) {
+            tenant1.invokeAsync();
+        }
+        assertThat(tenant2.tryInvoke(2)).isTrue();
+        assertThat(tenant2.tryInvoke()).isFalse();
+        assertThat(tenant1.tryInvoke()).isFalse();
+
+        // tenant 2 is paused by the global limit, not by its own one.
+        assertThat(tenant2.invoke()).isEqualTo(SECOND.toNanos());
+    }
+}
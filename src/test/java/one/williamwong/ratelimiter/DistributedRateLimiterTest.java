@@ -0,0 +1,134 @@
+package one.williamwong.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DistributedRateLimiterTest {
+
+    private static final Duration DURATION = Duration.ofMillis(200);
+    private static final Duration LEASE_TIME = Duration.ofMillis(20);
+    private static final int LIMIT = 1000;
+    private static final int LEASE_SIZE = 20;
+
+    @Test
+    void test_invoke_which_never_excess_limit_across_nodes() throws Exception {
+        // 5 nodes sharing a store, where the first node takes 4 times as much traffic as the others.
+        final PermitStore store = new InMemoryPermitStore();
+        final int numOfNodes = 5;
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final List<Future<List<Long>>> futures = new ArrayList<>();
+            for (int node = 0; node < numOfNodes; node++) {
+                final RateLimiter rateLimiter =
+                        new DistributedRateLimiter(store, "api", LIMIT, DURATION, LEASE_SIZE, LEASE_TIME);
+                for (int thread = 0; thread < (node == 0 ? 4 : 1); thread++) {
+                    futures.add(executor.submit(() -> invokeFor(rateLimiter, DURATION.multipliedBy(5))));
+                }
+            }
+            final List<Long> releaseTimes = new ArrayList<>();
+            final int[] invokesPerThread = new int[futures.size()];
+            for (int i = 0; i < futures.size(); i++) {
+                final List<Long> times = futures.get(i).get();
+                invokesPerThread[i] = times.size();
+                releaseTimes.addAll(times);
+            }
+
+            final long[] sorted = releaseTimes.stream().mapToLong($ -> $).sorted().toArray();
+            assertThat(sorted.length).isGreaterThan(LIMIT * 2);
+            for (int i = 0; i + LIMIT < sorted.length; i++) {
+                assertThat(sorted[i + LIMIT] - sorted[i]).isGreaterThanOrEqualTo(DURATION.toNanos());
+            }
+            // the busy node is not capped to a static share of the limit.
+            final int firstNode = invokesPerThread[0] + invokesPerThread[1] + invokesPerThread[2] + invokesPerThread[3];
+            assertThat(firstNode).isGreaterThan(sorted.length / numOfNodes);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void test_try_invoke_which_does_not_wait_for_store() throws Exception {
+        final RateLimiter rateLimiter =
+                new DistributedRateLimiter(new InMemoryPermitStore(), "api", LIMIT, DURATION, LEASE_SIZE, LEASE_TIME);
+
+        // nothing is leased yet, the lease is asked for in the background.
+        assertThat(rateLimiter.tryInvoke()).isFalse();
+        final long deadline = nanoTime() + DURATION.toNanos();
+        while (!rateLimiter.tryInvoke()) {
+            assertThat(nanoTime()).isLessThan(deadline);
+            NANOSECONDS.sleep(100_000);
+        }
+    }
+
+    @Test
+    void test_try_invoke_which_renews_again_when_leased_on_the_same_thread() throws Exception {
+        // leases are asked for while invoking, and the last invocation has to wait for the window to move on.
+        final RateLimiter rateLimiter = new DistributedRateLimiter(new InMemoryPermitStore(), "api", LEASE_SIZE * 2,
+                DURATION, LEASE_SIZE, LEASE_TIME, WaitStrategy.sleep(), Runnable::run);
+
+        final long deadline = nanoTime() + DURATION.multipliedBy(5).toNanos();
+        int invoked = 0;
+        while (invoked <= LEASE_SIZE * 2) {
+            if (rateLimiter.tryInvoke()) {
+                invoked++;
+            } else {
+                assertThat(nanoTime()).isLessThan(deadline);
+                NANOSECONDS.sleep(100_000);
+            }
+        }
+    }
+
+    @Test
+    void test_invoke_async_which_completes_once_leased() throws Exception {
+        final RateLimiter rateLimiter =
+                new DistributedRateLimiter(new InMemoryPermitStore(), "api", LIMIT, DURATION, LEASE_SIZE, LEASE_TIME);
+
+        final List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < LEASE_SIZE * 3; i++) {
+            futures.add(rateLimiter.invokeAsync());
+        }
+        for (Future<Long> future : futures) {
+            assertThat(future.get()).isNotNull();
+        }
+    }
+
+    @Test
+    void test_file_permit_store_which_is_shared_through_the_file() throws Exception {
+        final Path directory = Files.createTempDirectory("permits");
+        directory.toFile().deleteOnExit();
+        directory.resolve("api.permits").toFile().deleteOnExit();
+        final Duration window = Duration.ofHours(1);
+        try (FilePermitStore store = new FilePermitStore(directory)) {
+            assertThat(store.acquire("api", LIMIT, window, LIMIT / 2).permits()).isEqualTo(LIMIT / 2);
+        }
+
+        // another process opening the same directory sees the grants of the first one.
+        try (FilePermitStore store = new FilePermitStore(directory)) {
+            assertThat(store.acquire("api", LIMIT, window, LIMIT).permits()).isEqualTo(LIMIT - LIMIT / 2);
+            final PermitStore.Grant grant = store.acquire("api", LIMIT, window, 1);
+            assertThat(grant.permits()).isZero();
+            assertThat(grant.retryAfter()).isPositive();
+        }
+    }
+
+    private static List<Long> invokeFor(final RateLimiter rateLimiter, final Duration duration) throws Exception {
+        final List<Long> releaseTimes = new ArrayList<>();
+        final long end = nanoTime() + duration.toNanos();
+        while (nanoTime() < end) {
+            releaseTimes.add(rateLimiter.invoke());
+        }
+        return releaseTimes;
+    }
+}
@@ -0,0 +1,88 @@
+package one.williamwong.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FairRateLimiterTest {
+
+    private static final Duration DURATION = Duration.ofMillis(20);
+    private static final int WAITERS = 5;
+
+    @Test
+    void test_invoke_which_is_released_in_arrival_order() throws Exception {
+        final FairRateLimiter rateLimiter = new FairRateLimiter(2, DURATION);
+        final ExecutorService executor = Executors.newFixedThreadPool(WAITERS);
+        try {
+            rateLimiter.invoke(2);
+            final List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < WAITERS; i++) {
+                futures.add(executor.submit(() -> rateLimiter.invoke()));
+                awaitQueueDepth(rateLimiter, i + 1);
+            }
+            for (int i = 1; i < WAITERS; i++) {
+                assertThat(futures.get(i).get()).isGreaterThan(futures.get(i - 1).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void test_invoke_of_higher_priority_which_jumps_the_queue() throws Exception {
+        final FairRateLimiter rateLimiter = new FairRateLimiter(2, DURATION, 1, Integer.MAX_VALUE, 2);
+        final ExecutorService executor = Executors.newFixedThreadPool(WAITERS + 1);
+        try {
+            rateLimiter.invoke(2);
+            final List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < WAITERS; i++) {
+                futures.add(executor.submit(() -> rateLimiter.invoke(1, 1)));
+                awaitQueueDepth(rateLimiter, i + 1);
+            }
+            final Future<Long> health = executor.submit(() -> rateLimiter.invoke(1, 0));
+
+            // only the head of the lower priority, which is already due, may be released before it.
+            int earlier = 0;
+            for (Future<Long> future : futures) {
+                earlier += future.get() < health.get() ? 1 : 0;
+            }
+            assertThat(earlier).isLessThanOrEqualTo(1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void test_invoke_which_fails_fast_when_queue_is_full() throws Exception {
+        final FairRateLimiter rateLimiter = new FairRateLimiter(2, DURATION, 1, 1, 1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            rateLimiter.invoke(2);
+            final Future<Long> waiter = executor.submit(() -> rateLimiter.invoke());
+            awaitQueueDepth(rateLimiter, 1);
+
+            assertThatThrownBy(rateLimiter::invoke).isInstanceOf(IllegalStateException.class);
+            assertThat(rateLimiter.tryInvoke(1, DURATION.multipliedBy(10))).isFalse();
+            assertThat(rateLimiter.tryInvoke()).isFalse();
+            waiter.get();
+            assertThat(rateLimiter.queueDepth()).isZero();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void awaitQueueDepth(final FairRateLimiter rateLimiter, final int queueDepth) throws Exception {
+        while (rateLimiter.queueDepth() < queueDepth) {
+            MILLISECONDS.sleep(1);
+        }
+    }
+}
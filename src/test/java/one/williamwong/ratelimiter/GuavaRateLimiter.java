@@ -2,6 +2,7 @@ package one.williamwong.ratelimiter;
 
 import java.time.Duration;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 import static java.lang.System.nanoTime;
 
@@ -19,11 +20,36 @@ public class GuavaRateLimiter implements RateLimiter {
     }
 
     @Override
-    public long invoke() throws InterruptedException {
-        this.guavaRateLimiter.acquire();
+    public long invoke(final int permits) throws InterruptedException {
+        this.guavaRateLimiter.acquire(permits);
         return nanoTime();
     }
 
+    @Override
+    public boolean tryInvoke(final int permits) {
+        return this.guavaRateLimiter.tryAcquire(permits);
+    }
+
+    @Override
+    public boolean tryInvoke(final int permits, final Duration maxWait) {
+        return this.guavaRateLimiter.tryAcquire(permits, maxWait);
+    }
+
+    @Override
+    public CompletableFuture<Long> invokeAsync(final int permits) {
+        throw new UnsupportedOperationException("guava rate limiter cannot reserve without blocking");
+    }
+
+    @Override
+    public Reservation reserve(final int permits) {
+        throw new UnsupportedOperationException("guava rate limiter cannot reserve without blocking");
+    }
+
+    @Override
+    public boolean supportsReservation() {
+        return false;
+    }
+
     @Override
     public void reset() {
         synchronized (lock) {
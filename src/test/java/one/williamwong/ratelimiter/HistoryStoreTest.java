@@ -0,0 +1,127 @@
+package one.williamwong.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HistoryStoreTest {
+
+    private static final Duration DURATION = Duration.ofMillis(200);
+    private static final int LIMIT = 1000;
+
+    @Test
+    void test_mapped_which_carries_on_with_the_window_after_restart() throws Exception {
+        final Path file = Files.createTempFile("rate-limiter", ".history");
+        file.toFile().deleteOnExit();
+
+        final RateLimiter before = create(file, 1);
+        for (int i = 0; i < LIMIT; i++) {
+            assertThat(before.tryInvoke()).isTrue();
+        }
+
+        // a rate limiter on the same file, as a restarted process would create, finds the window full.
+        final RateLimiter after = create(file, 1);
+        assertThat(after.tryInvoke()).isFalse();
+        NANOSECONDS.sleep(DURATION.toNanos());
+        for (int i = 0; i < LIMIT; i++) {
+            assertThat(after.tryInvoke()).isTrue();
+        }
+        assertThat(after.tryInvoke()).isFalse();
+    }
+
+    @Test
+    void test_mapped_which_keeps_release_time_of_dropped_entries_after_restart() throws Exception {
+        final Path file = Files.createTempFile("rate-limiter", ".history");
+        file.toFile().deleteOnExit();
+        final long now = System.nanoTime();
+
+        final History before = new History(LIMIT, 1, LIMIT, HistoryStore.mapped(file), DURATION.toNanos());
+        for (int i = 0; i < LIMIT; i++) {
+            before.record(now + i, 1);
+        }
+        before.compact(now + LIMIT / 2);
+
+        final History after = new History(LIMIT, 1, LIMIT, HistoryStore.mapped(file), DURATION.toNanos());
+        // the times are kept as wall clock times, which the next process reads again to within a few microseconds.
+        assertThat(after.timeOf(0)).isCloseTo(before.timeOf(0), within(MILLISECONDS.toNanos(1)));
+    }
+
+    @Test
+    void test_mapped_which_rejects_a_file_of_another_limit() throws Exception {
+        final Path file = Files.createTempFile("rate-limiter", ".history");
+        file.toFile().deleteOnExit();
+
+        create(file, 1).invoke();
+        assertThatThrownBy(() -> create(file, 10)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void test_heap_which_keeps_ends_only_once_an_invocation_takes_many_permits() {
+        final long now = System.nanoTime();
+        final History history = new History(LIMIT, 1, LIMIT, HistoryStore.heap(), DURATION.toNanos());
+        for (int i = 0; i < LIMIT - 3; i++) {
+            history.record(now + i, 1);
+        }
+        final long footprint = history.footprint();
+
+        history.record(now + LIMIT, 3);
+        assertThat(history.footprint()).isGreaterThan(footprint);
+        assertThat(history.timeOf(LIMIT - 4)).isEqualTo(now + LIMIT - 4);
+        assertThat(history.timeOf(LIMIT - 3)).isEqualTo(now + LIMIT);
+        assertThat(history.timeOf(LIMIT - 1)).isEqualTo(now + LIMIT);
+
+        // once the invocation of many permits is dropped, the ends follow from the start of the head again.
+        history.record(now + LIMIT + 1, 1);
+        history.compact(now + LIMIT);
+        assertThat(history.footprint()).isLessThan(footprint);
+        assertThat(history.timeOf(LIMIT)).isEqualTo(now + LIMIT + 1);
+    }
+
+    @Test
+    void test_compact_which_keeps_ends_in_32_bits() {
+        final long now = System.nanoTime();
+        final History history = new History(LIMIT, 1, LIMIT, HistoryStore.compact(Duration.ofNanos(1)),
+                DURATION.toNanos());
+        for (int i = 0; i < LIMIT / 2; i++) {
+            history.record(now + i, 2);
+        }
+
+        // 4 bytes for the release time and 4 bytes for the end of every record, rather than 4 and 8.
+        assertThat(history.footprint()).isLessThan(8L * LIMIT + 200);
+        assertThat(history.timeOf(0)).isEqualTo(now);
+        assertThat(history.timeOf(LIMIT - 2)).isEqualTo(now + LIMIT / 2 - 1);
+        assertThat(history.timeOf(LIMIT - 1)).isEqualTo(now + LIMIT / 2 - 1);
+    }
+
+    @Test
+    void test_compact_which_widens_release_times_only_for_a_longer_duration() {
+        final long now = System.nanoTime();
+        final History history = new History(LIMIT, 1, LIMIT, HistoryStore.compact(Duration.ofNanos(1)),
+                DURATION.toNanos());
+        for (int i = 0; i < LIMIT; i++) {
+            history.record(now + i, 1);
+        }
+        final long footprint = history.footprint();
+
+        // 32 bits of nanoseconds still cover a shorter duration, but not 10 seconds.
+        history.setRate(LIMIT, DURATION.toNanos() / 2);
+        assertThat(history.footprint()).isEqualTo(footprint);
+        history.setRate(LIMIT, Duration.ofSeconds(10).toNanos());
+        assertThat(history.footprint()).isGreaterThan(footprint);
+        assertThat(history.timeOf(0)).isEqualTo(now);
+        assertThat(history.timeOf(LIMIT - 1)).isEqualTo(now + LIMIT - 1);
+    }
+
+    private static RateLimiter create(final Path file, final int samplingInterval) {
+        return new SynchronizedRateLimiter(LIMIT, DURATION, samplingInterval, WaitStrategy.sleep(), null,
+                TimeSource.system(), HistoryStore.mapped(file));
+    }
+}
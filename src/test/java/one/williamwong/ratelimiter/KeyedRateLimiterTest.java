@@ -0,0 +1,169 @@
+package one.williamwong.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyedRateLimiterTest {
+
+    private static final Duration DURATION = Duration.ofMillis(100);
+    private static final int LIMIT = 100;
+
+    @Test
+    void test_try_invoke_which_limits_every_key_on_its_own() {
+        final KeyedRateLimiter<String> rateLimiter = new KeyedRateLimiter<>(LIMIT, DURATION);
+
+        for (int i = 0; i < LIMIT; i++) {
+            assertThat(rateLimiter.tryInvoke("tenant-1")).isTrue();
+        }
+        assertThat(rateLimiter.tryInvoke("tenant-1")).isFalse();
+
+        // another key has its own window.
+        assertThat(rateLimiter.tryInvoke("tenant-2", LIMIT)).isTrue();
+        assertThat(rateLimiter.tryInvoke("tenant-2")).isFalse();
+        assertThat(rateLimiter.size()).isEqualTo(2);
+    }
+
+    @Test
+    void test_invoke_which_pauses_until_the_window_of_the_key_allows() throws Exception {
+        final KeyedRateLimiter<String> rateLimiter = new KeyedRateLimiter<>(LIMIT, DURATION);
+
+        final long firstReleaseTime = rateLimiter.invoke("tenant-1", LIMIT);
+        final long secondReleaseTime = rateLimiter.invoke("tenant-1");
+
+        assertThat(secondReleaseTime - firstReleaseTime).isGreaterThanOrEqualTo(DURATION.toNanos());
+    }
+
+    @Test
+    void test_invoke_which_pauses_with_the_given_wait_strategy_and_time_source() throws Exception {
+        final ManualTimeSource clock = new ManualTimeSource();
+        final KeyedRateLimiter<String> rateLimiter = new KeyedRateLimiter<>(
+                LIMIT, Duration.ofHours(1), 1, Duration.ofHours(1), Integer.MAX_VALUE, 1024, clock, clock);
+
+        assertThat(rateLimiter.invoke("tenant-1", LIMIT)).isEqualTo(0);
+        assertThat(rateLimiter.invoke("tenant-1")).isEqualTo(Duration.ofHours(1).toNanos());
+        assertThat(clock.nanoTime()).isEqualTo(Duration.ofHours(1).toNanos());
+    }
+
+    @Test
+    void test_maintain_which_evicts_idle_keys() throws Exception {
+        final KeyedRateLimiter<Integer> rateLimiter =
+                new KeyedRateLimiter<>(LIMIT, DURATION, 10, DURATION, Integer.MAX_VALUE);
+        for (int key = 0; key < 1_000; key++) {
+            rateLimiter.invoke(key, LIMIT / 2);
+        }
+        assertThat(rateLimiter.size()).isEqualTo(1_000);
+        assertThat(rateLimiter.memoryFootprint()).isPositive();
+
+        // windows are empty after 'duration', and evicted after 'idleTimeout'.
+        NANOSECONDS.sleep(DURATION.toNanos() * 2);
+        rateLimiter.maintain();
+
+        assertThat(rateLimiter.size()).isZero();
+        assertThat(rateLimiter.memoryFootprint()).isZero();
+    }
+
+    @Test
+    void test_maintain_which_compacts_keys_in_use() throws Exception {
+        final KeyedRateLimiter<Integer> rateLimiter =
+                new KeyedRateLimiter<>(LIMIT, DURATION, 1, Duration.ofHours(1), Integer.MAX_VALUE);
+        for (int key = 0; key < 100; key++) {
+            for (int i = 0; i < LIMIT; i++) {
+                rateLimiter.invoke(key);
+            }
+        }
+        final long footprintInUse = rateLimiter.memoryFootprint();
+
+        // idle windows are kept until 'idleTimeout', but their histories are released.
+        NANOSECONDS.sleep(DURATION.toNanos() * 2);
+        rateLimiter.maintain();
+
+        assertThat(rateLimiter.size()).isEqualTo(100);
+        assertThat(rateLimiter.memoryFootprint()).isLessThan(footprintInUse / 10);
+    }
+
+    @Test
+    void test_try_invoke_which_keeps_at_most_max_keys() {
+        final KeyedRateLimiter<Integer> rateLimiter =
+                new KeyedRateLimiter<>(LIMIT, DURATION, 1, Duration.ofHours(1), 100);
+
+        for (int key = 0; key < 10_000; key++) {
+            assertThat(rateLimiter.tryInvoke(key)).isTrue();
+            assertThat(rateLimiter.size()).isLessThanOrEqualTo(100);
+        }
+    }
+
+    @Test
+    void test_try_invoke_which_evicts_the_least_recently_used_keys() {
+        final ManualTimeSource clock = new ManualTimeSource();
+        final KeyedRateLimiter<Integer> rateLimiter = new KeyedRateLimiter<>(
+                LIMIT, DURATION, 1, Duration.ofHours(1), 100, 1024, clock, clock);
+        for (int key = 0; key < 100; key++) {
+            assertThat(rateLimiter.tryInvoke(key)).isTrue();
+            clock.advance(Duration.ofNanos(1));
+        }
+        // the first keys are used again, so the keys used once in between are evicted first.
+        for (int key = 0; key < 10; key++) {
+            assertThat(rateLimiter.tryInvoke(key)).isTrue();
+        }
+        assertThat(rateLimiter.tryInvoke(100)).isTrue();
+
+        // the windows of the first keys are kept, so they have only 'LIMIT' - 2 invocations left.
+        assertThat(rateLimiter.size()).isEqualTo(90);
+        for (int key = 0; key < 10; key++) {
+            assertThat(rateLimiter.tryInvoke(key, LIMIT - 1)).isFalse();
+        }
+    }
+
+    @Test
+    void test_try_invoke_which_rejects_throttled_key_from_cache_until_window_allows() throws Exception {
+        final KeyedRateLimiter<String> rateLimiter = new KeyedRateLimiter<>(LIMIT, DURATION);
+        assertThat(rateLimiter.tryInvoke("abuser", LIMIT)).isTrue();
+
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(rateLimiter.tryInvoke("abuser")).isFalse();
+        }
+        // only the first rejection looks at the window, the others are rejected by the cache.
+        assertThat(rateLimiter.recentRejections("abuser")).isEqualTo(1);
+        assertThat(rateLimiter.tryInvoke("tenant-1")).isTrue();
+
+        NANOSECONDS.sleep(DURATION.toNanos());
+        assertThat(rateLimiter.tryInvoke("abuser")).isTrue();
+    }
+
+    @Test
+    void test_reset_which_forgets_cached_rejections() {
+        final KeyedRateLimiter<String> rateLimiter = new KeyedRateLimiter<>(LIMIT, DURATION);
+        assertThat(rateLimiter.tryInvoke("abuser", LIMIT)).isTrue();
+        assertThat(rateLimiter.tryInvoke("abuser")).isFalse();
+
+        rateLimiter.reset();
+
+        assertThat(rateLimiter.tryInvoke("abuser")).isTrue();
+    }
+
+    @Test
+    void test_try_invoke_which_keeps_hot_keys_in_cache() {
+        // keys 1024 apart share a slot of the cache.
+        final KeyedRateLimiter<Integer> rateLimiter =
+                new KeyedRateLimiter<>(LIMIT, Duration.ofHours(1), 1, Duration.ofHours(1), Integer.MAX_VALUE, 1024);
+        for (int key = 0; key <= 1024 * 10; key += 1024) {
+            assertThat(rateLimiter.tryInvoke(key, LIMIT)).isTrue();
+        }
+        // the hot key takes the slot back, as it has been rejected more often.
+        rateLimiter.tryInvoke(0);
+        rateLimiter.tryInvoke(1024);
+        rateLimiter.tryInvoke(0);
+        assertThat(rateLimiter.recentRejections(0)).isEqualTo(2);
+
+        // keys rejected once do not push it out.
+        for (int key = 1024 * 2; key <= 1024 * 10; key += 1024) {
+            assertThat(rateLimiter.tryInvoke(key)).isFalse();
+        }
+        assertThat(rateLimiter.tryInvoke(0)).isFalse();
+        assertThat(rateLimiter.recentRejections(0)).isEqualTo(2);
+    }
+}
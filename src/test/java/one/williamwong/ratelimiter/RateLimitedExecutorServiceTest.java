@@ -0,0 +1,254 @@
+package one.williamwong.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.params.provider.Arguments.of;
+
+class RateLimitedExecutorServiceTest {
+
+    private static final Duration DURATION = Duration.ofMillis(50);
+    private static final int LIMIT = 100;
+    private static final int TASKS = LIMIT * 3;
+
+    static Stream<Arguments> arguments() {
+        return Stream.of(
+                of(new StampLockRateLimiter(LIMIT, DURATION)),
+                of(new GcraRateLimiter(LIMIT, DURATION)),
+                // does not record invocations ahead of time, so it is invoked for every task.
+                of(new WindowCounterRateLimiter(LIMIT, DURATION)));
+    }
+
+    @ParameterizedTest(name = "{index}: test_execute_which_never_excess_limit_in_any_window({arguments})")
+    @MethodSource(value = "arguments")
+    void test_execute_which_never_excess_limit_in_any_window(final RateLimiter rateLimiter) throws Exception {
+        final ReleaseRecorder admitted = new ReleaseRecorder(1, TASKS);
+        final RateLimitedExecutorService executorService = new RateLimitedExecutorService(
+                Executors.newFixedThreadPool(4), new RecordingRateLimiter(rateLimiter, admitted));
+        final ReleaseRecorder started = new ReleaseRecorder(1, TASKS);
+        for (int i = 0; i < TASKS; i++) {
+            executorService.execute(() -> started.record(0, 1, nanoTime()));
+        }
+        executorService.shutdown();
+
+        assertThat(executorService.awaitTermination(10, SECONDS)).isTrue();
+        assertThat(admitted.size()).isEqualTo(TASKS);
+        assertThat(started.size()).isEqualTo(TASKS);
+        assertThat(admitted.maxPermitsInAnyWindow(DURATION.toNanos())).isLessThanOrEqualTo(LIMIT);
+        // tasks are handed over in the order they are admitted, but may start out of order on the pool.
+        final long[] releaseTimes = admitted.releaseTimes();
+        final long[] startTimes = started.releaseTimes();
+        Arrays.sort(releaseTimes);
+        Arrays.sort(startTimes);
+        for (int i = 0; i < TASKS; i++) {
+            assertThat(startTimes[i] - releaseTimes[i]).isBetween(0L, DURATION.toNanos());
+        }
+    }
+
+    @Test
+    void test_constructor_which_does_not_reserve_from_rate_limiter() {
+        final StampLockRateLimiter rateLimiter = new StampLockRateLimiter(LIMIT, DURATION) {
+            @Override
+            public Reservation reserve(final int permits) {
+                throw new AssertionError("reserved " + permits + " permits");
+            }
+        };
+        final RateLimitedExecutorService executorService = new RateLimitedExecutorService(
+                Executors.newSingleThreadExecutor(), rateLimiter);
+        executorService.shutdownNow();
+
+        assertThat(rateLimiter.supportsReservation()).isTrue();
+        assertThat(new WindowCounterRateLimiter(LIMIT, DURATION).supportsReservation()).isFalse();
+    }
+
+    @Test
+    void test_execute_which_hands_over_queued_tasks_after_shutdown() throws Exception {
+        final RateLimitedExecutorService executorService = new RateLimitedExecutorService(
+                Executors.newSingleThreadExecutor(), new StampLockRateLimiter(2, DURATION));
+        final CountDownLatch latch = new CountDownLatch(6);
+        for (int i = 0; i < 6; i++) {
+            executorService.execute(latch::countDown);
+        }
+        executorService.shutdown();
+
+        assertThatThrownBy(() -> executorService.execute(latch::countDown))
+                .isInstanceOf(RejectedExecutionException.class);
+        assertThat(executorService.awaitTermination(10, SECONDS)).isTrue();
+        assertThat(latch.getCount()).isZero();
+    }
+
+    @Test
+    void test_submit_which_fails_when_rate_limiter_throws() throws Exception {
+        final RateLimiter rateLimiter = new StampLockRateLimiter(LIMIT, DURATION) {
+            @Override
+        public int admit(final long[] releaseTimesOut, final int requested) {
+                throw new IllegalStateException("rate limiter is broken");
+            }
+        };
+        final RateLimitedExecutorService executorService =
+                new RateLimitedExecutorService(Executors.newSingleThreadExecutor(), rateLimiter);
+        try {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final Future<?> first = executorService.submit(latch::countDown);
+            final Future<?> second = executorService.submit(latch::countDown);
+
+            // the dispatcher goes on with the next batch after a failed one.
+            for (Future<?> future : new Future<?>[]{first, second}) {
+                assertThatThrownBy(() -> future.get(10, SECONDS))
+                        .isInstanceOf(ExecutionException.class)
+                        .hasCauseInstanceOf(IllegalStateException.class);
+            }
+            assertThat(latch.getCount()).isEqualTo(1);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void test_execute_which_is_rejected_when_queue_is_full() throws Exception {
+        final RateLimiter rateLimiter = new StampLockRateLimiter(2, Duration.ofHours(1));
+        rateLimiter.invoke(2);
+        final RateLimitedExecutorService executorService = new RateLimitedExecutorService(
+                Executors.newSingleThreadExecutor(), rateLimiter, 1, RateLimitedExecutorService.RejectionPolicy.ABORT,
+                1);
+        try {
+            executorService.execute(() -> {
+            });
+            awaitQueueSize(executorService, 0);
+            executorService.execute(() -> {
+            });
+
+            assertThatThrownBy(() -> executorService.execute(() -> {
+            })).isInstanceOf(RejectedExecutionException.class);
+            assertThat(executorService.queueSize()).isEqualTo(1);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void test_execute_which_discards_oldest_when_queue_is_full() throws Exception {
+        final RateLimiter rateLimiter = new StampLockRateLimiter(2, Duration.ofHours(1));
+        rateLimiter.invoke(2);
+        final RateLimitedExecutorService executorService = new RateLimitedExecutorService(
+                Executors.newSingleThreadExecutor(), rateLimiter, 1,
+                RateLimitedExecutorService.RejectionPolicy.DISCARD_OLDEST, 1);
+        final Runnable newest = () -> {
+        };
+        executorService.execute(() -> {
+        });
+        awaitQueueSize(executorService, 0);
+        executorService.execute(() -> {
+        });
+        executorService.execute(newest);
+
+        assertThat(executorService.shutdownNow()).containsExactly(newest);
+    }
+
+    @Test
+    void test_execute_which_runs_on_caller_when_queue_is_full() throws Exception {
+        final RateLimiter rateLimiter = new StampLockRateLimiter(2, DURATION);
+        rateLimiter.invoke(2);
+        final RateLimitedExecutorService executorService = new RateLimitedExecutorService(
+                Executors.newSingleThreadExecutor(), rateLimiter, 1,
+                RateLimitedExecutorService.RejectionPolicy.CALLER_RUNS, 1);
+        try {
+            executorService.execute(() -> {
+            });
+            awaitQueueSize(executorService, 0);
+            executorService.execute(() -> {
+            });
+            final AtomicReference<Thread> thread = new AtomicReference<>();
+            final long start = nanoTime();
+            executorService.execute(() -> thread.set(Thread.currentThread()));
+
+            assertThat(thread.get()).isSameAs(Thread.currentThread());
+            assertThat(nanoTime() - start).isGreaterThanOrEqualTo(DURATION.toNanos() / 2);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Records the release times the rate limiter it wraps admits, whether ahead of time or by invoking it.
+     */
+    private static final class RecordingRateLimiter implements RateLimiter {
+        private final RateLimiter rateLimiter;
+        private final ReleaseRecorder recorder;
+
+        private RecordingRateLimiter(final RateLimiter rateLimiter, final ReleaseRecorder recorder) {
+            this.rateLimiter = rateLimiter;
+            this.recorder = recorder;
+        }
+
+        @Override
+        public long invoke(final int permits) throws InterruptedException {
+            final long releaseTime = rateLimiter.invoke(permits);
+            recorder.record(0, permits, releaseTime);
+            return releaseTime;
+        }
+
+        @Override
+        public int admit(final long[] releaseTimesOut, final int requested) {
+            final int released = rateLimiter.admit(releaseTimesOut, requested);
+            for (int i = 0; i < requested; i++) {
+                recorder.record(0, 1, releaseTimesOut[i]);
+            }
+            return released;
+        }
+
+        @Override
+        public boolean tryInvoke(final int permits) {
+            return rateLimiter.tryInvoke(permits);
+        }
+
+        @Override
+        public boolean tryInvoke(final int permits, final Duration maxWait) throws InterruptedException {
+            return rateLimiter.tryInvoke(permits, maxWait);
+        }
+
+        @Override
+        public CompletableFuture<Long> invokeAsync(final int permits) {
+            return rateLimiter.invokeAsync(permits);
+        }
+
+        @Override
+        public Reservation reserve(final int permits) {
+            return rateLimiter.reserve(permits);
+        }
+
+        @Override
+        public boolean supportsReservation() {
+            return rateLimiter.supportsReservation();
+        }
+
+        @Override
+        public void reset() {
+            rateLimiter.reset();
+        }
+    }
+
+    private static void awaitQueueSize(final RateLimitedExecutorService executorService, final int queueSize)
+            throws InterruptedException {
+        while (executorService.queueSize() != queueSize) {
+            Thread.sleep(1);
+        }
+    }
+}
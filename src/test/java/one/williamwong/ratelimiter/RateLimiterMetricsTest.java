@@ -0,0 +1,102 @@
+package one.williamwong.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.params.provider.Arguments.of;
+
+class RateLimiterMetricsTest {
+
+    private static final Duration DURATION = Duration.ofMillis(500);
+    private static final int LIMIT = 100;
+
+    static Stream<Arguments> arguments() {
+        final RateLimiterMetrics synchronizedMetrics = new RateLimiterMetrics();
+        final SynchronizedRateLimiter synchronizedRateLimiter =
+                new SynchronizedRateLimiter(LIMIT, DURATION, 1, WaitStrategy.sleep(), synchronizedMetrics);
+        final RateLimiterMetrics stampLockMetrics = new RateLimiterMetrics();
+        final StampLockRateLimiter stampLockRateLimiter =
+                new StampLockRateLimiter(LIMIT, DURATION, 1, WaitStrategy.sleep(), stampLockMetrics);
+        final RateLimiterMetrics reentrantLockMetrics = new RateLimiterMetrics();
+        final ReentrantLockRateLimiter reentrantLockRateLimiter =
+                new ReentrantLockRateLimiter(LIMIT, DURATION, 1, reentrantLockMetrics);
+        return Stream.of(
+                of(synchronizedRateLimiter, synchronizedMetrics, (DoubleSupplier) synchronizedRateLimiter::utilisation),
+                of(stampLockRateLimiter, stampLockMetrics, (DoubleSupplier) stampLockRateLimiter::utilisation),
+                of(reentrantLockRateLimiter, reentrantLockMetrics, (DoubleSupplier) reentrantLockRateLimiter::utilisation));
+    }
+
+    @ParameterizedTest(name = "{index}: test_metrics_which_count_every_invocation({arguments})")
+    @MethodSource(value = "arguments")
+    void test_metrics_which_count_every_invocation(
+            final RateLimiter rateLimiter,
+            final RateLimiterMetrics metrics,
+            final DoubleSupplier utilisation) throws Exception {
+
+        for (int i = 0; i < LIMIT; i++) {
+            rateLimiter.invoke();
+        }
+        assertThat(metrics.admitted()).isEqualTo(LIMIT);
+        assertThat(metrics.throttled()).isZero();
+        assertThat(utilisation.getAsDouble()).isEqualTo(1.0d);
+
+        assertThat(rateLimiter.tryInvoke()).isFalse();
+        assertThat(metrics.rejected()).isEqualTo(1);
+
+        // the next invocation is paused for about 'duration', a little more if the wake-up is late.
+        rateLimiter.invoke();
+        assertThat(metrics.admitted()).isEqualTo(LIMIT + 1);
+        assertThat(metrics.throttled()).isEqualTo(1);
+        assertThat(metrics.totalWaitTime()).isPositive().isLessThan(DURATION.toNanos() * 2);
+        assertThat(metrics.waitTimePercentile(50)).isZero();
+        assertThat(metrics.waitTimePercentile(100)).isGreaterThanOrEqualTo(metrics.totalWaitTime());
+    }
+
+    @ParameterizedTest(name = "{index}: test_metrics_which_skip_an_invocation_interrupted_while_paused({arguments})")
+    @MethodSource(value = "arguments")
+    void test_metrics_which_skip_an_invocation_interrupted_while_paused(
+            final RateLimiter rateLimiter,
+            final RateLimiterMetrics metrics,
+            final DoubleSupplier utilisation) throws Exception {
+
+        for (int i = 0; i < LIMIT; i++) {
+            rateLimiter.invoke();
+        }
+        final Thread paused = new Thread(() -> {
+            try {
+                rateLimiter.invoke();
+            } catch (InterruptedException e) {
+                // the invocation is given up.
+            }
+        });
+        paused.start();
+        Thread.sleep(DURATION.toMillis() / 5);
+        paused.interrupt();
+        paused.join();
+
+        assertThat(metrics.admitted()).isEqualTo(LIMIT);
+        assertThat(metrics.throttled()).isZero();
+    }
+
+    @Test
+    void test_wait_time_histogram_which_keeps_relative_error_within_a_sixteenth() {
+        final Random random = new Random(0);
+        for (int i = 0; i < 100_000; i++) {
+            final long value = random.nextLong() >>> (1 + random.nextInt(63));
+            final int bucket = WaitTimeHistogram.bucketOf(value);
+            final long highest = WaitTimeHistogram.highestValueOf(bucket);
+            assertThat(highest).isGreaterThanOrEqualTo(value);
+            assertThat((double) highest).isCloseTo(value, within(value / 16.0d + 1));
+            assertThat(bucket == 0 || WaitTimeHistogram.highestValueOf(bucket - 1) < value).isTrue();
+        }
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -17,6 +18,7 @@ import static java.lang.System.currentTimeMillis;
 import static java.lang.System.nanoTime;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.params.provider.Arguments.of;
 
 class RateLimiterTest {
@@ -31,7 +33,65 @@ class RateLimiterTest {
                 of(new StampLockRateLimiter(LIMIT, DURATION, 100), LIMIT, DURATION, 100),
                 of(new SynchronizedRateLimiter(LIMIT, DURATION, 1), LIMIT, DURATION, 1),
                 of(new SynchronizedRateLimiter(LIMIT, DURATION, 10), LIMIT, DURATION, 10),
-                of(new SynchronizedRateLimiter(LIMIT, DURATION, 100), LIMIT, DURATION, 100));
+                of(new SynchronizedRateLimiter(LIMIT, DURATION, 100), LIMIT, DURATION, 100),
+                of(new SynchronizedRateLimiter(LIMIT, DURATION, 1, WaitStrategy.park()), LIMIT, DURATION, 1),
+                of(new StampLockRateLimiter(LIMIT, DURATION, 1, WaitStrategy.spinYieldPark()), LIMIT, DURATION, 1),
+                of(new SynchronizedRateLimiter(LIMIT, DURATION, 1, WaitStrategy.sleep(), null, TimeSource.system(),
+                        HistoryStore.offHeap()), LIMIT, DURATION, 1),
+                of(new SynchronizedRateLimiter(LIMIT, DURATION, 1, WaitStrategy.sleep(), null, TimeSource.system(),
+                        HistoryStore.compact(Duration.ofNanos(1))), LIMIT, DURATION, 1),
+                of(new ReentrantLockRateLimiter(LIMIT, DURATION, 1), LIMIT, DURATION, 1),
+                of(new ReentrantLockRateLimiter(LIMIT, DURATION, 10), LIMIT, DURATION, 10),
+                of(new FairRateLimiter(LIMIT, DURATION, 1), LIMIT, DURATION, 1),
+                of(new FairRateLimiter(LIMIT, DURATION, 10, Integer.MAX_VALUE, 3), LIMIT, DURATION, 10),
+                of(new StripedRateLimiter(LIMIT, DURATION, 1), LIMIT, DURATION, 1),
+                of(new CasRateLimiter(LIMIT, DURATION), LIMIT, DURATION, 1),
+                of(new CasRateLimiter(LIMIT, DURATION, WaitStrategy.busySpin()), LIMIT, DURATION, 1),
+                of(new CompositeRateLimiter(new CompositeRateLimiter.Limit(LIMIT, DURATION),
+                        new CompositeRateLimiter.Limit(LIMIT * 2, DURATION.multipliedBy(2))), LIMIT, DURATION, 1),
+                of(new CompositeRateLimiter(new CompositeRateLimiter.Limit(LIMIT * 10, DURATION))
+                        .child(new CompositeRateLimiter.Limit(LIMIT, DURATION, 10)), LIMIT, DURATION, 10),
+                of(new WindowCounterRateLimiter(LIMIT, DURATION), LIMIT, DURATION, 1),
+                of(new WindowCounterRateLimiter(LIMIT, DURATION, 100, WaitStrategy.park()), LIMIT, DURATION, 1));
+    }
+
+    /**
+     * Rate limiters which record invocations ahead of time, i.e. support {@link RateLimiter#reserve(int)}.
+     */
+    static Stream<Arguments> reservingArguments() {
+        return arguments().filter(arguments -> !(arguments.get()[0] instanceof WindowCounterRateLimiter));
+    }
+
+    /**
+     * Rate limiters on a manual clock, which moves only when a test advances it or an invocation is paused, so that
+     * the tests with them are deterministic.
+     */
+    static Stream<Arguments> manualClockArguments() {
+        return Stream.of(1, 10, 100).flatMap(samplingInterval -> {
+            final ManualTimeSource synchronizedClock = new ManualTimeSource();
+            final ManualTimeSource stampLockClock = new ManualTimeSource(-DURATION.toNanos() * 2);
+            // 16 bits of 10 microseconds, which cover about 3 durations, so that the epoch moves during a test.
+            final ManualTimeSource compactClock = new ManualTimeSource();
+            final ManualTimeSource compositeClock = new ManualTimeSource();
+            return Stream.of(
+                    of(new CompositeRateLimiter(Collections.singletonList(
+                            new CompositeRateLimiter.Limit(LIMIT, DURATION, samplingInterval)), compositeClock,
+                            compositeClock), compositeClock, samplingInterval),
+                    of(new SynchronizedRateLimiter(LIMIT, DURATION, samplingInterval, compactClock, null,
+                            compactClock, HistoryStore.compact(Duration.ofNanos(10_000))), compactClock,
+                            samplingInterval),
+                    of(new SynchronizedRateLimiter(LIMIT, DURATION, samplingInterval, synchronizedClock, null,
+                            synchronizedClock), synchronizedClock, samplingInterval),
+                    of(new StampLockRateLimiter(LIMIT, DURATION, samplingInterval, stampLockClock, null,
+                            stampLockClock), stampLockClock, samplingInterval));
+        });
+    }
+
+    /**
+     * Rate limiters on a manual clock whose rate can be changed, i.e. support {@link RateLimiter#setRate(int, Duration)}.
+     */
+    static Stream<Arguments> manualClockReconfigurableArguments() {
+        return manualClockArguments().filter(arguments -> !(arguments.get()[0] instanceof CompositeRateLimiter));
     }
 
     /**
@@ -186,4 +246,279 @@ class RateLimiterTest {
         // make sure the rate limiter slow down the speed to LIMIT/DURATION.
         assertThat((endTime - startTime)).isLessThan(duration.toMillis() * 3);
     }
+
+    @ParameterizedTest(name = "{index}: test_try_invoke_which_does_not_record_rejected_invocation({arguments})")
+    @MethodSource(value = "arguments")
+    void test_try_invoke_which_does_not_record_rejected_invocation(
+            final RateLimiter rateLimiter,
+            final int maxInvokes,
+            final Duration duration,
+            final int samplingInterval) throws Exception {
+
+        // use up the limit, then every further 'tryInvoke' is rejected.
+        for (int i = 0; i < maxInvokes; i++) {
+            assertThat(rateLimiter.tryInvoke()).isTrue();
+        }
+        for (int i = 0; i < maxInvokes; i++) {
+            assertThat(rateLimiter.tryInvoke()).isFalse();
+        }
+
+        // rejected invocations are not recorded, so the whole limit is available again after 'duration'.
+        NANOSECONDS.sleep(duration.toNanos());
+        for (int i = 0; i < maxInvokes; i++) {
+            assertThat(rateLimiter.tryInvoke()).isTrue();
+        }
+    }
+
+    @ParameterizedTest(name = "{index}: test_try_invoke_with_max_wait({arguments})")
+    @MethodSource(value = "arguments")
+    void test_try_invoke_with_max_wait(
+            final RateLimiter rateLimiter,
+            final int maxInvokes,
+            final Duration duration,
+            final int samplingInterval) throws Exception {
+
+        final long startTime = nanoTime();
+        for (int i = 0; i < maxInvokes; i++) {
+            rateLimiter.invoke();
+        }
+
+        // the next invocation can only be released around 'duration' after the first one.
+        assertThat(rateLimiter.tryInvoke(Duration.ZERO)).isFalse();
+        assertThat(rateLimiter.tryInvoke(duration.multipliedBy(2))).isTrue();
+        assertThat(nanoTime() - startTime).isGreaterThanOrEqualTo(duration.toNanos() / 2);
+    }
+
+    @ParameterizedTest(name = "{index}: test_invoke_with_permits({arguments})")
+    @MethodSource(value = "arguments")
+    void test_invoke_with_permits(
+            final RateLimiter rateLimiter,
+            final int maxInvokes,
+            final Duration duration,
+            final int samplingInterval) throws Exception {
+
+        // every invocation counts as 1 - maxInvokes/10 invokes, and all of them are released at the same time.
+        final Random random = new Random(nanoTime());
+        final List<Long> releaseTimes = new ArrayList<>();
+        while (releaseTimes.size() < maxInvokes * 3) {
+            final int permits = 1 + random.nextInt(maxInvokes / 10);
+            final long releaseTime = rateLimiter.invoke(permits);
+            for (int i = 0; i < permits; i++) {
+                releaseTimes.add(releaseTime);
+            }
+        }
+
+        assertEmitTimesDoesNotExcessRateLimit(
+                releaseTimes.stream().mapToLong($ -> $).toArray(),
+                maxInvokes,
+                duration.toNanos(),
+                samplingInterval);
+    }
+
+    @ParameterizedTest(name = "{index}: test_try_invoke_with_permits({arguments})")
+    @MethodSource(value = "arguments")
+    void test_try_invoke_with_permits(
+            final RateLimiter rateLimiter,
+            final int maxInvokes,
+            final Duration duration,
+            final int samplingInterval) throws Exception {
+
+        assertThat(rateLimiter.tryInvoke(maxInvokes / 2)).isTrue();
+        assertThat(rateLimiter.tryInvoke(maxInvokes - maxInvokes / 2)).isTrue();
+        assertThat(rateLimiter.tryInvoke(1)).isFalse();
+
+        // the whole limit can be taken by a single invocation after 'duration'.
+        assertThat(rateLimiter.tryInvoke(maxInvokes, duration.multipliedBy(2))).isTrue();
+        assertThat(rateLimiter.tryInvoke()).isFalse();
+    }
+
+    @ParameterizedTest(name = "{index}: test_invoke_async_which_completes_at_release_time({arguments})")
+    @MethodSource(value = "arguments")
+    void test_invoke_async_which_completes_at_release_time(
+            final RateLimiter rateLimiter,
+            final int maxInvokes,
+            final Duration duration,
+            final int samplingInterval) throws Exception {
+
+        final List<CompletableFuture<Long>> futures = new ArrayList<>();
+        final List<CompletableFuture<Void>> completions = new ArrayList<>();
+        final LinkedBlockingQueue<Long> completeTimes = new LinkedBlockingQueue<>();
+        for (int i = 0; i < maxInvokes * 3; i++) {
+            final CompletableFuture<Long> future = rateLimiter.invokeAsync();
+            completions.add(future.thenRun(() -> completeTimes.add(nanoTime())));
+            futures.add(future);
+        }
+
+        final long[] releaseTimes = new long[futures.size()];
+        for (int i = 0; i < futures.size(); i++) {
+            releaseTimes[i] = futures.get(i).get();
+        }
+        // the dependent actions may still be running on the completing thread when get() returns.
+        completions.forEach(CompletableFuture::join);
+        assertEmitTimesDoesNotExcessRateLimit(releaseTimes, maxInvokes, duration.toNanos(), samplingInterval);
+
+        // a future is never completed before its release time.
+        Arrays.sort(releaseTimes);
+        final long[] sortedCompleteTimes = completeTimes.stream().mapToLong($ -> $).sorted().toArray();
+        for (int i = 0; i < releaseTimes.length; i++) {
+            assertThat(sortedCompleteTimes[i]).isGreaterThanOrEqualTo(releaseTimes[i]);
+        }
+    }
+
+    @ParameterizedTest(name = "{index}: test_reserve_which_returns_invokes_when_cancelled({arguments})")
+    @MethodSource(value = "reservingArguments")
+    void test_reserve_which_returns_invokes_when_cancelled(
+            final RateLimiter rateLimiter,
+            final int maxInvokes,
+            final Duration duration,
+            final int samplingInterval) throws Exception {
+
+        final long start = rateLimiter.invoke(maxInvokes);
+        final List<Reservation> reservations = new ArrayList<>();
+        reservations.add(rateLimiter.reserve());
+        // a reservation is released after the window, which is still ahead.
+        assertThat(reservations.get(0).delay(NANOSECONDS)).isPositive();
+        for (int i = 1; i < maxInvokes; i++) {
+            reservations.add(rateLimiter.reserve());
+        }
+        final Reservation last = reservations.get(maxInvokes - 1);
+        assertThat(last.releaseTime() - start).isGreaterThanOrEqualTo(duration.toNanos());
+        assertThat(rateLimiter.tryInvoke()).isFalse();
+
+        for (int i = reservations.size() - 1; i >= 0; i--) {
+            assertThat(reservations.get(i).cancel()).isTrue();
+            assertThat(reservations.get(i).isCancelled()).isTrue();
+        }
+        assertThat(last.cancel()).isFalse();
+
+        // without the reservations, the whole limit is available again after 'duration'.
+        NANOSECONDS.sleep(duration.toNanos());
+        for (int i = 0; i < maxInvokes; i++) {
+            assertThat(rateLimiter.tryInvoke()).isTrue();
+        }
+    }
+
+    @ParameterizedTest(name = "{index}: test_admit_which_records_a_batch_at_once({arguments})")
+    @MethodSource(value = "reservingArguments")
+    void test_admit_which_records_a_batch_at_once(
+            final RateLimiter rateLimiter,
+            final int maxInvokes,
+            final Duration duration,
+            final int samplingInterval) throws Exception {
+
+        final long[] releaseTimes = new long[maxInvokes * 3];
+        assertThat(rateLimiter.admit(releaseTimes, 0)).isZero();
+        assertThatThrownBy(() -> rateLimiter.admit(releaseTimes, releaseTimes.length + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        // the first window is released right away, the next one is scheduled 'duration' later.
+        assertThat(rateLimiter.admit(releaseTimes, maxInvokes * 2)).isGreaterThanOrEqualTo(maxInvokes);
+        assertEmitTimesDoesNotExcessRateLimit(Arrays.copyOf(releaseTimes, maxInvokes * 2), maxInvokes,
+                duration.toNanos(), samplingInterval);
+        assertThat(releaseTimes[maxInvokes * 2 - 1] - releaseTimes[0]).isGreaterThanOrEqualTo(duration.toNanos());
+    }
+
+    @ParameterizedTest(name = "{index}: test_invoke_async_which_returns_invokes_when_cancelled({arguments})")
+    @MethodSource(value = "arguments")
+    void test_invoke_async_which_returns_invokes_when_cancelled(
+            final RateLimiter rateLimiter,
+            final int maxInvokes,
+            final Duration duration,
+            final int samplingInterval) throws Exception {
+
+        rateLimiter.invoke(maxInvokes);
+        final List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < maxInvokes; i++) {
+            futures.add(rateLimiter.invokeAsync());
+        }
+        for (int i = futures.size() - 1; i >= 0; i--) {
+            assertThat(futures.get(i).cancel(false)).isTrue();
+        }
+
+        // without the pending invocations, the whole limit is available again after 'duration'.
+        NANOSECONDS.sleep(duration.toNanos());
+        for (int i = 0; i < maxInvokes; i++) {
+            assertThat(rateLimiter.tryInvoke()).isTrue();
+        }
+    }
+
+    @ParameterizedTest(name = "{index}: test_invoke_on_manual_clock_with_various_speed({arguments})")
+    @MethodSource(value = "manualClockArguments")
+    void test_invoke_on_manual_clock_with_various_speed(
+            final RateLimiter rateLimiter,
+            final ManualTimeSource clock,
+            final int samplingInterval) throws Exception {
+
+        // interval between invoke is between 0ns and double of the inverse of rate limit, then no interval at all.
+        final Random random = new Random(42);
+        final int maxInterval = (int) (DURATION.toNanos() / LIMIT * 2);
+        final long[] releaseTimes = new long[LIMIT * 4];
+        for (int i = 0; i < releaseTimes.length; i++) {
+            if (i < LIMIT * 3) {
+                clock.advance(Duration.ofNanos(random.nextInt(maxInterval)));
+            }
+            releaseTimes[i] = rateLimiter.invoke();
+            assertThat(releaseTimes[i]).isEqualTo(clock.nanoTime());
+        }
+
+        assertEmitTimesDoesNotExcessRateLimit(releaseTimes, LIMIT, DURATION.toNanos(), samplingInterval);
+    }
+
+    @ParameterizedTest(name = "{index}: test_try_invoke_on_manual_clock_which_is_released_exactly_after_duration({arguments})")
+    @MethodSource(value = "manualClockArguments")
+    void test_try_invoke_on_manual_clock_which_is_released_exactly_after_duration(
+            final RateLimiter rateLimiter,
+            final ManualTimeSource clock,
+            final int samplingInterval) throws Exception {
+
+        for (int i = 0; i < LIMIT; i++) {
+            assertThat(rateLimiter.tryInvoke()).isTrue();
+        }
+        assertThat(rateLimiter.tryInvoke()).isFalse();
+
+        // the whole limit was taken at the same time, so all of it is back exactly 'duration' later.
+        clock.advance(DURATION.minusNanos(1));
+        assertThat(rateLimiter.tryInvoke()).isFalse();
+        assertThat(rateLimiter.tryInvoke(Duration.ZERO)).isFalse();
+        clock.advance(Duration.ofNanos(1));
+        for (int i = 0; i < LIMIT; i++) {
+            assertThat(rateLimiter.tryInvoke()).isTrue();
+        }
+
+        // a paused invocation moves the clock to its release time, 'duration' after the limit was taken.
+        final long start = clock.nanoTime();
+        assertThat(rateLimiter.invoke(LIMIT)).isEqualTo(start + DURATION.toNanos());
+        assertThat(clock.nanoTime()).isEqualTo(start + DURATION.toNanos());
+    }
+
+    @ParameterizedTest(name = "{index}: test_set_rate_on_manual_clock_which_keeps_recorded_invocations({arguments})")
+    @MethodSource(value = "manualClockReconfigurableArguments")
+    void test_set_rate_on_manual_clock_which_keeps_recorded_invocations(
+            final RateLimiter rateLimiter,
+            final ManualTimeSource clock,
+            final int samplingInterval) throws Exception {
+
+        final long start = clock.nanoTime();
+        for (int i = 0; i < LIMIT; i++) {
+            assertThat(rateLimiter.tryInvoke()).isTrue();
+        }
+
+        // the limit taken before counts towards a higher limit.
+        rateLimiter.setRate(LIMIT * 2, DURATION);
+        for (int i = 0; i < LIMIT; i++) {
+            assertThat(rateLimiter.tryInvoke()).isTrue();
+        }
+        assertThat(rateLimiter.tryInvoke()).isFalse();
+
+        // and towards a lower limit over a longer duration, so the last permits are back only after the new duration.
+        rateLimiter.setRate(LIMIT / 2, DURATION.multipliedBy(2));
+        clock.advance(DURATION);
+        assertThat(rateLimiter.tryInvoke()).isFalse();
+        clock.advance(DURATION);
+        for (int i = 0; i < LIMIT / 2; i++) {
+            assertThat(rateLimiter.tryInvoke()).isTrue();
+        }
+        assertThat(rateLimiter.tryInvoke()).isFalse();
+        assertThat(rateLimiter.invoke()).isEqualTo(start + DURATION.toNanos() * 4);
+    }
 }
@@ -0,0 +1,122 @@
+package one.williamwong.ratelimiter;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static java.lang.System.nanoTime;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.Arguments.of;
+
+/**
+ * Every rate limiter, saturated by many threads for a few windows, with its release times measured exactly by a
+ * {@link ReleaseRecorder} rather than within a percentage of jitter.
+ */
+class ReleaseAccuracyTest {
+
+    private static final Duration DURATION = Duration.ofMillis(100);
+    private static final int LIMIT = 1000;
+    private static final int THREADS = 8;
+    private static final int WINDOWS = 5;
+
+    /**
+     * The rate limiter, its max invokes and duration, the max permits in any window of the duration, and whether it
+     * shares the permits evenly between the threads.
+     */
+    static Stream<Arguments> arguments() {
+        return Stream.concat(
+                RateLimiterTest.arguments().map(arguments -> {
+                    final Object rateLimiter = arguments.get()[0];
+                    final int maxInvokes = (int) arguments.get()[1];
+                    final Duration duration = (Duration) arguments.get()[2];
+                    return of(rateLimiter, maxInvokes, duration, maxInvokes, rateLimiter instanceof FairRateLimiter);
+                }),
+                Stream.of(
+                        of(new GcraRateLimiter(LIMIT, DURATION), LIMIT, DURATION, LIMIT, true),
+                        of(new TokenBucketRateLimiter(LIMIT, DURATION), LIMIT, DURATION, LIMIT, true),
+                        // the release time of guava is read after it resumes, so it carries the jitter of waking up.
+                        of(new GuavaRateLimiter(LIMIT, DURATION), LIMIT, DURATION, LIMIT + LIMIT / 20, true)));
+    }
+
+    static Stream<Arguments> fairArguments() {
+        return arguments().filter(arguments -> (boolean) arguments.get()[4]);
+    }
+
+    @ParameterizedTest(name = "{index}: test_invoke_which_never_excess_limit_in_any_window({arguments})")
+    @MethodSource(value = "arguments")
+    void test_invoke_which_never_excess_limit_in_any_window(
+            final RateLimiter rateLimiter,
+            final int maxInvokes,
+            final Duration duration,
+            final int maxPermitsInAnyWindow,
+            final boolean fair) throws Exception {
+
+        final ReleaseRecorder recorder = new ReleaseRecorder(THREADS, maxInvokes * (WINDOWS + 2));
+        saturate(rateLimiter, duration, recorder);
+
+        assertThat(recorder.maxPermitsInAnyWindow(duration.toNanos())).isLessThanOrEqualTo(maxPermitsInAnyWindow);
+        // the wait strategy resumes an invocation soon after its release time, even when every core is busy.
+        assertThat(recorder.latenessPercentile(99)).isLessThan(duration.toNanos() / 5);
+    }
+
+    @ParameterizedTest(name = "{index}: test_invoke_which_shares_permits_evenly_between_threads({arguments})")
+    @MethodSource(value = "fairArguments")
+    void test_invoke_which_shares_permits_evenly_between_threads(
+            final RateLimiter rateLimiter,
+            final int maxInvokes,
+            final Duration duration,
+            final int maxPermitsInAnyWindow,
+            final boolean fair) throws Exception {
+
+        final ReleaseRecorder recorder = new ReleaseRecorder(THREADS, maxInvokes * (WINDOWS + 2));
+        final long start = saturate(rateLimiter, duration, recorder);
+
+        // the permits of the first window are taken by whichever thread starts first.
+        assertThat(recorder.fairnessIndex(start + duration.toNanos())).isGreaterThan(0.9);
+    }
+
+    /**
+     * Invoke the rate limiter from every thread, as fast as it releases them, for 'WINDOWS' durations.
+     *
+     * @return the time the threads started
+     */
+    private static long saturate(final RateLimiter rateLimiter, final Duration duration,
+                                 final ReleaseRecorder recorder) throws Exception {
+        final AtomicLong start = new AtomicLong();
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS, () -> {
+            rateLimiter.reset();
+            start.set(nanoTime());
+        });
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    final long deadline = start.get() + duration.toNanos() * WINDOWS;
+                    while (nanoTime() - deadline < 0) {
+                        recorder.record(thread, 1, rateLimiter.invoke());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return start.get();
+    }
+}
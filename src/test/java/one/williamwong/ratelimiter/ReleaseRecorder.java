@@ -0,0 +1,126 @@
+package one.williamwong.ratelimiter;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the invocations released by a rate limiter during a run, and measures them exactly afterwards, rather than
+ * counting the windows which look too short within a percentage of jitter.
+ * <p>
+ * Threads claim a slot of a ring with a single atomic increment, so recording does not serialise them more than the
+ * rate limiter does. Once the ring is full, the oldest invocations are overwritten. The slots are plain arrays, so the
+ * results can only be read after the recording threads have finished, e.g. after their futures have completed.
+ */
+final class ReleaseRecorder {
+
+    private final int numOfThreads;
+    private final int mask;
+    private final long[] releaseTimes;
+    private final long[] lateness;
+    private final int[] permits;
+    private final int[] threads;
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * @param numOfThreads the number of recording threads, numbered from 0
+     * @param capacity     the number of invocations kept, rounded up to a power of 2
+     */
+    ReleaseRecorder(final int numOfThreads, final int capacity) {
+        final int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.numOfThreads = numOfThreads;
+        this.mask = size - 1;
+        this.releaseTimes = new long[size];
+        this.lateness = new long[size];
+        this.permits = new int[size];
+        this.threads = new int[size];
+    }
+
+    /**
+     * Record an invocation right after it is released.
+     *
+     * @param thread      the number of the recording thread
+     * @param permits     the number of permits of the invocation
+     * @param releaseTime the release time returned by the rate limiter
+     */
+    void record(final int thread, final int permits, final long releaseTime) {
+        final long now = System.nanoTime();
+        final int slot = (int) (next.getAndIncrement() & mask);
+        this.releaseTimes[slot] = releaseTime;
+        this.lateness[slot] = now - releaseTime;
+        this.permits[slot] = permits;
+        this.threads[slot] = thread;
+    }
+
+    /**
+     * @return the number of invocations kept
+     */
+    int size() {
+        return (int) Math.min(next.get(), releaseTimes.length);
+    }
+
+    /**
+     * @return the release times of the invocations kept, in no particular order
+     */
+    long[] releaseTimes() {
+        return Arrays.copyOf(releaseTimes, size());
+    }
+
+    /**
+     * @param duration the length of a window in nanoseconds
+     * @return the max number of permits released in any window of 'duration', i.e. released after 'time - duration'
+     * and at or before 'time', for any 'time'
+     */
+    int maxPermitsInAnyWindow(final long duration) {
+        final Integer[] order = new Integer[size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(slot -> releaseTimes[slot]));
+        int max = 0;
+        int inWindow = 0;
+        int start = 0;
+        for (Integer end : order) {
+            inWindow += permits[end];
+            while (releaseTimes[end] - releaseTimes[order[start]] >= duration) {
+                inWindow -= permits[order[start++]];
+            }
+            max = Math.max(max, inWindow);
+        }
+        return max;
+    }
+
+    /**
+     * @param since the release time from which the permits are counted, e.g. after the race for the first window
+     * @return Jain's fairness index of the permits taken by every thread, from '1 / numOfThreads' when a single thread
+     * takes them all to 1 when every thread takes the same share
+     */
+    double fairnessIndex(final long since) {
+        final long[] shares = new long[numOfThreads];
+        for (int i = 0; i < size(); i++) {
+            if (releaseTimes[i] - since >= 0) {
+                shares[threads[i]] += permits[i];
+            }
+        }
+        double sum = 0;
+        double sumOfSquares = 0;
+        for (long share : shares) {
+            sum += share;
+            sumOfSquares += (double) share * share;
+        }
+        return sumOfSquares == 0 ? 1 : sum * sum / (numOfThreads * sumOfSquares);
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return how long after its release time an invocation was resumed, in nanoseconds
+     */
+    long latenessPercentile(final double percentile) {
+        final long[] sorted = Arrays.copyOf(lateness, size());
+        if (sorted.length == 0) {
+            return 0;
+        }
+        Arrays.sort(sorted);
+        return sorted[Math.max(0, (int) Math.ceil(percentile / 100 * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,113 @@
+package one.williamwong.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SmoothRateLimiterTest {
+
+    private static final Duration DURATION = Duration.ofMillis(100);
+    private static final int LIMIT = 10;
+    private static final long INTERVAL = DURATION.toNanos() / LIMIT;
+
+    private final ManualTimeSource clock = new ManualTimeSource();
+
+    @Test
+    void test_invoke_which_is_spaced_evenly_after_reset() throws Exception {
+        final RateLimiter rateLimiter = smooth(1, Duration.ZERO);
+
+        final long[] gaps = gaps(rateLimiter, LIMIT * 2);
+
+        assertThat(gaps[0]).isZero();
+        for (int i = 1; i < gaps.length; i++) {
+            assertThat(gaps[i]).isEqualTo(INTERVAL);
+        }
+    }
+
+    @Test
+    void test_invoke_which_releases_max_burst_at_once_after_idle() throws Exception {
+        final RateLimiter rateLimiter = smooth(5, Duration.ZERO);
+        gaps(rateLimiter, LIMIT * 2);
+        clock.advance(DURATION);
+
+        final long[] gaps = gaps(rateLimiter, LIMIT * 2);
+
+        // the burst and the invocations paced after it fit in the limit, so the sliding log never pauses them.
+        assertThat(gaps).startsWith(0, 0, 0, 0, 0);
+        for (int i = 5; i < gaps.length; i++) {
+            assertThat(gaps[i]).isEqualTo((long) Math.ceil(DURATION.toNanos() / (LIMIT - 4.0)));
+        }
+    }
+
+    @Test
+    void test_invoke_which_warms_up_after_idle() throws Exception {
+        final RateLimiter rateLimiter = smooth(1, DURATION);
+        gaps(rateLimiter, LIMIT * 2);
+        clock.advance(DURATION.multipliedBy(10));
+
+        final long[] gaps = gaps(rateLimiter, LIMIT * 2);
+
+        // the first invocation pays with the pause of the next one.
+        assertThat(gaps[0]).isZero();
+        assertThat(gaps[1]).isGreaterThan(INTERVAL * 2);
+        for (int i = 2; i < gaps.length; i++) {
+            assertThat(gaps[i]).isLessThanOrEqualTo(gaps[i - 1]);
+        }
+        assertThat(gaps[gaps.length - 1]).isEqualTo(INTERVAL);
+    }
+
+    @Test
+    void test_tryInvoke_which_does_not_take_paced_time_when_rejected() throws Exception {
+        final RateLimiter wrapped = new SynchronizedRateLimiter(LIMIT, DURATION, 1, clock, null, clock);
+        final RateLimiter rateLimiter =
+                new SmoothRateLimiter(wrapped, LIMIT, DURATION, 1, Duration.ZERO, clock, clock);
+        wrapped.invoke(LIMIT);
+
+        assertThat(rateLimiter.tryInvoke()).isFalse();
+        clock.advance(DURATION);
+        assertThat(rateLimiter.tryInvoke()).isTrue();
+        assertThat(rateLimiter.tryInvoke()).isFalse();
+        clock.advance(Duration.ofNanos(INTERVAL));
+        assertThat(rateLimiter.tryInvoke()).isTrue();
+    }
+
+    @Test
+    void test_setRate_which_keeps_pacing_when_wrapped_rate_limiter_cannot_change_rate() throws Exception {
+        final RateLimiter wrapped = new WindowCounterRateLimiter(LIMIT, DURATION);
+        final RateLimiter rateLimiter =
+                new SmoothRateLimiter(wrapped, LIMIT, DURATION, 1, Duration.ZERO, clock, clock);
+
+        assertThatThrownBy(() -> rateLimiter.setRate(LIMIT * 2, DURATION))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> rateLimiter.invoke(LIMIT + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void test_reserve_which_is_not_supported() {
+        assertThatThrownBy(() -> smooth(1, Duration.ZERO).reserve())
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    private RateLimiter smooth(final int maxBurst, final Duration warmUpPeriod) {
+        return new SmoothRateLimiter(new SynchronizedRateLimiter(LIMIT, DURATION, 1, clock, null, clock),
+                LIMIT, DURATION, maxBurst, warmUpPeriod, clock, clock);
+    }
+
+    /**
+     * @return the time between an invocation and the one before it, the first one measured from now
+     */
+    private long[] gaps(final RateLimiter rateLimiter, final int numOfInvocations) throws InterruptedException {
+        final long[] gaps = new long[numOfInvocations];
+        long previous = clock.nanoTime();
+        for (int i = 0; i < numOfInvocations; i++) {
+            final long releaseTime = rateLimiter.invoke();
+            gaps[i] = releaseTime - previous;
+            previous = releaseTime;
+        }
+        return gaps;
+    }
+}
@@ -0,0 +1,117 @@
+package one.williamwong.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.System.nanoTime;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StripedRateLimiterTest {
+
+    private static final Duration DURATION = Duration.ofMillis(100);
+    private static final int LIMIT = 1000;
+    private static final int SHARDS = 8;
+
+    @Test
+    void test_try_invoke_which_borrows_from_other_shards() {
+        final StripedRateLimiter rateLimiter = new StripedRateLimiter(LIMIT, DURATION, SHARDS);
+
+        // a single thread has a single home shard, but it can take the whole limit.
+        for (int i = 0; i < LIMIT; i++) {
+            assertThat(rateLimiter.tryInvoke()).isTrue();
+        }
+        assertThat(rateLimiter.tryInvoke()).isFalse();
+    }
+
+    @Test
+    void test_invoke_which_never_excess_limit_across_shards() throws Exception {
+        final StripedRateLimiter rateLimiter = new StripedRateLimiter(LIMIT, DURATION, SHARDS);
+        final ExecutorService executor = Executors.newFixedThreadPool(SHARDS * 2);
+        try {
+            final List<Future<long[]>> futures = new ArrayList<>();
+            for (int t = 0; t < SHARDS * 2; t++) {
+                futures.add(executor.submit(() -> {
+                    final long[] releaseTimes = new long[LIMIT / 4];
+                    for (int i = 0; i < releaseTimes.length; i++) {
+                        releaseTimes[i] = rateLimiter.invoke();
+                    }
+                    return releaseTimes;
+                }));
+            }
+            final long[] releaseTimes = new long[SHARDS * 2 * (LIMIT / 4)];
+            for (int t = 0; t < futures.size(); t++) {
+                System.arraycopy(futures.get(t).get(), 0, releaseTimes, t * (LIMIT / 4), LIMIT / 4);
+            }
+
+            Arrays.sort(releaseTimes);
+            for (int i = 0; i + LIMIT < releaseTimes.length; i++) {
+                assertThat(releaseTimes[i + LIMIT] - releaseTimes[i]).isGreaterThanOrEqualTo(DURATION.toNanos());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void test_invoke_which_pauses_until_the_earliest_shard_releases() throws Exception {
+        final StripedRateLimiter rateLimiter = new StripedRateLimiter(LIMIT, DURATION, SHARDS);
+        final long startTime = nanoTime();
+        for (int i = 0; i < LIMIT; i++) {
+            rateLimiter.invoke();
+        }
+
+        final long releaseTime = rateLimiter.invoke();
+
+        assertThat(releaseTime - startTime).isGreaterThanOrEqualTo(DURATION.toNanos());
+        assertThat(releaseTime - startTime).isLessThan(DURATION.toNanos() * 2);
+    }
+
+    @Test
+    void test_invoke_which_is_recorded_after_waiting_for_the_lock_of_a_shard() throws Exception {
+        final StripedRateLimiter rateLimiter = new StripedRateLimiter(LIMIT, DURATION, 1);
+        final Field shards = StripedRateLimiter.class.getDeclaredField("shards");
+        shards.setAccessible(true);
+        final Object shard = ((Object[]) shards.get(rateLimiter))[0];
+        final CountDownLatch locked = new CountDownLatch(1);
+        final AtomicLong unlockTime = new AtomicLong();
+        final Thread holder = new Thread(() -> {
+            synchronized (shard) {
+                locked.countDown();
+                try {
+                    Thread.sleep(DURATION.toMillis() / 2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                unlockTime.set(nanoTime());
+            }
+        });
+        holder.start();
+        locked.await();
+
+        final long releaseTime = rateLimiter.invoke();
+        holder.join();
+
+        // the invocation can only be released once the lock is released, and it must be recorded no earlier.
+        assertThat(releaseTime).isGreaterThanOrEqualTo(unlockTime.get());
+    }
+
+    @Test
+    void test_invoke_which_rejects_permits_more_than_a_shard() {
+        final StripedRateLimiter rateLimiter = new StripedRateLimiter(LIMIT, DURATION, SHARDS);
+
+        assertThat(rateLimiter.tryInvoke(LIMIT / SHARDS)).isTrue();
+        assertThatThrownBy(() -> rateLimiter.tryInvoke(LIMIT / SHARDS + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
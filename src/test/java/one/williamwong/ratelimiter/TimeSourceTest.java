@@ -0,0 +1,51 @@
+package one.williamwong.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeSourceTest {
+
+    @Test
+    void test_cached_which_follows_system_time_within_resolution() throws Exception {
+        final Duration resolution = Duration.ofMillis(1);
+        final TimeSource cached = TimeSource.cached(resolution);
+        assertThat(TimeSource.cached(resolution)).isSameAs(cached);
+
+        long previous = cached.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            MILLISECONDS.sleep(5);
+            final long now = cached.nanoTime();
+            final long lag = System.nanoTime() - now;
+            assertThat(now).isGreaterThan(previous);
+            // cached a resolution ahead, and behind by the timer slack of the OS and the scheduling of the updater.
+            assertThat(lag).isBetween(-resolution.toNanos(), MILLISECONDS.toNanos(50));
+            previous = now;
+        }
+    }
+
+    @Test
+    void test_wait_strategy_which_pauses_until_time_source_reaches_release_time() throws Exception {
+        final TimeSource cached = TimeSource.cached(Duration.ofMillis(2));
+        final long until = cached.nanoTime() + MILLISECONDS.toNanos(10);
+
+        WaitStrategy.park().await(until, cached);
+
+        assertThat(cached.nanoTime()).isGreaterThanOrEqualTo(until);
+    }
+
+    @Test
+    void test_manual_which_only_moves_forward() {
+        final ManualTimeSource clock = new ManualTimeSource(100);
+        clock.advance(Duration.ofNanos(10));
+        assertThat(clock.nanoTime()).isEqualTo(110);
+
+        clock.await(105);
+        assertThat(clock.nanoTime()).isEqualTo(110);
+        clock.await(200);
+        assertThat(clock.nanoTime()).isEqualTo(200);
+    }
+}
@@ -0,0 +1,49 @@
+package one.williamwong.ratelimiter;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import static java.lang.System.nanoTime;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.params.provider.Arguments.of;
+
+class WaitStrategyTest {
+
+    private static final Duration PAUSE = Duration.ofMillis(10);
+
+    static Stream<Arguments> arguments() {
+        return Stream.of(
+                of(WaitStrategy.sleep()),
+                of(WaitStrategy.park()),
+                of(WaitStrategy.busySpin()),
+                of(WaitStrategy.spinYieldPark()),
+                of(WaitStrategy.spinYieldPark(Duration.ofMillis(1), Duration.ofMillis(1))));
+    }
+
+    @ParameterizedTest(name = "{index}: test_await_which_never_returns_before_until({arguments})")
+    @MethodSource(value = "arguments")
+    void test_await_which_never_returns_before_until(final WaitStrategy waitStrategy) throws Exception {
+        for (int i = 0; i < 10; i++) {
+            final long until = nanoTime() + PAUSE.toNanos();
+            waitStrategy.await(until);
+            assertThat(nanoTime()).isGreaterThanOrEqualTo(until);
+        }
+    }
+
+    @ParameterizedTest(name = "{index}: test_await_which_throws_when_interrupted({arguments})")
+    @MethodSource(value = "arguments")
+    void test_await_which_throws_when_interrupted(final WaitStrategy waitStrategy) {
+        Thread.currentThread().interrupt();
+        try {
+            assertThatThrownBy(() -> waitStrategy.await(nanoTime() + PAUSE.toNanos()))
+                    .isInstanceOf(InterruptedException.class);
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package one.williamwong.ratelimiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WindowCounterRateLimiterTest {
+
+    private static final Duration DURATION = Duration.ofMillis(100);
+    private static final int LIMIT = 1000;
+    private static final int NUM_OF_BUCKETS = 10;
+
+    @Test
+    void test_invoke_which_is_released_at_most_a_bucket_later_than_a_sliding_log() throws Exception {
+        final WindowCounterRateLimiter rateLimiter = new WindowCounterRateLimiter(LIMIT, DURATION, NUM_OF_BUCKETS);
+        final long bucketWidth = DURATION.toNanos() / NUM_OF_BUCKETS;
+
+        // half of the limit early in a bucket, the other half near the end of a later bucket.
+        final long first = rateLimiter.invoke(LIMIT / 2);
+        NANOSECONDS.sleep(bucketWidth * 3 / 2);
+        final long second = rateLimiter.invoke(LIMIT - LIMIT / 2);
+
+        // an exact sliding log would release it at 'first + duration'.
+        final long released = rateLimiter.invoke(LIMIT / 2);
+        assertThat(released - first).isGreaterThanOrEqualTo(DURATION.toNanos());
+        assertThat(released - first).isLessThan(DURATION.toNanos() + bucketWidth + bucketWidth / 2);
+
+        // the other half of the limit stays in the window until 'second + duration'.
+        assertThat(rateLimiter.tryInvoke()).isFalse();
+        assertThat(rateLimiter.invoke(LIMIT - LIMIT / 2) - second).isGreaterThanOrEqualTo(DURATION.toNanos());
+    }
+
+    @Test
+    void test_invoke_async_which_counts_nothing_when_cancelled() throws Exception {
+        final WindowCounterRateLimiter rateLimiter = new WindowCounterRateLimiter(LIMIT, DURATION, NUM_OF_BUCKETS);
+        final long start = nanoTime();
+        rateLimiter.invoke(LIMIT);
+
+        assertThat(rateLimiter.invokeAsync(LIMIT).cancel(false)).isTrue();
+        assertThat(rateLimiter.invokeAsync(1).get() - start).isGreaterThanOrEqualTo(DURATION.toNanos());
+        assertThat(rateLimiter.tryInvoke(LIMIT - 1)).isTrue();
+    }
+}